@@ -0,0 +1,51 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Account;
+import Service.AccountService;
+
+/**
+ * Measures AccountService.login for a correct and a wrong password against 10,000 seeded accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountServiceBenchmark {
+    AccountService accountService;
+    Account validLogin;
+    Account wrongPassword;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkDatabase.seed(10000, 1);
+        accountService = new AccountService();
+        validLogin = new Account("user5000", BenchmarkDatabase.PASSWORD);
+        wrongPassword = new Account("user5000", "wrong password");
+    }
+
+    @Benchmark
+    public Account login() {
+        return accountService.login(validLogin);
+    }
+
+    @Benchmark
+    public Account loginWrongPassword() {
+        return accountService.login(wrongPassword);
+    }
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Seeds the H2 database used by the benchmarks. Like the functional tests, this resets the application's database
+ * first, so anything stored in ./h2/db is lost.
+ */
+final class BenchmarkDatabase {
+    static final String PASSWORD = "password";
+    private static final int INSERT_CHUNK = 5000;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Resets the database and fills it with accounts named user1, user2, ... and messages spread across them.
+     *
+     * @param accounts The number of accounts, in addition to the test account from SocialMedia.sql.
+     * @param messages The total number of messages, including the one from SocialMedia.sql.
+     */
+    static void seed(int accounts, int messages) {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 1; i <= accounts; i++) {
+            accountDAO.registerAccount(new Account("user" + i, PASSWORD));
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        List<Message> chunk = new ArrayList<>(INSERT_CHUNK);
+        for (int i = 2; i <= messages; i++) {
+            chunk.add(new Message(1 + i % (accounts + 1), "benchmark message number " + i, 1669947792L + i));
+            if (chunk.size() == INSERT_CHUNK || i == messages) {
+                if (messageDAO.addMessages(chunk) == null) {
+                    throw new IllegalStateException("Could not seed the benchmark database");
+                }
+                chunk.clear();
+            }
+        }
+    }
+}
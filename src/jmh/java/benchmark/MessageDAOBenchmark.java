@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * Measures the MessageDAO queries against a seeded H2 database at several table sizes. The table is reseeded for
+ * every fork, and addMessage grows it by one row per call, so its table size is the size at the start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDAOBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int tableSize;
+
+    MessageDAO messageDAO;
+    Message newMessage;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkDatabase.seed(100, tableSize);
+        messageDAO = new MessageDAO();
+        newMessage = new Message(1, "a new benchmark message", 1669947792L);
+    }
+
+    @Benchmark
+    public Message addMessage() {
+        return messageDAO.addMessage(newMessage);
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageDAO.getMessageById(1 + ThreadLocalRandom.current().nextInt(tableSize));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Util.JacksonJsonMapper;
+
+/**
+ * Measures Jackson (de)serialization of Model.Message through the shared JacksonJsonMapper, for a single message
+ * and for a list of 100, the way the handlers read request bodies and write responses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageJsonBenchmark {
+    JacksonJsonMapper jsonMapper;
+    Message message;
+    List<Message> messages;
+    byte[] messageJson;
+    ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        jsonMapper = new JacksonJsonMapper();
+        message = new Message(1, 1, "benchmark message text", 1669947792L);
+        messages = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            messages.add(new Message(i, 1 + i % 10, "benchmark message number " + i, 1669947792L + i));
+        }
+        out = new ByteArrayOutputStream(16384);
+        jsonMapper.writeTo(message, out);
+        messageJson = out.toByteArray();
+    }
+
+    @Benchmark
+    public Message readMessage() {
+        return jsonMapper.fromJsonStream(new ByteArrayInputStream(messageJson), Message.class);
+    }
+
+    @Benchmark
+    public int writeMessage() throws IOException {
+        out.reset();
+        jsonMapper.writeTo(message, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeMessageList() throws IOException {
+        out.reset();
+        jsonMapper.writeTo(messages, out);
+        return out.size();
+    }
+}
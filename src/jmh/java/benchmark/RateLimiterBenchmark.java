@@ -0,0 +1,62 @@
+package benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Util.RateLimiter;
+
+/**
+ * Measures the time RateLimiter.tryAcquire adds to a request, with 8 threads at once: all on one account (every
+ * call races on the same compare-and-set), spread over 10,000 accounts, and on an account that is over its limit.
+ * The allowing limiter's rate is high enough that it never rejects, so every call takes the write path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class RateLimiterBenchmark {
+    private static final int ACCOUNTS = 10000;
+
+    RateLimiter allowing;
+    RateLimiter rejecting;
+
+    @Setup
+    public void setUp() {
+        allowing = new RateLimiter(1e9, 1000000, ACCOUNTS * 2);
+        rejecting = new RateLimiter(1, 1, ACCOUNTS * 2);
+        for (int accountId = 1; accountId <= ACCOUNTS; accountId++) {
+            allowing.tryAcquire(accountId);
+        }
+        rejecting.tryAcquire(1);
+    }
+
+    @Benchmark
+    public long oneHotAccount() {
+        return allowing.tryAcquire(1);
+    }
+
+    @Benchmark
+    public long spreadAccounts() {
+        return allowing.tryAcquire(1 + ThreadLocalRandom.current().nextInt(ACCOUNTS));
+    }
+
+    @Benchmark
+    public long overLimit() {
+        return rejecting.tryAcquire(1);
+    }
+}
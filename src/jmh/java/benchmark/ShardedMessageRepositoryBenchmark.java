@@ -0,0 +1,87 @@
+package benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.ShardedMessageRepository;
+import Model.Message;
+
+/**
+ * Measures ShardedMessageRepository at several shard counts. Accounts come from the seeded main H2 database, so
+ * addMessage includes pinning each author once, and the shards are private in-memory databases that are created
+ * for every fork and filled with tableSize messages spread across the accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedMessageRepositoryBenchmark {
+    private static final int ACCOUNTS = 100;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1", "4"})
+    int shards;
+
+    @Param({"10000"})
+    int tableSize;
+
+    ShardedMessageRepository repository;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkDatabase.seed(ACCOUNTS, 1);
+        repository = new ShardedMessageRepository(shards, shard -> {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:benchmark-shard" + shard + ";DB_CLOSE_DELAY=-1");
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }, new AccountDAO());
+        List<Message> messages = new ArrayList<>(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            messages.add(new Message(1 + i % (ACCOUNTS + 1), "benchmark message number " + i, 1669947792L + i));
+        }
+        if (repository.addMessages(messages) == null) {
+            throw new IllegalStateException("Could not seed the benchmark shards");
+        }
+    }
+
+    @Benchmark
+    public Message addMessage() {
+        int postedBy = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS + 1);
+        return repository.addMessage(new Message(postedBy, "a new benchmark message", 1669947792L));
+    }
+
+    @Benchmark
+    public List<Message> getMessagesPage() {
+        return repository.getMessagesPage(null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesPageByAccountId() {
+        return repository.getMessagesPageByAccountId(1 + ThreadLocalRandom.current().nextInt(ACCOUNTS + 1), null,
+                PAGE_SIZE);
+    }
+}
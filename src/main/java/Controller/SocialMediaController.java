@@ -1,16 +1,50 @@
 package Controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageEvent;
+import Model.MessagePage;
+import DAO.MessageSink;
 import Service.AccountService;
 import Service.MessageService;
+import Service.SessionStore;
+import Util.AppConfig;
+import Util.CompressingOutputStream;
+import Util.DatabaseProfile;
+import Util.DatabaseUnavailableException;
+import Util.EventRing;
+import Util.JacksonJsonMapper;
+import Util.Metrics;
+import Util.RateLimitExceededException;
+import Util.RateLimiter;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.HandlerType;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.http.sse.SseClient;
+import io.javalin.http.sse.SseHandler;
 
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -18,12 +52,87 @@ import java.util.List;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * The response header that carries the session token issued by a successful login.
+     */
+    public static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+    /**
+     * The one JSON mapper shared by every handler and registered with Javalin.
+     */
+    private static final JacksonJsonMapper JSON_MAPPER = new JacksonJsonMapper();
+    private static final Metrics METRICS = Metrics.getDefault();
+
     AccountService accountService;
     MessageService messageService;
+    /**
+     * Sessions issued at login, lasting socialmedia.session.ttlSeconds (default 3600).
+     */
+    SessionStore sessions;
+    /**
+     * When true (the default), message writes without a session token are accepted and act for the posted_by in the
+     * body, as they did before sessions existed. socialmedia.session.anonymousWrites=false makes every write need a
+     * valid token.
+     */
+    boolean anonymousWrites;
+    /**
+     * True when several instances share the database (socialmedia.db.tcp.instances above 1). Search, the message
+     * stream and list ETags rely on state held in this process, which other instances' writes never reach, so
+     * search and the stream answer 501 and lists are sent without an ETag.
+     */
+    boolean sharedStore;
+    /**
+     * When true, the unpaginated list endpoints write each row to the response as it is read from the database
+     * instead of building the whole list first. Enabled with socialmedia.json.streaming=true.
+     */
+    boolean streamingLists;
+    /**
+     * Response compression settings. Bodies of at least compressionMinSize bytes are compressed with gzip or
+     * deflate when the client's Accept-Encoding allows it. Disabled with socialmedia.compression.enabled=false.
+     */
+    boolean compressionEnabled;
+    int compressionMinSize;
+    int compressionLevel;
+    /**
+     * Message stream settings. A comment is sent to idle subscribers every streamHeartbeatMillis
+     * (socialmedia.stream.heartbeatMillis, default 15000) so dropped connections are noticed, and at most
+     * maxStreamSubscribers (socialmedia.stream.maxSubscribers, default 1000) may be connected at once.
+     */
+    long streamHeartbeatMillis;
+    int maxStreamSubscribers;
+    /**
+     * The number of open message streams, counted against maxStreamSubscribers.
+     */
+    private final AtomicInteger streamSubscribers = new AtomicInteger();
+    /**
+     * Per-account limits on the write endpoints, or null where a limit is turned off. See rateLimiter.
+     */
+    RateLimiter createMessageLimiter;
+    RateLimiter createMessagesLimiter;
+    RateLimiter updateMessageLimiter;
+    /**
+     * Runs the second half of an asynchronous request, after the service's future completes, on the server's own
+     * threads so database threads are never spent serializing or writing responses. Set by startAPI.
+     */
+    Executor responseExecutor;
 
     public SocialMediaController() {
         this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        this.accountService.loadKnownAccountIds();
+        this.messageService = new MessageService(accountService);
+        this.messageService.rebuildSearchIndex();
+        this.sessions = new SessionStore(AppConfig.getLong("socialmedia.session.ttlSeconds", 3600));
+        this.anonymousWrites = AppConfig.getBoolean("socialmedia.session.anonymousWrites", true);
+        this.sharedStore = DatabaseProfile.isSharedStore();
+        this.streamingLists = AppConfig.getBoolean("socialmedia.json.streaming", false);
+        this.compressionEnabled = AppConfig.getBoolean("socialmedia.compression.enabled", true);
+        this.compressionMinSize = AppConfig.getInt("socialmedia.compression.minSize", 1500);
+        this.compressionLevel = AppConfig.getInt("socialmedia.compression.level", 6);
+        this.streamHeartbeatMillis = AppConfig.getLong("socialmedia.stream.heartbeatMillis", 15000);
+        this.maxStreamSubscribers = AppConfig.getInt("socialmedia.stream.maxSubscribers", 1000);
+        this.createMessageLimiter = rateLimiter("createMessage", 50, 100);
+        this.createMessagesLimiter = rateLimiter("createMessages", 10, 20);
+        this.updateMessageLimiter = rateLimiter("updateMessage", 50, 100);
     }
 
 
@@ -33,155 +142,818 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        return startAPI(false);
+    }
+
+    /**
+     * Builds the Javalin app like startAPI(), choosing how Jetty runs the handlers.
+     * @param virtualThreads When true, each request is handled on its own virtual thread, so a handler blocked on
+     *                       JDBC does not hold one of the server's platform threads. When false, requests run on a
+     *                       pool of at most 250 platform threads.
+     * @return a Javalin app object which defines the behavior of the Javalin controller.
+     */
+    public Javalin startAPI(boolean virtualThreads) {
+        QueuedThreadPool threadPool = serverThreadPool(virtualThreads);
+        this.responseExecutor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : threadPool;
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(JSON_MAPPER);
+            config.compression.none(); // Responses are compressed by responseStream() instead
+            config.jetty.server(() -> new Server(threadPool));
+            // Called once the response is complete, including for asynchronous handlers
+            config.requestLogger.http((ctx, executionTimeMs) -> METRICS.requestFinished(ctx.method().name(),
+                    routeOf(ctx), ctx.statusCode(), (long) (executionTimeMs * 1_000_000)));
+        });
+        app.before(ctx -> METRICS.requestStarted());
+        // The database executor's queue is full, or a query did not finish in time
+        app.exception(RejectedExecutionException.class, (e, ctx) -> {
+            ctx.status(503);
+            ctx.header("Retry-After", "1");
+        });
+        app.exception(TimeoutException.class, (e, ctx) -> ctx.status(503));
+        // No pooled connection became free within the acquire timeout
+        app.exception(DatabaseUnavailableException.class, (e, ctx) -> {
+            ctx.status(503);
+            ctx.header("Retry-After", "1");
+        });
+        // The account has used up its rate limit for the route
+        app.exception(RateLimitExceededException.class, (e, ctx) -> {
+            ctx.status(429);
+            ctx.header("Retry-After", Long.toString(e.getRetryAfterSeconds()));
+        });
         app.post("register", this::postAddAccountHandler);
         app.post("login", this::postLoginHandler);
+        app.post("logout", this::postLogoutHandler);
         app.post("messages", this::postAddMessageHandler);
+        app.post("messages/batch", this::postAddMessagesHandler);
         app.get("messages", this::getAllMessagesHandler);
+        app.get("messages/search", this::searchMessagesHandler); // Before messages/{message_id}, which also matches
+        app.get("messages/stream", this::getMessageStreamHandler);
         app.get("messages/{message_id}", this::getMessageByIdHandler);     
         app.delete("messages/{message_id}", this::deleteMessageByIdHandler);
         app.patch("messages/{message_id}", this::patchUpdateMessagebyIdHandler);
         app.get("accounts/{account_id}/messages", this::getAllMessagesByAccountIdHandler);
+        app.get("accounts/{account_id}/messages/stream", this::getAccountMessageStreamHandler);
+        app.get("metrics", this::getMetricsHandler);
         
         return app;
     }
 
     /**
-     * This is an example handler for the register endpoint.
+     * Handler for the logout endpoint. Ends the session named by the bearer token, if there is one.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
      */
-    private void postAddAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account addedAccount = accountService.addAccount(account);
-        if (addedAccount != null) {
-            ctx.status(200);
-            ctx.json(mapper.writeValueAsString(addedAccount));
-        } else {
-            ctx.status(400);
+    private void postLogoutHandler(Context ctx) {
+        String token = bearerToken(ctx);
+        if (token != null) {
+            sessions.revoke(token);
+        }
+        ctx.status(200);
+    }
+
+    /**
+     * Reads the session token from an "Authorization: Bearer" header.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return the token, or null if the request has none.
+     */
+    private static String bearerToken(Context ctx) {
+        String authorization = ctx.header("Authorization");
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
         }
+        return authorization.substring(7).trim();
+    }
+
+    /**
+     * Resolves the caller's account from the request's session token, in memory.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return the caller's account_id, or SessionStore.NO_ACCOUNT if the request has no token.
+     * @throws UnauthorizedResponse if the token is unknown or has expired, which the app answers with 401.
+     */
+    private int callerAccountId(Context ctx) {
+        String token = bearerToken(ctx);
+        if (token == null) {
+            return SessionStore.NO_ACCOUNT;
+        }
+        int accountId = sessions.resolve(token);
+        if (accountId == SessionStore.NO_ACCOUNT) {
+            throw new UnauthorizedResponse();
+        }
+        return accountId;
+    }
+
+    /**
+     * Resolves the account making a message write. A token is only required when anonymousWrites is turned off.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return the caller's account_id, or SessionStore.NO_ACCOUNT for an anonymous write when those are allowed.
+     * @throws UnauthorizedResponse if the token is missing, unknown or expired, which the app answers with 401.
+     */
+    private int writerAccountId(Context ctx) {
+        int accountId = callerAccountId(ctx);
+        if (accountId == SessionStore.NO_ACCOUNT && !anonymousWrites) {
+            throw new UnauthorizedResponse();
+        }
+        return accountId;
+    }
+
+    /**
+     * Fills in posted_by from the caller's session when the message leaves it out.
+     * @throws ForbiddenResponse if the message names a different account than the session, answered with 403.
+     */
+    private static void applyCaller(Message message, int callerAccountId) {
+        if (callerAccountId == SessionStore.NO_ACCOUNT) {
+            return;
+        }
+        if (message.getPosted_by() == 0) {
+            message.setPosted_by(callerAccountId);
+        } else if (message.getPosted_by() != callerAccountId) {
+            throw new ForbiddenResponse();
+        }
+    }
+
+    /**
+     * Builds the per-account limiter for one route from socialmedia.rateLimit.<route>.perSecond and
+     * socialmedia.rateLimit.<route>.burst. Buckets are kept for up to socialmedia.rateLimit.maxAccounts accounts
+     * (default 100000).
+     * @param route The name of the route in the settings.
+     * @param defaultPerSecond The sustained rate when none is configured. A rate of 0 turns the limit off.
+     * @param defaultBurst The burst when none is configured.
+     * @return the limiter, or null if the limit is turned off.
+     */
+    private static RateLimiter rateLimiter(String route, int defaultPerSecond, int defaultBurst) {
+        int perSecond = AppConfig.getInt("socialmedia.rateLimit." + route + ".perSecond", defaultPerSecond);
+        if (perSecond <= 0) {
+            return null;
+        }
+        return new RateLimiter(perSecond,
+                AppConfig.getInt("socialmedia.rateLimit." + route + ".burst", defaultBurst),
+                AppConfig.getInt("socialmedia.rateLimit.maxAccounts", 100000));
+    }
+
+    /**
+     * Takes a token for the account from the limiter.
+     * @throws RateLimitExceededException if the account has none left, which the app answers with 429.
+     */
+    private static void checkRateLimit(RateLimiter limiter, int accountId) {
+        if (limiter != null) {
+            long wait = limiter.tryAcquire(accountId);
+            if (wait > 0) {
+                throw new RateLimitExceededException(wait);
+            }
+        }
+    }
+
+    /**
+     * Creates Jetty's thread pool. Javalin would pick virtual threads on its own whenever the JDK supports them, so
+     * the pool is always built here to keep the mode an explicit choice.
+     * @param virtualThreads When true, Jetty hands each request to a new virtual thread.
+     * @return the thread pool for the server.
+     */
+    private static QueuedThreadPool serverThreadPool(boolean virtualThreads) {
+        QueuedThreadPool threadPool = new QueuedThreadPool(250, 8, 60000);
+        threadPool.setName("JettyServerThreadPool");
+        threadPool.setUseVirtualThreads(virtualThreads);
+        return threadPool;
+    }
+
+    /**
+     * Finds the route template a request matched, for labelling its metrics.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return the path the endpoint was registered with, or null if the request matched no endpoint.
+     */
+    private static String routeOf(Context ctx) {
+        // The handler type is still BEFORE when no endpoint matched, and Javalin refuses to report a path then
+        return ctx.handlerType() == HandlerType.BEFORE ? null : ctx.endpointHandlerPath();
+    }
+
+    /**
+     * Handler to expose the application metrics in the Prometheus text format.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getMetricsHandler(Context ctx) {
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(METRICS.scrape());
+    }
+
+    /**
+     * This is an example handler for the register endpoint.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void postAddAccountHandler(Context ctx) throws IOException {
+        Account account = ctx.bodyStreamAsClass(Account.class);
+        respond(ctx, accountService.addAccountAsync(account), addedAccount -> {
+            if (addedAccount != null) {
+                ctx.status(200);
+                writeJson(ctx, addedAccount);
+            } else {
+                ctx.status(400);
+            }
+        });
     }
 
     /**
      * This is an example handler for the login endpoint.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void postLoginHandler(Context ctx) throws IOException {
+        Account account = ctx.bodyStreamAsClass(Account.class);
+        respond(ctx, accountService.loginAsync(account), loggedInAccount -> {
+            if (loggedInAccount != null) {
+                ctx.status(200);
+                ctx.header(SESSION_TOKEN_HEADER, sessions.issue(loggedInAccount.getAccount_id()));
+                writeJson(ctx, loggedInAccount);
+            } else {
+                ctx.status(401);
+            }
+        });
+    }
+
+    /**
+     * Handler for the addMessage endpoint.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void postAddMessageHandler(Context ctx) throws IOException {
+        Message message = ctx.bodyStreamAsClass(Message.class);
+        int caller = writerAccountId(ctx);
+        applyCaller(message, caller);
+        if (caller != SessionStore.NO_ACCOUNT || accountService.isKnownAccount(message.getPosted_by())) {
+            // Only a verified account is charged, so a made-up posted_by cannot use up another account's limit
+            checkRateLimit(createMessageLimiter, message.getPosted_by());
+        }
+        respond(ctx, messageService.addMessageAsync(message), addedMessage -> {
+            if (addedMessage != null) {
+                ctx.status(200);
+                writeJson(ctx, addedMessage);
+            } else {
+                ctx.status(400);
+            }
+        });
+    }
+
+    /**
+     * Handler for the addMessages batch endpoint. The body is a JSON array of messages and the response is a JSON
+     * array with one result per message, in the same order.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void postLoginHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account loggedInAccount = accountService.login(account);
-        if (loggedInAccount != null) {
+    private void postAddMessagesHandler(Context ctx) throws IOException {
+        Message[] messages = ctx.bodyStreamAsClass(Message[].class);
+        if (messages == null) {
+            ctx.status(400);
+            return;
+        }
+        int caller = writerAccountId(ctx);
+        for (Message message : messages) {
+            if (message != null) {
+                applyCaller(message, caller);
+            }
+        }
+        if (caller != SessionStore.NO_ACCOUNT) {
+            checkRateLimit(createMessagesLimiter, caller);
+        } else if (createMessagesLimiter != null) {
+            // Each known account in the batch is charged one request, however many of its messages the batch holds
+            int[] accountIds = Arrays.stream(messages).filter(Objects::nonNull).mapToInt(Message::getPosted_by)
+                    .distinct().filter(accountService::isKnownAccount).toArray();
+            for (int accountId : accountIds) {
+                checkRateLimit(createMessagesLimiter, accountId);
+            }
+        }
+        CompletableFuture<List<MessageBatchResult>> results;
+        try {
+            results = messageService.addMessagesAsync(Arrays.asList(messages));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400); // Too many messages in one batch
+            return;
+        }
+        respond(ctx, results, value -> {
             ctx.status(200);
-            ctx.json(mapper.writeValueAsString(loggedInAccount));
-        } else {
-            ctx.status(401);
+            writeJson(ctx, value);
+        });
+    }
+
+    /**
+     * Handler for the getAllMessages endpoint.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        if (!sharedStore
+                && isNotModified(ctx, messageService.getChangeTracker().allMessagesETag(listVariant(ctx)))) {
+            return;
         }
+        if (isPageRequest(ctx)) {
+            CompletableFuture<MessagePage> page;
+            try {
+                page = messageService.getMessagesPageAsync(ctx.queryParam("after"), pageLimit(ctx));
+            } catch (IllegalArgumentException e) {
+                ctx.status(400); // Invalid limit or cursor
+                return;
+            }
+            respond(ctx, page, value -> {
+                ctx.status(200);
+                writeJson(ctx, value);
+            });
+            return;
+        }
+        if (streamingLists) {
+            // Rows are written while the query runs, so this stays on the request thread
+            streamMessages(ctx, sink -> messageService.streamAllMessages(sink));
+            return;
+        }
+        respond(ctx, messageService.getAllMessagesAsync(), messages -> {
+            ctx.status(200);
+            writeJson(ctx, messages);
+        });
     }
 
     /**
-     * Handler for the addMessage endpoint.
+     * Handler for the searchMessages endpoint. Takes the query in the q parameter and pages like the list
+     * endpoints, with limit and after.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void postAddMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
-        Message addedMessage = messageService.addMessage(message);
-        if (addedMessage != null) {
+    private void searchMessagesHandler(Context ctx) throws IOException {
+        if (sharedStore) {
+            ctx.status(501); // The index only sees this instance's writes
+            return;
+        }
+        CompletableFuture<MessagePage> page;
+        try {
+            page = messageService.searchMessagesAsync(ctx.queryParam("q"), ctx.queryParam("after"), pageLimit(ctx));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400); // Missing query, or invalid limit or cursor
+            return;
+        }
+        respond(ctx, page, value -> {
             ctx.status(200);
-            ctx.json(mapper.writeValueAsString(addedMessage));
-        } else {
+            writeJson(ctx, value);
+        });
+    }
+
+    /**
+     * Handler for the message stream endpoint. Sends every add, update and delete as a Server-Sent Event.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getMessageStreamHandler(Context ctx) throws Exception {
+        openStream(ctx, null);
+    }
+
+    /**
+     * Handler for the per-account message stream endpoint. Sends only the events for messages posted by the
+     * account.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getAccountMessageStreamHandler(Context ctx) throws Exception {
+        int accountId;
+        try {
+            accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        } catch (NumberFormatException e) {
             ctx.status(400);
+            return;
         }
+        openStream(ctx, accountId);
     }
 
     /**
-     * Handler for the getAllMessages endpoint.
+     * Starts a Server-Sent Events response that follows the service's ring of message events. Each subscriber
+     * gets its own virtual thread to read the ring and write to its connection, so a slow client only ever delays
+     * itself. A client that reconnects with the Last-Event-ID header receives the events it missed, as long as
+     * the ring still holds them; otherwise it is sent a "reset" event, meaning it should reload the full list.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
+     * @param accountId Only events for messages posted by this account are sent, or all events when null.
      */
-    private void getAllMessagesHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        List<Message> messages = messageService.getAllMessages();
-        ctx.status(200);
-        ctx.json(mapper.writeValueAsString(messages));
+    private void openStream(Context ctx, Integer accountId) throws Exception {
+        if (sharedStore) {
+            ctx.status(501); // Other instances' changes never reach this process's events
+            return;
+        }
+        EventRing<MessageEvent> events = messageService.getMessageEvents();
+        // Taken before the check, so concurrent requests cannot all pass it at once
+        if (streamSubscribers.incrementAndGet() > maxStreamSubscribers) {
+            streamSubscribers.decrementAndGet();
+            ctx.status(503);
+            ctx.header("Retry-After", "1");
+            return;
+        }
+        // The reader is opened before the response starts, so a change made once the client sees the response is
+        // never missed
+        String lastEventId = ctx.header("Last-Event-ID");
+        long resumeAfter = lastEventId == null ? events.getCursor() : parseEventId(events, lastEventId);
+        EventRing<MessageEvent>.Reader reader = events.reader(resumeAfter < 0 ? events.getCursor() : resumeAfter);
+        AtomicBoolean started = new AtomicBoolean();
+        try {
+            new SseHandler(client -> {
+                AtomicBoolean closed = new AtomicBoolean();
+                client.onClose(() -> closed.set(true));
+                client.keepAlive();
+                Thread.ofVirtual().name("message-stream").start(
+                        () -> streamEvents(client, reader, closed, accountId, resumeAfter < 0));
+                started.set(true);
+            }).handle(ctx);
+        } finally {
+            if (!started.get()) {
+                // The stream thread releases both otherwise
+                reader.close();
+                streamSubscribers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Writes events from the reader to the client until the client disconnects.
+     */
+    private void streamEvents(SseClient client, EventRing<MessageEvent>.Reader reader, AtomicBoolean closed,
+            Integer accountId, boolean reset) {
+        String epoch = Long.toHexString(messageService.getMessageEvents().getEpoch());
+        long missed = 0;
+        try (reader) {
+            if (reset) {
+                client.sendEvent("reset", "");
+            }
+            while (!closed.get()) {
+                EventRing.Slot<MessageEvent> slot = reader.take(TimeUnit.MILLISECONDS.toNanos(streamHeartbeatMillis));
+                if (reader.getMissed() > missed) {
+                    missed = reader.getMissed();
+                    client.sendEvent("reset", "");
+                }
+                if (slot == null) {
+                    client.sendComment("heartbeat"); // Fails once the client has gone, which closes the stream
+                    continue;
+                }
+                Message message = slot.getValue().getMessage();
+                if (accountId == null || message.getPosted_by() == accountId) {
+                    client.sendEvent(slot.getValue().getType(), message, epoch + "-" + slot.getSequence());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            client.close();
+            streamSubscribers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads the sequence number from an event ID sent by this server, which has the form epoch-sequence.
+     * @return the sequence, or -1 if the ID was not issued by this ring.
+     */
+    private static long parseEventId(EventRing<?> events, String eventId) {
+        int separator = eventId.indexOf('-');
+        try {
+            if (separator > 0
+                    && Long.parseLong(eventId.substring(0, separator), 16) == events.getEpoch()) {
+                return Long.parseLong(eventId.substring(separator + 1));
+            }
+        } catch (NumberFormatException e) {
+            // Not one of ours
+        }
+        return -1;
     }
 
     /**
      * Handler for the getMessageById endpoint.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void getMessageByIdHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getMessageByIdHandler(Context ctx) throws IOException {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message message = messageService.getMessageById(messageId);
-        if (message != null) {
-            ctx.status(200);
-            ctx.json(mapper.writeValueAsString(message));
-        } else {
-            ctx.status(200);
-            ctx.json(""); // Empty response body if no message is found
-        }
+        respond(ctx, messageService.getMessageByIdAsync(messageId), message -> {
+            if (message != null) {
+                if (isNotModified(ctx, MessageService.messageETag(message))) {
+                    return;
+                }
+                ctx.status(200);
+                writeJson(ctx, message);
+            } else {
+                ctx.status(200);
+                ctx.json(""); // Empty response body if no message is found
+            }
+        });
     }
 
     /**
      * Handler for the deleteMessageById endpoint.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void deleteMessageByIdHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void deleteMessageByIdHandler(Context ctx) throws IOException {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message deletedMessage = messageService.deleteMessageById(messageId);
-        if (deletedMessage != null) {
-            ctx.status(200);
-            ctx.json(mapper.writeValueAsString(deletedMessage));
+        int caller = writerAccountId(ctx);
+        CompletableFuture<Message> delete;
+        if (caller == SessionStore.NO_ACCOUNT) {
+            delete = messageService.deleteMessageByIdAsync(messageId);
         } else {
-            ctx.status(200);
-            ctx.json(""); // Empty response body if no message is found
+            // Signed-in callers may only delete their own messages, which the delete statement itself checks
+            delete = messageService.deleteMessageByIdAndAuthorAsync(messageId, caller)
+                    .thenCompose(deletedMessage -> deletedMessage != null
+                            ? CompletableFuture.completedFuture(deletedMessage)
+                            : forbidIfOwnedByOther(messageId, caller));
         }
+        respond(ctx, delete, deletedMessage -> {
+            if (deletedMessage != null) {
+                ctx.status(200);
+                writeJson(ctx, deletedMessage);
+            } else {
+                ctx.status(200);
+                ctx.json(""); // Empty response body if no message is found
+            }
+        });
+    }
+
+    /**
+     * Picks the response for a write that was conditioned on its author and changed nothing. The write itself has
+     * already been decided; this only tells a missing message apart from someone else's.
+     * @return a future of null if the message does not exist or belongs to the caller.
+     * @throws ForbiddenResponse through the future if another account posted the message, answered with 403.
+     */
+    private CompletableFuture<Message> forbidIfOwnedByOther(int messageId, int caller) {
+        return messageService.getMessageByIdAsync(messageId).thenApply(existing -> {
+            if (existing != null && existing.getPosted_by() != caller) {
+                throw new ForbiddenResponse();
+            }
+            return null;
+        });
     }
 
     /**
      * Handler for the patchUpdateMessagebyId endpoint.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void patchUpdateMessagebyIdHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void patchUpdateMessagebyIdHandler(Context ctx) throws IOException {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message existingMessage = messageService.getMessageById(messageId);
-
-        if (existingMessage == null) {
-            ctx.status(400); // Message does not exist
-            return;
-        }
-
-        Message updatedMessage = mapper.readValue(ctx.body(), Message.class);
+        Message updatedMessage = ctx.bodyStreamAsClass(Message.class);
         updatedMessage.setMessage_id(messageId); // Ensure the ID is set correctly
 
-        Message result = messageService.updateMessageById(updatedMessage);
-        if (result != null) {
-            ctx.status(200);
-            ctx.json(mapper.writeValueAsString(result));
+        int caller = writerAccountId(ctx);
+
+        CompletableFuture<Message> update;
+        if (caller != SessionStore.NO_ACCOUNT) {
+            // Signed-in callers may only change their own messages, which the update statement itself checks
+            checkRateLimit(updateMessageLimiter, caller);
+            update = messageService.updateMessageByIdAndAuthorAsync(updatedMessage, caller)
+                    .thenCompose(result -> result != null
+                            ? CompletableFuture.completedFuture(result)
+                            : forbidIfOwnedByOther(messageId, caller));
         } else {
-            ctx.status(400); // Invalid update
+            // Anonymous updates have no verified account to charge, so they are not limited
+            update = messageService.updateMessageByIdAsync(updatedMessage);
         }
+        respond(ctx, update, result -> {
+            if (result != null) {
+                ctx.status(200);
+                writeJson(ctx, result);
+            } else {
+                ctx.status(400); // Invalid text or the message does not exist
+            }
+        });
     }
 
     /**
      * This is an example handler for the getAllMessagesbyAccountId endpoint.
      * @param ctx The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if the JSON cannot be processed.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void getAllMessagesByAccountIdHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getAllMessagesByAccountIdHandler(Context ctx) throws IOException {
         int accountId = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> messages = messageService.getAllMessagesByAccountId(accountId);
+        if (!sharedStore && isNotModified(ctx,
+                messageService.getChangeTracker().accountMessagesETag(accountId, listVariant(ctx)))) {
+            return;
+        }
+        if (isPageRequest(ctx)) {
+            CompletableFuture<MessagePage> page;
+            try {
+                page = messageService.getMessagesPageByAccountIdAsync(accountId, ctx.queryParam("after"),
+                        pageLimit(ctx));
+            } catch (IllegalArgumentException e) {
+                ctx.status(400); // Invalid limit or cursor
+                return;
+            }
+            respond(ctx, page, value -> {
+                ctx.status(200);
+                writeJson(ctx, value);
+            });
+            return;
+        }
+        if (streamingLists) {
+            // Rows are written while the query runs, so this stays on the request thread
+            streamMessages(ctx, sink -> messageService.streamMessagesByAccountId(accountId, sink));
+            return;
+        }
+        respond(ctx, messageService.getAllMessagesByAccountIdAsync(accountId), messages -> {
+            ctx.status(200);
+            writeJson(ctx, messages);
+        });
+    }
+
+    /**
+     * A list request is paginated when the client passes a limit or an after cursor. Without either, the list
+     * endpoints keep returning every message as a plain JSON array.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return true if the request asks for a single page.
+     */
+    private boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("after") != null;
+    }
+
+    /**
+     * Describes the query parameters that shape a list response, so each page of a list gets its own ETag.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return "" for the full list, a suffix naming the limit and cursor for a page, or null if the parameters
+     * contain characters that cannot go in an ETag (such a request is rejected as a bad page request anyway).
+     */
+    private String listVariant(Context ctx) {
+        if (!isPageRequest(ctx)) {
+            return "";
+        }
+        String limit = ctx.queryParam("limit");
+        String after = ctx.queryParam("after");
+        String variant = "-" + (limit == null ? "" : limit) + "-" + (after == null ? "" : after);
+        for (int i = 0; i < variant.length(); i++) {
+            char c = variant.charAt(i);
+            if (!(Character.isLetterOrDigit(c) && c < 128) && c != '-' && c != '_' && c != '=') {
+                return null;
+            }
+        }
+        return variant;
+    }
+
+    /**
+     * Sets the ETag header and, if the request's If-None-Match already names that tag, answers 304 Not Modified
+     * with no body. The ETag must be computed before the data it describes is read, so that a change made while
+     * the response is being built leaves the client with an older tag rather than a newer one.
+     *
+     * A gzip or deflate body is a different representation from the plain one, so the tag is suffixed with the
+     * coding the client will be sent, and Vary: Accept-Encoding goes on the 304 as well as the 200.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param etag The current quoted entity tag of the response, or null to skip conditional handling.
+     * @return true if a 304 was sent and the handler should stop.
+     */
+    private boolean isNotModified(Context ctx, String etag) {
+        if (etag == null) {
+            return false;
+        }
+        CompressingOutputStream.Encoding encoding = negotiateEncoding(ctx);
+        if (encoding != null) {
+            etag = etag.substring(0, etag.length() - 1) + "-" + encoding.getHeaderValue() + "\"";
+        }
+        ctx.header("ETag", etag);
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2); // If-None-Match uses weak comparison
+            }
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the page size from the limit query parameter, defaulting to 100 when only a cursor is given.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return the requested page size.
+     * @throws IllegalArgumentException if the limit is not a number.
+     */
+    private int pageLimit(Context ctx) {
+        String limit = ctx.queryParam("limit");
+        return limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+    }
+
+    /**
+     * Finishes a request once the service's future completes. A future that is already complete, such as a cache
+     * hit, is answered straight away. Otherwise the request is handed to Javalin with ctx.future, so the request
+     * thread is released while the database works, and the writer runs on responseExecutor afterwards. A failed
+     * future goes to the app's exception handlers: 503 for a full queue or a timeout, 500 for anything else.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param result The service's future.
+     * @param writer Writes the response from the future's value.
+     * @throws IOException if writing an immediate response fails.
+     */
+    private <T> void respond(Context ctx, CompletableFuture<T> result, ResultWriter<T> writer) throws IOException {
+        if (result.isDone() && !result.isCompletedExceptionally()) {
+            writer.write(result.join());
+            return;
+        }
+        ctx.future(() -> result.thenAcceptAsync(value -> {
+            try {
+                writer.write(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, responseExecutor));
+    }
+
+    /**
+     * Serializes a value straight to the response output stream with the shared JSON mapper.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param value The value to write as the response body.
+     * @throws IOException if writing to the response fails.
+     */
+    private void writeJson(Context ctx, Object value) throws IOException {
+        ctx.contentType("application/json");
+        try (CompressingOutputStream out = responseStream(ctx)) {
+            JSON_MAPPER.writeTo(value, out);
+        }
+    }
+
+    /**
+     * Writes a JSON array of messages straight to the response output stream, one element per database row, so
+     * the list is never built in memory. The array is only closed once the query has finished: if it fails before
+     * anything reached the client the response becomes an error as usual, and if it fails part way the connection
+     * is aborted so the client sees a broken body rather than a shorter list that looks complete.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param source Feeds each message to the sink it is given.
+     * @throws IOException if the query or writing to the response fails before the response was committed.
+     */
+    private void streamMessages(Context ctx, MessageSource source) throws IOException {
         ctx.status(200);
-        ctx.json(mapper.writeValueAsString(messages));
+        ctx.contentType("application/json");
+        CompressingOutputStream out = responseStream(ctx);
+        JsonGenerator generator = JSON_MAPPER.createGenerator(out);
+        // Closing the generator must not finish the array for us when the query fails
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        try {
+            generator.writeStartArray();
+            source.writeTo(message -> {
+                generator.writeStartObject();
+                generator.writeNumberField("message_id", message.getMessage_id());
+                generator.writeNumberField("posted_by", message.getPosted_by());
+                generator.writeStringField("message_text", message.getMessage_text());
+                generator.writeNumberField("time_posted_epoch", message.getTime_posted_epoch());
+                generator.writeEndObject();
+            });
+            generator.writeEndArray();
+        } catch (IOException | RuntimeException e) {
+            abortStream(ctx, e);
+            throw e;
+        }
+        generator.close();
+        out.close();
+    }
+
+    /**
+     * Gives up on a streamed response. Whatever is still buffered is dropped; if part of the body has already been
+     * sent, the connection is cut without ending the body, since no status can be sent any more.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param cause Why the response is abandoned.
+     */
+    private static void abortStream(Context ctx, Throwable cause) {
+        if (!ctx.res().isCommitted()) {
+            ctx.res().resetBuffer();
+            ctx.res().setHeader("Content-Encoding", null);
+        } else if (ctx.res() instanceof Response) {
+            ((Response) ctx.res()).getHttpChannel().abort(cause);
+        }
+    }
+
+    /**
+     * Opens the response body, compressed with the best coding the client accepts. Javalin's own compression only
+     * looks at the size of the first write and does not offer deflate, so it is turned off in favor of this.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return a stream that must be closed to finish the body.
+     */
+    private CompressingOutputStream responseStream(Context ctx) {
+        CompressingOutputStream.Encoding encoding = negotiateEncoding(ctx);
+        return new CompressingOutputStream(ctx.outputStream(), encoding, compressionLevel, compressionMinSize,
+                () -> ctx.header("Content-Encoding", encoding.getHeaderValue()));
+    }
+
+    /**
+     * Picks the coding a response body will be compressed with and, when compression is on, marks the response
+     * as varying by Accept-Encoding.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return the coding to use, or null to send the body as it is.
+     */
+    private CompressingOutputStream.Encoding negotiateEncoding(Context ctx) {
+        if (!compressionEnabled) {
+            return null;
+        }
+        ctx.header("Vary", "Accept-Encoding");
+        return CompressingOutputStream.negotiate(ctx.header("Accept-Encoding"));
+    }
+
+    /**
+     * Writes the response for the value of a completed future, used by respond.
+     */
+    @FunctionalInterface
+    private interface ResultWriter<T> {
+        void write(T value) throws IOException;
+    }
+
+    /**
+     * A query that delivers its messages to a sink, used by streamMessages.
+     */
+    @FunctionalInterface
+    private interface MessageSource {
+        void writeTo(MessageSink sink) throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,44 @@
 package DAO;
 
 import Util.ConnectionUtil;
+import Util.Metrics;
+import Util.Timer;
 import Model.Account;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
+import java.util.Arrays;
+
+public class AccountDAO implements AccountRepository {
+    /**
+     * Time spent in each method, including borrowing the connection, with SQLExceptions counted as errors.
+     */
+    private static final Timer GET_ACCOUNT_BY_USERNAME_TIMER =
+            Metrics.getDefault().queryTimer("AccountDAO.getAccountByUsername");
+    private static final Timer GET_ACCOUNT_BY_ID_TIMER =
+            Metrics.getDefault().queryTimer("AccountDAO.getAccountById");
+    private static final Timer REGISTER_ACCOUNT_TIMER =
+            Metrics.getDefault().queryTimer("AccountDAO.registerAccount");
+    private static final Timer ACCOUNT_EXISTS_TIMER =
+            Metrics.getDefault().queryTimer("AccountDAO.accountExists");
+    private static final Timer GET_ALL_ACCOUNT_IDS_TIMER =
+            Metrics.getDefault().queryTimer("AccountDAO.getAllAccountIds");
+    private static final Timer GET_EXISTING_ACCOUNT_IDS_TIMER =
+            Metrics.getDefault().queryTimer("AccountDAO.getExistingAccountIds");
+    private static final Timer PIN_MESSAGE_AUTHORS_TIMER =
+            Metrics.getDefault().queryTimer("AccountDAO.pinMessageAuthors");
 
-public class AccountDAO {
     /**
      * retrives an account from the database by its username
      * @param username
      * @return the account object if found, null otherwise
      */
     public Account getAccountByUsername(String username) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "SELECT * FROM account WHERE username = ?";
@@ -31,6 +54,7 @@ public class AccountDAO {
                 return null; // No account found with the given username
             }
         } catch (SQLException e) {
+            GET_ACCOUNT_BY_USERNAME_TIMER.recordError();
             e.printStackTrace();
         } finally {
             try {
@@ -38,6 +62,7 @@ public class AccountDAO {
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            GET_ACCOUNT_BY_USERNAME_TIMER.recordSince(start);
         }
         return null;
     }
@@ -49,6 +74,7 @@ public class AccountDAO {
      * @return true if the account exists, false otherwise.
      */
     public Account getAccountById(int accountId) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "SELECT * FROM account WHERE account_id = ?";
@@ -61,6 +87,7 @@ public class AccountDAO {
                 return account; // Return the account if found
             }
         } catch (SQLException e) {
+            GET_ACCOUNT_BY_ID_TIMER.recordError();
             e.printStackTrace();
         } finally {
             try {
@@ -68,18 +95,21 @@ public class AccountDAO {
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            GET_ACCOUNT_BY_ID_TIMER.recordSince(start);
         }
         return null; // Default to false if an exception occurs
     }
 
     /**
-     * Registers a new account in the database.
+     * Registers a new account in the database. The unique constraint on username rejects duplicates atomically,
+     * even when two registrations for the same username race.
      * 
      * @param account The account to be registered.
      * The account_id will be auto-generated by the database because it is set to auto-increment.
      * @return The registered account with its account_id, username, and password. Returns null if registration fails.
      */
     public Account registerAccount(Account account) {
+        long start = System.nanoTime();
         Connection connection = ConnectionUtil.getConnection();
         try {
             String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
@@ -95,7 +125,10 @@ public class AccountDAO {
                 int generatedId = (int) pkeyResultSet.getInt(1);
                 return new Account(generatedId, account.getUsername(), account.getPassword());
             }
+        } catch (SQLIntegrityConstraintViolationException e) {
+            return null; // The username is already taken
         } catch (SQLException e) {
+            REGISTER_ACCOUNT_TIMER.recordError();
             System.out.println(e.getMessage());
         } finally {
             try {
@@ -103,7 +136,148 @@ public class AccountDAO {
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            REGISTER_ACCOUNT_TIMER.recordSince(start);
         }
         return null;
     }
+
+    /**
+     * Checks whether an account exists without reading its columns.
+     *
+     * @param accountId The account_id to check.
+     * @return true if the account exists, false otherwise.
+     */
+    public boolean accountExists(int accountId) {
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT 1 FROM account WHERE account_id = ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, accountId);
+            return preparedStatement.executeQuery().next();
+        } catch (SQLException e) {
+            ACCOUNT_EXISTS_TIMER.recordError();
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            ACCOUNT_EXISTS_TIMER.recordSince(start);
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the account_id of every account.
+     *
+     * @return The account IDs, or an empty array if the query fails.
+     */
+    public int[] getAllAccountIds() {
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT account_id FROM account";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            ResultSet rs = preparedStatement.executeQuery();
+            int[] accountIds = new int[64];
+            int count = 0;
+            while (rs.next()) {
+                if (count == accountIds.length) {
+                    accountIds = Arrays.copyOf(accountIds, count * 2);
+                }
+                accountIds[count++] = rs.getInt(1);
+            }
+            return Arrays.copyOf(accountIds, count);
+        } catch (SQLException e) {
+            GET_ALL_ACCOUNT_IDS_TIMER.recordError();
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            GET_ALL_ACCOUNT_IDS_TIMER.recordSince(start);
+        }
+        return new int[0];
+    }
+
+    /**
+     * Finds which of the given account IDs exist, in a single query.
+     *
+     * @param accountIds The account IDs to check. Must not be empty.
+     * @return The subset of the IDs that exist, or an empty array if the query fails.
+     */
+    public int[] getExistingAccountIds(int[] accountIds) {
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            StringBuilder sql = new StringBuilder("SELECT account_id FROM account WHERE account_id IN (");
+            for (int i = 0; i < accountIds.length; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            PreparedStatement preparedStatement = connection.prepareStatement(sql.toString());
+            for (int i = 0; i < accountIds.length; i++) {
+                preparedStatement.setInt(i + 1, accountIds[i]);
+            }
+            ResultSet rs = preparedStatement.executeQuery();
+            int[] existing = new int[accountIds.length];
+            int count = 0;
+            while (rs.next()) {
+                existing[count++] = rs.getInt(1);
+            }
+            return Arrays.copyOf(existing, count);
+        } catch (SQLException e) {
+            GET_EXISTING_ACCOUNT_IDS_TIMER.recordError();
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            GET_EXISTING_ACCOUNT_IDS_TIMER.recordSince(start);
+        }
+        return new int[0];
+    }
+
+    /**
+     * Adds a sharded_message_author row for each of the accounts that exist, in a single statement. The row's
+     * foreign key then refuses to let the account be deleted, as the message table's own foreign key does for
+     * messages kept in this database.
+     *
+     * @param accountIds The distinct account IDs to record. Must not be empty.
+     * @return the number of the accounts that exist, all of which are now recorded, or 0 if the statement fails.
+     */
+    public int pinMessageAuthors(int[] accountIds) {
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            StringBuilder sql = new StringBuilder("MERGE INTO sharded_message_author (account_id) KEY (account_id) "
+                    + "SELECT account_id FROM account WHERE account_id IN (");
+            for (int i = 0; i < accountIds.length; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            PreparedStatement preparedStatement = connection.prepareStatement(sql.toString());
+            for (int i = 0; i < accountIds.length; i++) {
+                preparedStatement.setInt(i + 1, accountIds[i]);
+            }
+            return preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            PIN_MESSAGE_AUTHORS_TIMER.recordError();
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            PIN_MESSAGE_AUTHORS_TIMER.recordSince(start);
+        }
+        return 0;
+    }
 }
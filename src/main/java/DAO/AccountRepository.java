@@ -0,0 +1,63 @@
+package DAO;
+
+import Model.Account;
+
+/**
+ * Stores accounts. AccountDAO keeps them in H2 and InMemoryStore keeps them on the heap; Repositories picks one at
+ * startup.
+ */
+public interface AccountRepository {
+    /**
+     * @param username The username to look up.
+     * @return the account with that username, or null if there is none.
+     */
+    Account getAccountByUsername(String username);
+
+    /**
+     * @param accountId The account_id to look up.
+     * @return the account with that ID, or null if there is none.
+     */
+    Account getAccountById(int accountId);
+
+    /**
+     * Registers a new account, rejecting a username that is already taken even when two registrations race.
+     *
+     * @param account The account to be registered.
+     * @return The registered account with its generated account_id, or null if registration fails.
+     */
+    Account registerAccount(Account account);
+
+    /**
+     * @param accountId The account_id to check.
+     * @return true if the account exists, false otherwise.
+     */
+    boolean accountExists(int accountId);
+
+    /**
+     * @return the account_id of every account.
+     */
+    int[] getAllAccountIds();
+
+    /**
+     * @param accountIds The account IDs to check. Must not be empty.
+     * @return The subset of the IDs that exist.
+     */
+    int[] getExistingAccountIds(int[] accountIds);
+
+    /**
+     * Records that the accounts have messages stored outside this repository, so they can no longer be deleted.
+     * Checking and recording happen in one statement, so an account cannot be deleted in between.
+     *
+     * @param accountIds The distinct account IDs to record. Must not be empty.
+     * @return the number of the accounts that exist, all of which are now recorded.
+     */
+    int pinMessageAuthors(int[] accountIds);
+
+    /**
+     * @return true if calls wait on I/O, so services should run them on the DatabaseExecutor instead of the
+     * calling thread.
+     */
+    default boolean isBlocking() {
+        return true;
+    }
+}
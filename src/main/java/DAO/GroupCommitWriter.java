@@ -0,0 +1,329 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DatabaseUnavailableException;
+import Util.Metrics;
+import Util.Timer;
+
+/**
+ * Inserts messages in groups so that many concurrent posters share one transaction commit.
+ *
+ * Callers hand a message to submit() and block until it has been written. A single writer thread takes the first
+ * waiting message, keeps collecting more until it has maxBatchSize of them or maxWaitMicros has passed, and then
+ * inserts the whole group as one JDBC batch inside a single transaction. Each caller gets back its own message with
+ * its generated message_id. If the batch fails, for example because one message has a posted_by with no account,
+ * the group is rolled back and retried one row at a time so only the bad rows fail. A row rejected by a constraint
+ * gives its caller null; any other database error gives it a DatabaseUnavailableException.
+ *
+ * A caller waits at most submitTimeoutMillis for the writer to start on its message. If the writer has not started
+ * by then the message is dropped and the caller gets a DatabaseUnavailableException. Once the writer has started,
+ * the caller waits for the outcome however long it takes, since the row may be committed and the caller must see
+ * it to publish the change.
+ */
+public class GroupCommitWriter {
+    private static final String INSERT_SQL =
+            "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+
+    /**
+     * Time spent writing each group, with failed batches counted as errors.
+     */
+    private static final Timer WRITE_TIMER = Metrics.getDefault().queryTimer("GroupCommitWriter.write");
+
+    /**
+     * How long submit() waits when no timeout is given to the constructor.
+     */
+    public static final long DEFAULT_SUBMIT_TIMEOUT_MILLIS = 5000;
+
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long submitTimeoutMillis;
+    private final LinkedBlockingQueue<PendingInsert> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    /**
+     * The error that stopped the writer thread, or null while it is running.
+     */
+    private volatile Throwable stopped;
+
+    /**
+     * Creates the writer and starts its background thread, with callers waiting at most
+     * DEFAULT_SUBMIT_TIMEOUT_MILLIS.
+     *
+     * @param maxBatchSize The largest number of messages inserted in one transaction.
+     * @param maxWaitMicros How long the writer waits for more messages after the first one arrives.
+     */
+    public GroupCommitWriter(int maxBatchSize, long maxWaitMicros) {
+        this(maxBatchSize, maxWaitMicros, DEFAULT_SUBMIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates the writer and starts its background thread.
+     *
+     * @param maxBatchSize The largest number of messages inserted in one transaction.
+     * @param maxWaitMicros How long the writer waits for more messages after the first one arrives.
+     * @param submitTimeoutMillis How long submit() waits for its message to be written.
+     */
+    public GroupCommitWriter(int maxBatchSize, long maxWaitMicros, long submitTimeoutMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        if (submitTimeoutMillis < 1) {
+            throw new IllegalArgumentException("submitTimeoutMillis must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.submitTimeoutMillis = submitTimeoutMillis;
+        this.writer = new Thread(this::run, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a message for insertion and waits until its group has been committed.
+     *
+     * @param message The message to insert.
+     * @return The inserted message with its generated ID, or null if a constraint rejected it, for example because
+     * posted_by names no account.
+     * @throws DatabaseUnavailableException if the writer did not start on the message within the submit timeout,
+     * or the insert failed for any reason other than a constraint.
+     */
+    public Message submit(Message message) {
+        if (stopped != null) {
+            throw new DatabaseUnavailableException("The group commit writer has stopped", stopped);
+        }
+        PendingInsert pending = new PendingInsert(message);
+        queue.add(pending);
+        try {
+            return pending.result.get(submitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (pending.abandon()) {
+                throw new DatabaseUnavailableException("Interrupted while waiting for the message to be written", e);
+            }
+        } catch (TimeoutException e) {
+            if (pending.abandon()) {
+                throw new DatabaseUnavailableException("Message was not written within " + submitTimeoutMillis
+                        + " ms", e);
+            }
+        } catch (ExecutionException e) {
+            throw unavailable(e.getCause());
+        }
+        // The writer has already started on the message, so it may be committed: wait for the outcome
+        return awaitStarted(pending);
+    }
+
+    private static Message awaitStarted(PendingInsert pending) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pending.result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw unavailable(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static DatabaseUnavailableException unavailable(Throwable cause) {
+        if (cause instanceof DatabaseUnavailableException) {
+            return (DatabaseUnavailableException) cause;
+        }
+        return new DatabaseUnavailableException("Writing the message failed: " + cause.getMessage(), cause);
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Take whatever is already queued without waiting, then wait only for the remainder.
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Callers that timed out while their message was queued no longer want it written
+                batch.removeIf(pending -> !pending.start());
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                fail(batch, e);
+            } catch (Throwable t) {
+                // An Error leaves this thread in an unknown state, so stop taking work and fail everyone waiting
+                stopped = t;
+                fail(batch, t);
+                List<PendingInsert> queued = new ArrayList<>();
+                queue.drainTo(queued);
+                fail(queued, t);
+                throw t;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private static void fail(List<PendingInsert> batch, Throwable cause) {
+        for (PendingInsert pending : batch) {
+            pending.result.completeExceptionally(cause);
+        }
+    }
+
+    private void write(List<PendingInsert> batch) {
+        long start = System.nanoTime();
+        Connection connection = ConnectionUtil.getConnection();
+        if (batch.size() == 1) {
+            // Nobody else was waiting, so a plain auto-commit insert is cheaper than a one-row transaction.
+            try {
+                writeIndividually(connection, batch);
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+                WRITE_TIMER.recordSince(start);
+            }
+            return;
+        }
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement preparedStatement = connection.prepareStatement(INSERT_SQL,
+                    Statement.RETURN_GENERATED_KEYS);
+            for (PendingInsert pending : batch) {
+                preparedStatement.setInt(1, pending.message.getPosted_by());
+                preparedStatement.setString(2, pending.message.getMessage_text());
+                preparedStatement.setLong(3, pending.message.getTime_posted_epoch());
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
+            int[] generatedIds = new int[batch.size()];
+            for (int i = 0; i < generatedIds.length; i++) {
+                if (!pkeyResultSet.next()) {
+                    throw new SQLException("Expected " + generatedIds.length + " generated keys, got " + i);
+                }
+                generatedIds[i] = pkeyResultSet.getInt(1);
+            }
+            connection.commit();
+            for (int i = 0; i < generatedIds.length; i++) {
+                Message message = batch.get(i).message;
+                batch.get(i).result.complete(new Message(generatedIds[i], message.getPosted_by(),
+                        message.getMessage_text(), message.getTime_posted_epoch()));
+            }
+        } catch (SQLException e) {
+            WRITE_TIMER.recordError();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                rollbackException.printStackTrace();
+            }
+            writeIndividually(connection, batch);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            WRITE_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Inserts each message in its own transaction. Used for groups of one and after a failed batch, so one bad row
+     * does not fail the rest.
+     */
+    private void writeIndividually(Connection connection, List<PendingInsert> batch) {
+        for (PendingInsert pending : batch) {
+            Message message = pending.message;
+            try {
+                connection.setAutoCommit(true);
+                PreparedStatement preparedStatement = connection.prepareStatement(INSERT_SQL,
+                        Statement.RETURN_GENERATED_KEYS);
+                preparedStatement.setInt(1, message.getPosted_by());
+                preparedStatement.setString(2, message.getMessage_text());
+                preparedStatement.setLong(3, message.getTime_posted_epoch());
+                preparedStatement.executeUpdate();
+                ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
+                pending.result.complete(pkeyResultSet.next()
+                        ? new Message(pkeyResultSet.getInt(1), message.getPosted_by(), message.getMessage_text(),
+                                message.getTime_posted_epoch())
+                        : null);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                pending.result.complete(null); // posted_by does not refer to an existing account
+            } catch (SQLException e) {
+                // Anything else, such as a lost connection, is not the caller's fault
+                System.out.println(e.getMessage());
+                pending.result.completeExceptionally(
+                        new DatabaseUnavailableException("Inserting the message failed: " + e.getMessage(), e));
+            }
+        }
+    }
+
+    /**
+     * A message waiting to be inserted, and the future its caller is blocked on.
+     */
+    private static final class PendingInsert {
+        private static final int QUEUED = 0;
+        private static final int STARTED = 1;
+        private static final int ABANDONED = 2;
+
+        private final Message message;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+        /**
+         * Moves from QUEUED to either STARTED, claimed by the writer, or ABANDONED, claimed by a caller that gave
+         * up. Whichever side moves it first decides whether the message is written.
+         */
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+
+        /**
+         * @return true if the writer may write the message, false if its caller has given up.
+         */
+        boolean start() {
+            return state.compareAndSet(QUEUED, STARTED);
+        }
+
+        /**
+         * @return true if the message will never be written, false if the writer has already started on it.
+         */
+        boolean abandon() {
+            return state.compareAndSet(QUEUED, ABANDONED);
+        }
+    }
+}
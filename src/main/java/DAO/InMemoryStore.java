@@ -0,0 +1,461 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Account;
+import Model.Message;
+import Util.PageCursor;
+
+/**
+ * Keeps accounts and messages on the heap, for deployments that value latency over durability and for tests that
+ * should not touch H2. Nothing survives a restart.
+ *
+ * Messages and accounts are held in IntObjectHashMaps keyed by their IDs, and each account's messages are also
+ * indexed in an array sorted by time_posted_epoch and message_id, so paging through one account's messages is a
+ * binary search and a copy. Each of these maps is split into 64 stripes by key, each guarded by its own
+ * read-write lock, so operations on different messages or accounts rarely contend and readers never block each
+ * other. A concurrent skip list orders all messages by time_posted_epoch and message_id for the global list and
+ * its pages.
+ *
+ * A new message is added to the indexes before it becomes visible by ID, and a deleted one is removed by ID before
+ * it leaves the indexes, so whichever of a delete and an update takes the message's stripe lock first wins, and a
+ * page may briefly include a message that is being added or deleted.
+ */
+public class InMemoryStore implements MessageRepository, AccountRepository {
+    private static final int STRIPES = 64;
+    private static final Comparator<Message> BY_TIME = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+    /**
+     * Passed as the author to deleteMessage and updateMessage when any account's message may be changed. Account
+     * IDs start at 1.
+     */
+    private static final int ANY_AUTHOR = 0;
+
+    private final Stripe<Message>[] messages = newStripes();
+    private final Stripe<AccountMessages>[] messagesByAccount = newStripes();
+    private final Stripe<Account>[] accounts = newStripes();
+    private final Map<String, Account> accountsByUsername = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Message, Message> messagesByTime = new ConcurrentSkipListMap<>(BY_TIME);
+    private final AtomicInteger nextMessageId = new AtomicInteger(1);
+    private final AtomicInteger nextAccountId = new AtomicInteger(1);
+
+    /**
+     * Java cannot create an array of a generic type, so this is the one place that casts a wildcard array.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Stripe<V>[] newStripes() {
+        Stripe<V>[] stripes = (Stripe<V>[]) new Stripe<?>[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        return stripes;
+    }
+
+    private static <V> Stripe<V> stripe(Stripe<V>[] stripes, int key) {
+        return stripes[key & (STRIPES - 1)];
+    }
+
+    /**
+     * Removes every account and message and starts IDs from 1 again.
+     */
+    public void clear() {
+        for (Stripe<?>[] stripes : List.of(messages, messagesByAccount, accounts)) {
+            for (Stripe<?> stripe : stripes) {
+                stripe.lock.writeLock().lock();
+                try {
+                    stripe.map.clear();
+                } finally {
+                    stripe.lock.writeLock().unlock();
+                }
+            }
+        }
+        accountsByUsername.clear();
+        messagesByTime.clear();
+        nextMessageId.set(1);
+        nextAccountId.set(1);
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public Message addMessage(Message message) {
+        if (!accountExists(message.getPosted_by())) {
+            return null;
+        }
+        return store(message);
+    }
+
+    @Override
+    public List<Message> addMessages(List<Message> batch) {
+        for (Message message : batch) {
+            if (!accountExists(message.getPosted_by())) {
+                return null; // Accounts are never deleted, so checking first makes the batch all or nothing
+            }
+        }
+        List<Message> added = new ArrayList<>(batch.size());
+        for (Message message : batch) {
+            added.add(store(message));
+        }
+        return added;
+    }
+
+    private Message store(Message message) {
+        Message stored = new Message(nextMessageId.getAndIncrement(), message.getPosted_by(),
+                message.getMessage_text(), message.getTime_posted_epoch());
+        messagesByTime.put(stored, stored);
+        Stripe<AccountMessages> byAccount = stripe(messagesByAccount, stored.getPosted_by());
+        byAccount.lock.writeLock().lock();
+        try {
+            AccountMessages accountMessages = byAccount.map.get(stored.getPosted_by());
+            if (accountMessages == null) {
+                accountMessages = new AccountMessages();
+                byAccount.map.put(stored.getPosted_by(), accountMessages);
+            }
+            accountMessages.insert(stored);
+        } finally {
+            byAccount.lock.writeLock().unlock();
+        }
+        Stripe<Message> byId = stripe(messages, stored.getMessage_id());
+        byId.lock.writeLock().lock();
+        try {
+            byId.map.put(stored.getMessage_id(), stored);
+        } finally {
+            byId.lock.writeLock().unlock();
+        }
+        return stored;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return new ArrayList<>(messagesByTime.values());
+    }
+
+    @Override
+    public Message getMessageById(int messageId) {
+        Stripe<Message> byId = stripe(messages, messageId);
+        byId.lock.readLock().lock();
+        try {
+            return byId.map.get(messageId);
+        } finally {
+            byId.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        List<Message> found = new ArrayList<>(messageIds.length);
+        for (int messageId : messageIds) {
+            Message message = getMessageById(messageId);
+            if (message != null) {
+                found.add(message);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Message deleteMessageById(int messageId) {
+        return deleteMessage(messageId, ANY_AUTHOR);
+    }
+
+    @Override
+    public Message deleteMessageByIdAndAuthor(int messageId, int postedBy) {
+        return deleteMessage(messageId, postedBy);
+    }
+
+    /**
+     * Removes a message, checking its author under the same lock as the removal.
+     */
+    private Message deleteMessage(int messageId, int postedBy) {
+        Stripe<Message> byId = stripe(messages, messageId);
+        Message deleted;
+        byId.lock.writeLock().lock();
+        try {
+            Message current = byId.map.get(messageId);
+            if (current == null || (postedBy != ANY_AUTHOR && current.getPosted_by() != postedBy)) {
+                return null;
+            }
+            deleted = byId.map.remove(messageId);
+        } finally {
+            byId.lock.writeLock().unlock();
+        }
+        if (deleted == null) {
+            return null;
+        }
+        messagesByTime.remove(deleted);
+        Stripe<AccountMessages> byAccount = stripe(messagesByAccount, deleted.getPosted_by());
+        byAccount.lock.writeLock().lock();
+        try {
+            AccountMessages accountMessages = byAccount.map.get(deleted.getPosted_by());
+            if (accountMessages != null) {
+                accountMessages.remove(deleted);
+            }
+        } finally {
+            byAccount.lock.writeLock().unlock();
+        }
+        return deleted;
+    }
+
+    @Override
+    public Message updateMessageById(Message message) {
+        return updateMessage(message, ANY_AUTHOR);
+    }
+
+    @Override
+    public Message updateMessageByIdAndAuthor(Message message, int postedBy) {
+        return updateMessage(message, postedBy);
+    }
+
+    /**
+     * Replaces a message's text, checking its author under the same lock as the update.
+     *
+     * @return the message as it was before the update, or null if it was not changed.
+     */
+    private Message updateMessage(Message message, int postedBy) {
+        Stripe<Message> byId = stripe(messages, message.getMessage_id());
+        Message current;
+        Message updated;
+        byId.lock.writeLock().lock();
+        try {
+            current = byId.map.get(message.getMessage_id());
+            if (current == null || (postedBy != ANY_AUTHOR && current.getPosted_by() != postedBy)) {
+                return null;
+            }
+            updated = new Message(current.getMessage_id(), current.getPosted_by(), message.getMessage_text(),
+                    current.getTime_posted_epoch());
+            byId.map.put(updated.getMessage_id(), updated);
+        } finally {
+            byId.lock.writeLock().unlock();
+        }
+        messagesByTime.replace(updated, updated);
+        Stripe<AccountMessages> byAccount = stripe(messagesByAccount, updated.getPosted_by());
+        byAccount.lock.writeLock().lock();
+        try {
+            AccountMessages accountMessages = byAccount.map.get(updated.getPosted_by());
+            if (accountMessages != null) {
+                accountMessages.replace(updated);
+            }
+        } finally {
+            byAccount.lock.writeLock().unlock();
+        }
+        return current;
+    }
+
+    @Override
+    public List<Message> getAllMessagesByAccountId(int accountId) {
+        return getMessagesPageByAccountId(accountId, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Message> getMessagesPage(PageCursor after, int limit) {
+        NavigableMap<Message, Message> tail = after == null ? messagesByTime
+                : messagesByTime.tailMap(new Message(after.getMessageId(), 0, null, after.getTimePostedEpoch()),
+                        false);
+        List<Message> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Message message : tail.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(message);
+        }
+        return page;
+    }
+
+    @Override
+    public List<Message> getMessagesPageByAccountId(int accountId, PageCursor after, int limit) {
+        Stripe<AccountMessages> byAccount = stripe(messagesByAccount, accountId);
+        byAccount.lock.readLock().lock();
+        try {
+            AccountMessages accountMessages = byAccount.map.get(accountId);
+            if (accountMessages == null) {
+                return new ArrayList<>();
+            }
+            int from = after == null ? 0
+                    : accountMessages.indexAfter(after.getTimePostedEpoch(), after.getMessageId());
+            return accountMessages.copy(from, limit);
+        } finally {
+            byAccount.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        for (Message message : messagesByTime.values()) {
+            sink.accept(message);
+        }
+    }
+
+    @Override
+    public void streamMessagesByAccountId(int accountId, MessageSink sink) throws IOException {
+        // Copied first so the sink, which may write to a slow client, runs without holding the lock
+        for (Message message : getAllMessagesByAccountId(accountId)) {
+            sink.accept(message);
+        }
+    }
+
+    @Override
+    public Account getAccountByUsername(String username) {
+        return username == null ? null : accountsByUsername.get(username);
+    }
+
+    @Override
+    public Account getAccountById(int accountId) {
+        Stripe<Account> byId = stripe(accounts, accountId);
+        byId.lock.readLock().lock();
+        try {
+            return byId.map.get(accountId);
+        } finally {
+            byId.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Account registerAccount(Account account) {
+        boolean[] created = new boolean[1];
+        Account registered = accountsByUsername.computeIfAbsent(account.getUsername(), username -> {
+            created[0] = true;
+            return new Account(nextAccountId.getAndIncrement(), username, account.getPassword());
+        });
+        if (!created[0]) {
+            return null; // The username is already taken
+        }
+        Stripe<Account> byId = stripe(accounts, registered.getAccount_id());
+        byId.lock.writeLock().lock();
+        try {
+            byId.map.put(registered.getAccount_id(), registered);
+        } finally {
+            byId.lock.writeLock().unlock();
+        }
+        return registered;
+    }
+
+    @Override
+    public boolean accountExists(int accountId) {
+        return getAccountById(accountId) != null;
+    }
+
+    @Override
+    public int[] getAllAccountIds() {
+        List<Account> all = new ArrayList<>();
+        for (Stripe<Account> stripe : accounts) {
+            stripe.lock.readLock().lock();
+            try {
+                stripe.map.addValuesTo(all);
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        int[] accountIds = new int[all.size()];
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = all.get(i).getAccount_id();
+        }
+        Arrays.sort(accountIds);
+        return accountIds;
+    }
+
+    /**
+     * Accounts are never deleted from the store, so this only counts the accounts that exist.
+     */
+    @Override
+    public int pinMessageAuthors(int[] accountIds) {
+        return getExistingAccountIds(accountIds).length;
+    }
+
+    @Override
+    public int[] getExistingAccountIds(int[] accountIds) {
+        int[] existing = new int[accountIds.length];
+        int count = 0;
+        for (int accountId : accountIds) {
+            if (accountExists(accountId)) {
+                existing[count++] = accountId;
+            }
+        }
+        return Arrays.copyOf(existing, count);
+    }
+
+    /**
+     * One stripe of a map: the entries whose keys share the stripe's low bits, and the lock that guards them.
+     */
+    private static final class Stripe<V> {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final IntObjectHashMap<V> map = new IntObjectHashMap<>();
+    }
+
+    /**
+     * The messages of one account, sorted by time_posted_epoch and then message_id. Messages are usually posted
+     * in time order, so an insert is normally an append.
+     */
+    private static final class AccountMessages {
+        private Message[] sorted = new Message[4];
+        private int size;
+
+        void insert(Message message) {
+            int index = indexAfter(message.getTime_posted_epoch(), message.getMessage_id());
+            if (size == sorted.length) {
+                sorted = Arrays.copyOf(sorted, size * 2);
+            }
+            System.arraycopy(sorted, index, sorted, index + 1, size - index);
+            sorted[index] = message;
+            size++;
+        }
+
+        void remove(Message message) {
+            int index = indexOf(message);
+            if (index >= 0) {
+                System.arraycopy(sorted, index + 1, sorted, index, size - index - 1);
+                sorted[--size] = null;
+            }
+        }
+
+        void replace(Message message) {
+            int index = indexOf(message);
+            if (index >= 0) {
+                sorted[index] = message;
+            }
+        }
+
+        List<Message> copy(int from, int limit) {
+            int to = (int) Math.min(size, (long) from + limit);
+            return new ArrayList<>(Arrays.asList(sorted).subList(from, Math.max(from, to)));
+        }
+
+        /**
+         * @return the index of the first message that sorts after the given position.
+         */
+        int indexAfter(long timePostedEpoch, int messageId) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                Message candidate = sorted[mid];
+                int order = candidate.getTime_posted_epoch() != timePostedEpoch
+                        ? Long.compare(candidate.getTime_posted_epoch(), timePostedEpoch)
+                        : Integer.compare(candidate.getMessage_id(), messageId);
+                if (order <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int indexOf(Message message) {
+            int index = indexAfter(message.getTime_posted_epoch(), message.getMessage_id()) - 1;
+            return index >= 0 && sorted[index].getMessage_id() == message.getMessage_id() ? index : -1;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package DAO;
+
+import java.util.Collection;
+
+/**
+ * A hash map from int keys to non-null values, with the keys stored unboxed.
+ *
+ * Entries live in two parallel arrays and collisions are resolved by linear probing, so a lookup is a multiply, a
+ * mask and usually one or two array reads, with no Integer or entry objects allocated. Removal shifts later entries
+ * back instead of leaving tombstones. The map is not thread-safe; InMemoryStore guards each one with a lock.
+ */
+final class IntObjectHashMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    IntObjectHashMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return the value for the key, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * @param key The key to store the value under.
+     * @param value The value. Must not be null.
+     * @return the value previously stored under the key, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                Object previous = values[i];
+                values[i] = value;
+                return (V) previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) * 3 / 4) {
+            rehash((mask + 1) * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @param key The key to remove.
+     * @return the value that was stored under the key, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                Object previous = values[i];
+                shiftBack(i);
+                size--;
+                return (V) previous;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds every value to a collection, in no particular order.
+     *
+     * @param out The collection to add to.
+     */
+    @SuppressWarnings("unchecked")
+    void addValuesTo(Collection<? super V> out) {
+        for (Object value : values) {
+            if (value != null) {
+                out.add((V) value);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry and shrinks the map back to its initial capacity.
+     */
+    void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * Closes the gap left at index gap by moving back any later entry in the same probe run that would otherwise
+     * become unreachable.
+     */
+    private void shiftBack(int gap) {
+        for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9; // Fibonacci hashing spreads sequential IDs across the table
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -1,26 +1,139 @@
 package DAO;
 
+import Util.AppConfig;
 import Util.ConnectionUtil;
+import Util.DatabaseUnavailableException;
+import Util.Metrics;
+import Util.Timer;
+import Util.PageCursor;
 import Model.Message;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
-public class MessageDAO {
+public class MessageDAO implements MessageRepository {
+    /**
+     * Number of rows fetched at a time when streaming a result set from an H2 TCP server. Embedded H2 ignores it;
+     * there the streaming queries run with LAZY_QUERY_EXECUTION so rows are produced as they are read instead of
+     * the whole result being built first.
+     */
+    private static final int STREAM_FETCH_SIZE = 256;
+
+    /**
+     * Time spent in each method, including borrowing the connection, with SQLExceptions counted as errors.
+     */
+    private static final Timer INSERT_MESSAGE_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.insertMessage");
+    private static final Timer ADD_MESSAGES_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.addMessages");
+    private static final Timer GET_ALL_MESSAGES_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.getAllMessages");
+    private static final Timer GET_MESSAGE_BY_ID_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.getMessageById");
+    private static final Timer GET_MESSAGES_BY_IDS_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.getMessagesByIds");
+    private static final Timer DELETE_MESSAGE_BY_ID_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.deleteMessageById");
+    private static final Timer DELETE_MESSAGE_BY_ID_AND_AUTHOR_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.deleteMessageByIdAndAuthor");
+    private static final Timer UPDATE_MESSAGE_BY_ID_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.updateMessageById");
+    private static final Timer UPDATE_MESSAGE_BY_ID_AND_AUTHOR_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.updateMessageByIdAndAuthor");
+    private static final Timer GET_ALL_MESSAGES_BY_ACCOUNT_ID_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.getAllMessagesByAccountId");
+    private static final Timer GET_MESSAGES_PAGE_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.getMessagesPage");
+    private static final Timer GET_MESSAGES_PAGE_BY_ACCOUNT_ID_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.getMessagesPageByAccountId");
+    private static final Timer STREAM_ALL_MESSAGES_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.streamAllMessages");
+    private static final Timer STREAM_MESSAGES_BY_ACCOUNT_ID_TIMER =
+            Metrics.getDefault().queryTimer("MessageDAO.streamMessagesByAccountId");
+
+    /**
+     * Shared writer used by addMessage when group commit is enabled with
+     * socialmedia.messages.groupCommit.enabled=true, or null when every insert commits on its own.
+     */
+    private static final GroupCommitWriter GROUP_COMMIT_WRITER =
+            AppConfig.getBoolean("socialmedia.messages.groupCommit.enabled", false)
+                    ? new GroupCommitWriter(
+                            AppConfig.getInt("socialmedia.messages.groupCommit.maxBatchSize", 64),
+                            AppConfig.getLong("socialmedia.messages.groupCommit.maxWaitMicros", 0),
+                            AppConfig.getLong("socialmedia.messages.groupCommit.submitTimeoutMillis",
+                                    GroupCommitWriter.DEFAULT_SUBMIT_TIMEOUT_MILLIS))
+                    : null;
 
     /**
-     * Adds a message to the database.
+     * Opens connections to the database holding the message table.
+     */
+    private final Supplier<Connection> connections;
+
+    /**
+     * The group commit writer used by addMessage, or null to insert each message on its own.
+     */
+    private final GroupCommitWriter groupCommitWriter;
+
+    /**
+     * When true, reads throw DatabaseUnavailableException on a database error instead of answering as if nothing
+     * matched. Set for shards, where one shard's empty answer would silently drop its rows from a merged result.
+     */
+    private final boolean failReads;
+
+    /**
+     * Creates a DAO for the message table in the main database.
+     */
+    public MessageDAO() {
+        this.connections = ConnectionUtil::getConnection;
+        this.groupCommitWriter = GROUP_COMMIT_WRITER;
+        this.failReads = false;
+    }
+
+    /**
+     * Creates a DAO for a message table in another database, such as one shard's. Group commit is not used, since
+     * the shared writer only knows the main database. Failed reads throw DatabaseUnavailableException rather than
+     * returning nothing.
+     *
+     * @param connections Opens a connection to that database, throwing if it cannot.
+     */
+    MessageDAO(Supplier<Connection> connections) {
+        this.connections = connections;
+        this.groupCommitWriter = null;
+        this.failReads = true;
+    }
+
+    /**
+     * Adds a message to the database. The foreign key on posted_by rejects messages from accounts that do not
+     * exist, so no separate existence check is needed. When group commit is enabled, the insert is queued and
+     * committed together with other concurrent inserts.
      * 
      * @param message The message to be added.
      * @return The added message with its generated ID, or null if the operation fails.
      */
     public Message addMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
+        if (groupCommitWriter != null) {
+            return groupCommitWriter.submit(message);
+        }
+        return insertMessage(message);
+    }
+
+    /**
+     * Inserts a single message in its own auto-committed statement.
+     * 
+     * @param message The message to be added.
+     * @return The added message with its generated ID, or null if the operation fails.
+     */
+    Message insertMessage(Message message) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
         try {
             String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
@@ -37,7 +150,10 @@ public class MessageDAO {
                 // Return the message with the generated ID
                 return new Message(generatedId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
             }
+        } catch (SQLIntegrityConstraintViolationException e) {
+            return null; // posted_by does not refer to an existing account
         } catch (SQLException e) {
+            INSERT_MESSAGE_TIMER.recordError();
             System.out.println(e.getMessage());
         } finally {
             try {
@@ -45,17 +161,84 @@ public class MessageDAO {
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            INSERT_MESSAGE_TIMER.recordSince(start);
         }
         return null; // Placeholder return statement
     }
 
+    /**
+     * Adds several messages to the database as one JDBC batch in a single transaction. Either every message is
+     * added or none are.
+     * 
+     * @param messages The messages to be added.
+     * @return The added messages with their generated IDs, in the same order, or null if the batch fails.
+     */
+    public List<Message> addMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            connection.setAutoCommit(false);
+            List<Message> added = insertMessages(connection, messages);
+            connection.commit();
+            return added;
+        } catch (SQLException e) {
+            ADD_MESSAGES_TIMER.recordError();
+            System.out.println(e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                rollbackException.printStackTrace();
+            }
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            ADD_MESSAGES_TIMER.recordSince(start);
+        }
+        return null;
+    }
+
+    /**
+     * Inserts several messages as one JDBC batch on a connection the caller has put in a transaction. The caller
+     * commits or rolls back.
+     *
+     * @param connection The connection to insert on.
+     * @param messages The messages to be added.
+     * @return The added messages with their generated IDs, in the same order.
+     * @throws SQLException if any insert fails.
+     */
+    List<Message> insertMessages(Connection connection, List<Message> messages) throws SQLException {
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+        PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        for (Message message : messages) {
+            preparedStatement.setInt(1, message.getPosted_by());
+            preparedStatement.setString(2, message.getMessage_text());
+            preparedStatement.setLong(3, message.getTime_posted_epoch());
+            preparedStatement.addBatch();
+        }
+        preparedStatement.executeBatch();
+        ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
+        List<Message> added = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            if (!pkeyResultSet.next()) {
+                throw new SQLException("Missing generated key for batch insert");
+            }
+            added.add(new Message(pkeyResultSet.getInt(1), message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch()));
+        }
+        return added;
+    }
+
     /**
      * Retrieves all messages from the database.
      * 
      * @return A list of all messages, or an empty list if no messages are found.
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
+        long start = System.nanoTime();
+        Connection connection = connections.get();
         List<Message> messages = new ArrayList<>();
         try {
             String sql = "SELECT * FROM message";
@@ -74,13 +257,16 @@ public class MessageDAO {
             }
             return messages; // Return the list of messages
         } catch (SQLException e) {
+            GET_ALL_MESSAGES_TIMER.recordError();
             System.out.println(e.getMessage());
+            readFailed(e);
         } finally {
             try {
                 connection.close();
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            GET_ALL_MESSAGES_TIMER.recordSince(start);
         }
         return new ArrayList<>(); // return an empty list regardless if an exception occurs
     }
@@ -92,7 +278,8 @@ public class MessageDAO {
      * @return The message with the specified ID, or null if no such message is found.
      */
     public Message getMessageById(int messageId) {
-        Connection connection = ConnectionUtil.getConnection();
+        long start = System.nanoTime();
+        Connection connection = connections.get();
         try {
             String sql = "SELECT * FROM message WHERE message_id = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
@@ -107,30 +294,165 @@ public class MessageDAO {
                 );
             }
         } catch (SQLException e) {
+            GET_MESSAGE_BY_ID_TIMER.recordError();
             e.printStackTrace();
+            readFailed(e);
         } finally {
             try {
                 connection.close();
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            GET_MESSAGE_BY_ID_TIMER.recordSince(start);
         }
         return null;
     }
 
     /**
-     * Deletes a message by its ID from the database.
+     * Retrieves several messages by their IDs in a single query.
+     *
+     * @param messageIds The IDs of the messages to be retrieved, in ascending order. Must not be empty.
+     * @return The messages that exist, ordered by message_id, or an empty list if the query fails.
+     */
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            StringBuilder sql = new StringBuilder("SELECT * FROM message WHERE message_id IN (");
+            for (int i = 0; i < messageIds.length; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(") ORDER BY message_id");
+            PreparedStatement preparedStatement = connection.prepareStatement(sql.toString());
+            for (int i = 0; i < messageIds.length; i++) {
+                preparedStatement.setInt(i + 1, messageIds[i]);
+            }
+            ResultSet rs = preparedStatement.executeQuery();
+            List<Message> messages = new ArrayList<>(messageIds.length);
+            while (rs.next()) {
+                messages.add(new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                ));
+            }
+            return messages;
+        } catch (SQLException e) {
+            GET_MESSAGES_BY_IDS_TIMER.recordError();
+            e.printStackTrace();
+            readFailed(e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            GET_MESSAGES_BY_IDS_TIMER.recordSince(start);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Deletes a message by its ID from the database and returns the deleted row, in a single statement.
      * 
      * @param messageId The ID of the message to be deleted.
+     * @return The message as it was before deletion, or null if no such message existed.
      */
-    public void deleteMessageById(int messageId) {
-        Connection connection = ConnectionUtil.getConnection();
+    public Message deleteMessageById(int messageId) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
         try {
-            String sql = "DELETE FROM message WHERE message_id = ?";
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, messageId);
-            preparedStatement.executeUpdate();
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                return new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                );
+            }
+        } catch (SQLException e) {
+            DELETE_MESSAGE_BY_ID_TIMER.recordError();
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            DELETE_MESSAGE_BY_ID_TIMER.recordSince(start);
+        }
+        return null;
+    }
+
+    /**
+     * Deletes a message by its ID and author and returns the deleted row, in a single statement, so the message
+     * cannot change hands between the ownership check and the delete.
+     * 
+     * @param messageId The ID of the message to be deleted.
+     * @param postedBy The account that must have posted the message.
+     * @return The message as it was before deletion, or null if no such message by that account existed.
+     */
+    public Message deleteMessageByIdAndAuthor(int messageId, int postedBy) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ? AND posted_by = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, messageId);
+            preparedStatement.setInt(2, postedBy);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                return new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                );
+            }
+        } catch (SQLException e) {
+            DELETE_MESSAGE_BY_ID_AND_AUTHOR_TIMER.recordError();
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            DELETE_MESSAGE_BY_ID_AND_AUTHOR_TIMER.recordSince(start);
+        }
+        return null;
+    }
+
+    /**
+     * Updates the text of a message by its ID and returns the row as it was before, in a single statement.
+     * 
+     * @param message The message to be updated, carrying its message_id and new message_text.
+     * @return The message as it was before the update, or null if no such message exists.
+     */
+    public Message updateMessageById(Message message) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            String sql = "SELECT * FROM OLD TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, message.getMessage_text());
+            preparedStatement.setInt(2, message.getMessage_id());
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                return new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                );
+            }
         } catch (SQLException e) {
+            UPDATE_MESSAGE_BY_ID_TIMER.recordError();
             e.printStackTrace();
         } finally {
             try {
@@ -138,23 +460,40 @@ public class MessageDAO {
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            UPDATE_MESSAGE_BY_ID_TIMER.recordSince(start);
         }
+        return null;
     }
 
     /**
-     * Updates a message by its ID in the database.
+     * Updates the text of a message by its ID and author and returns the row as it was before, in a single
+     * statement.
      * 
-     * @param message The message to be updated.
+     * @param message The message to be updated, carrying its message_id and new message_text.
+     * @param postedBy The account that must have posted the message.
+     * @return The message as it was before the update, or null if no such message by that account exists.
      */
-    public void updateMessageById(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
+    public Message updateMessageByIdAndAuthor(Message message, int postedBy) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
         try {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
+            String sql = "SELECT * FROM OLD TABLE "
+                    + "(UPDATE message SET message_text = ? WHERE message_id = ? AND posted_by = ?)";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setString(1, message.getMessage_text());
             preparedStatement.setInt(2, message.getMessage_id());
-            preparedStatement.executeUpdate();
+            preparedStatement.setInt(3, postedBy);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                return new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                );
+            }
         } catch (SQLException e) {
+            UPDATE_MESSAGE_BY_ID_AND_AUTHOR_TIMER.recordError();
             e.printStackTrace();
         } finally {
             try {
@@ -162,7 +501,9 @@ public class MessageDAO {
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            UPDATE_MESSAGE_BY_ID_AND_AUTHOR_TIMER.recordSince(start);
         }
+        return null;
     }
 
     /**
@@ -172,7 +513,8 @@ public class MessageDAO {
      * @return A list of messages posted by the specified account, or an empty list if no messages are found.
      */
     public List<Message> getAllMessagesByAccountId(int accountId) {
-        Connection connection = ConnectionUtil.getConnection();
+        long start = System.nanoTime();
+        Connection connection = connections.get();
         List<Message> messages = new ArrayList<>();
         try {
             String sql = "SELECT * FROM message WHERE posted_by = ?";
@@ -192,14 +534,226 @@ public class MessageDAO {
             }
             return messages; // Return the list of messages
         } catch (SQLException e) {
+            GET_ALL_MESSAGES_BY_ACCOUNT_ID_TIMER.recordError();
             System.out.println(e.getMessage());
+            readFailed(e);
         } finally {
             try {
                 connection.close();
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            GET_ALL_MESSAGES_BY_ACCOUNT_ID_TIMER.recordSince(start);
         }
         return new ArrayList<>(); // return an empty list regardless if an exception occurs
     }
+
+    /**
+     * Retrieves one page of messages ordered by time_posted_epoch and then message_id, starting after the given
+     * cursor position. Paging is keyset based, so each page costs the same regardless of how deep it is.
+     *
+     * @param after The position of the last message on the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return The messages on the page, or an empty list if there are none.
+     */
+    public List<Message> getMessagesPage(PageCursor after, int limit) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            String sql = after == null
+                    ? "SELECT * FROM message ORDER BY time_posted_epoch, message_id LIMIT ?"
+                    : "SELECT * FROM message WHERE time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) "
+                            + "ORDER BY time_posted_epoch, message_id LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            int index = 1;
+            if (after != null) {
+                preparedStatement.setLong(index++, after.getTimePostedEpoch());
+                preparedStatement.setLong(index++, after.getTimePostedEpoch());
+                preparedStatement.setInt(index++, after.getMessageId());
+            }
+            preparedStatement.setInt(index, limit);
+            return readMessages(preparedStatement.executeQuery());
+        } catch (SQLException e) {
+            GET_MESSAGES_PAGE_TIMER.recordError();
+            System.out.println(e.getMessage());
+            readFailed(e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            GET_MESSAGES_PAGE_TIMER.recordSince(start);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Retrieves one page of the messages posted by an account, ordered by time_posted_epoch and then message_id,
+     * starting after the given cursor position.
+     *
+     * @param accountId The ID of the account whose messages are to be retrieved.
+     * @param after The position of the last message on the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return The messages on the page, or an empty list if there are none.
+     */
+    public List<Message> getMessagesPageByAccountId(int accountId, PageCursor after, int limit) {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            // H2 otherwise prefers the single-column foreign key index and sorts every row the account has posted.
+            String sql = after == null
+                    ? "SELECT * FROM message USE INDEX (message_posted_by_time_idx) WHERE posted_by = ? "
+                            + "ORDER BY posted_by, time_posted_epoch, message_id LIMIT ?"
+                    : "SELECT * FROM message USE INDEX (message_posted_by_time_idx) WHERE posted_by = ? "
+                            + "AND time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) "
+                            + "ORDER BY posted_by, time_posted_epoch, message_id LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            int index = 1;
+            preparedStatement.setInt(index++, accountId);
+            if (after != null) {
+                preparedStatement.setLong(index++, after.getTimePostedEpoch());
+                preparedStatement.setLong(index++, after.getTimePostedEpoch());
+                preparedStatement.setInt(index++, after.getMessageId());
+            }
+            preparedStatement.setInt(index, limit);
+            return readMessages(preparedStatement.executeQuery());
+        } catch (SQLException e) {
+            GET_MESSAGES_PAGE_BY_ACCOUNT_ID_TIMER.recordError();
+            System.out.println(e.getMessage());
+            readFailed(e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            GET_MESSAGES_PAGE_BY_ACCOUNT_ID_TIMER.recordSince(start);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Streams all messages to the given sink as rows are read, without building a list.
+     *
+     * @param sink Receives each message in turn.
+     * @throws IOException if the sink fails or the query fails part way; the query is abandoned at that point.
+     */
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            startLazyExecution(connection);
+            String sql = "SELECT * FROM message";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            streamMessages(preparedStatement.executeQuery(), sink);
+        } catch (SQLException e) {
+            STREAM_ALL_MESSAGES_TIMER.recordError();
+            throw new IOException("Reading messages failed: " + e.getMessage(), e);
+        } finally {
+            try {
+                endLazyExecution(connection);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                // Closed even if resetting lazy execution failed, for example after the client went away
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            STREAM_ALL_MESSAGES_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Streams all messages posted by a specific account to the given sink as rows are read, without building a
+     * list.
+     *
+     * @param accountId The ID of the account whose messages are to be streamed.
+     * @param sink Receives each message in turn.
+     * @throws IOException if the sink fails or the query fails part way; the query is abandoned at that point.
+     */
+    public void streamMessagesByAccountId(int accountId, MessageSink sink) throws IOException {
+        long start = System.nanoTime();
+        Connection connection = connections.get();
+        try {
+            startLazyExecution(connection);
+            String sql = "SELECT * FROM message WHERE posted_by = ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, accountId);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            streamMessages(preparedStatement.executeQuery(), sink);
+        } catch (SQLException e) {
+            STREAM_MESSAGES_BY_ACCOUNT_ID_TIMER.recordError();
+            throw new IOException("Reading messages failed: " + e.getMessage(), e);
+        } finally {
+            try {
+                endLazyExecution(connection);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            STREAM_MESSAGES_BY_ACCOUNT_ID_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Rethrows a read's error as DatabaseUnavailableException when failReads is set; otherwise the caller goes on
+     * to return its empty result.
+     */
+    private void readFailed(SQLException e) {
+        if (failReads) {
+            throw new DatabaseUnavailableException("Reading messages failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Makes H2 produce the rows of the next queries on this connection as they are fetched, so a streamed result
+     * is never held in memory as a whole.
+     */
+    private static void startLazyExecution(Connection connection) throws SQLException {
+        connection.createStatement().execute("SET LAZY_QUERY_EXECUTION TRUE");
+    }
+
+    /**
+     * Turns lazy execution off again before the connection goes back to the pool.
+     */
+    private static void endLazyExecution(Connection connection) throws SQLException {
+        connection.createStatement().execute("SET LAZY_QUERY_EXECUTION FALSE");
+    }
+
+    private void streamMessages(ResultSet rs, MessageSink sink) throws SQLException, IOException {
+        while (rs.next()) {
+            sink.accept(new Message(
+                rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getString("message_text"),
+                rs.getLong("time_posted_epoch")
+            ));
+        }
+    }
+
+    /**
+     * Reads every row of a message result set into a list.
+     */
+    private List<Message> readMessages(ResultSet rs) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        while (rs.next()) {
+            messages.add(new Message(
+                rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getString("message_text"),
+                rs.getLong("time_posted_epoch")
+            ));
+        }
+        return messages;
+    }
 }
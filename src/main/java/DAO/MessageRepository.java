@@ -0,0 +1,130 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.List;
+
+import Model.Message;
+import Util.PageCursor;
+
+/**
+ * Stores messages. MessageDAO keeps them in H2 and InMemoryStore keeps them on the heap; Repositories picks one at
+ * startup.
+ */
+public interface MessageRepository {
+    /**
+     * Adds a message, rejecting it if posted_by does not refer to an existing account.
+     *
+     * @param message The message to be added.
+     * @return The added message with its generated ID, or null if the operation fails.
+     */
+    Message addMessage(Message message);
+
+    /**
+     * Adds several messages. Either every message is added or none are.
+     *
+     * @param messages The messages to be added.
+     * @return The added messages with their generated IDs, in the same order, or null if any could not be added.
+     */
+    List<Message> addMessages(List<Message> messages);
+
+    /**
+     * @return every message, or an empty list if there are none.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * @param messageId The ID of the message to be retrieved.
+     * @return The message with the specified ID, or null if no such message is found.
+     */
+    Message getMessageById(int messageId);
+
+    /**
+     * @param messageIds The IDs of the messages to be retrieved, in ascending order. Must not be empty.
+     * @return The messages that exist, ordered by message_id.
+     */
+    List<Message> getMessagesByIds(int[] messageIds);
+
+    /**
+     * @param messageId The ID of the message to be deleted.
+     * @return The message as it was before deletion, or null if no such message existed.
+     */
+    Message deleteMessageById(int messageId);
+
+    /**
+     * Deletes a message only if it was posted by the given account, checking both in the same statement.
+     *
+     * @param messageId The ID of the message to be deleted.
+     * @param postedBy The account that must have posted the message.
+     * @return The message as it was before deletion, or null if no such message by that account existed.
+     */
+    Message deleteMessageByIdAndAuthor(int messageId, int postedBy);
+
+    /**
+     * Updates the text of a message. The row from before the update is returned, so callers can tell what the text
+     * was; the updated message is that row with the new message_text.
+     *
+     * @param message The message to be updated, carrying its message_id and new message_text.
+     * @return The message as it was before the update, or null if no such message exists.
+     */
+    Message updateMessageById(Message message);
+
+    /**
+     * Updates the text of a message only if it was posted by the given account, checking both in the same
+     * statement.
+     *
+     * @param message The message to be updated, carrying its message_id and new message_text.
+     * @param postedBy The account that must have posted the message.
+     * @return The message as it was before the update, or null if no such message by that account exists.
+     */
+    Message updateMessageByIdAndAuthor(Message message, int postedBy);
+
+    /**
+     * @param accountId The ID of the account whose messages are to be retrieved.
+     * @return The messages posted by the account, or an empty list if there are none.
+     */
+    List<Message> getAllMessagesByAccountId(int accountId);
+
+    /**
+     * Retrieves one page of messages ordered by time_posted_epoch and then message_id.
+     *
+     * @param after The position of the last message on the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return The messages on the page, or an empty list if there are none.
+     */
+    List<Message> getMessagesPage(PageCursor after, int limit);
+
+    /**
+     * Retrieves one page of the messages posted by an account, ordered by time_posted_epoch and then message_id.
+     *
+     * @param accountId The ID of the account whose messages are to be retrieved.
+     * @param after The position of the last message on the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return The messages on the page, or an empty list if there are none.
+     */
+    List<Message> getMessagesPageByAccountId(int accountId, PageCursor after, int limit);
+
+    /**
+     * Passes every message to the sink in turn, without building a list.
+     *
+     * @param sink Receives each message in turn.
+     * @throws IOException if the sink fails or the messages cannot be read.
+     */
+    void streamAllMessages(MessageSink sink) throws IOException;
+
+    /**
+     * Passes every message posted by an account to the sink in turn, without building a list.
+     *
+     * @param accountId The ID of the account whose messages are to be streamed.
+     * @param sink Receives each message in turn.
+     * @throws IOException if the sink fails or the messages cannot be read.
+     */
+    void streamMessagesByAccountId(int accountId, MessageSink sink) throws IOException;
+
+    /**
+     * @return true if calls wait on I/O, so services should run them on the DatabaseExecutor instead of the
+     * calling thread.
+     */
+    default boolean isBlocking() {
+        return true;
+    }
+}
@@ -0,0 +1,20 @@
+package DAO;
+
+import java.io.IOException;
+
+import Model.Message;
+
+/**
+ * Receives messages one at a time as they are read from the database, so a caller can process a large result
+ * without holding all of it in memory.
+ */
+@FunctionalInterface
+public interface MessageSink {
+    /**
+     * Called once for each row, in result order.
+     *
+     * @param message The message read from the current row.
+     * @throws IOException if the sink could not write the message.
+     */
+    void accept(Message message) throws IOException;
+}
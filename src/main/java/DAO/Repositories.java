@@ -0,0 +1,120 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+
+/**
+ * The Repositories class picks the storage engine once at startup from socialmedia.storage:
+ * "h2" (the default) stores accounts and messages in H2 through AccountDAO and MessageDAO, and "memory" keeps them
+ * in a single shared InMemoryStore that is lost on restart.
+ *
+ * With "h2", setting socialmedia.messages.shards above 1 spreads messages across that many H2 databases through a
+ * ShardedMessageRepository, while accounts stay in the main database. The shard count is fixed once data has been
+ * written, since message IDs encode their shard.
+ */
+public final class Repositories {
+    /**
+     * The configured engine, "h2" or "memory".
+     */
+    public static final String STORAGE = AppConfig.getString("socialmedia.storage", "h2").trim().toLowerCase();
+
+    /**
+     * The number of databases messages are spread across, 1 meaning the main database only.
+     */
+    public static final int MESSAGE_SHARDS = AppConfig.getInt("socialmedia.messages.shards", 1);
+
+    /**
+     * The most shards allowed, which also bounds the connections the shard pools may open.
+     */
+    private static final int MAX_MESSAGE_SHARDS = 64;
+
+    private static final InMemoryStore IN_MEMORY_STORE;
+
+    static {
+        if (MESSAGE_SHARDS < 1 || MESSAGE_SHARDS > MAX_MESSAGE_SHARDS) {
+            throw new IllegalStateException("socialmedia.messages.shards must be between 1 and " + MAX_MESSAGE_SHARDS
+                    + ", got " + MESSAGE_SHARDS);
+        }
+        if (MESSAGE_SHARDS > 1 && !STORAGE.equals("h2")) {
+            throw new IllegalStateException("socialmedia.messages.shards requires socialmedia.storage=h2");
+        }
+        if (STORAGE.equals("memory")) {
+            IN_MEMORY_STORE = new InMemoryStore();
+        } else if (STORAGE.equals("h2")) {
+            IN_MEMORY_STORE = null;
+        } else {
+            throw new IllegalStateException("Unknown socialmedia.storage '" + STORAGE + "', expected h2 or memory");
+        }
+    }
+
+    /**
+     * Holds the sharded repository, created (and its shards opened) on first use.
+     */
+    private static final class ShardedHolder {
+        private static final ShardedMessageRepository INSTANCE = openShards();
+
+        private static ShardedMessageRepository openShards() {
+            ShardedMessageRepository.requireNoUnshardedMessages(new MessageDAO());
+            return new ShardedMessageRepository(MESSAGE_SHARDS, ConnectionUtil::getShardConnection, new AccountDAO());
+        }
+    }
+
+    private Repositories() {
+    }
+
+    /**
+     * @return true if the in-memory engine is in use.
+     */
+    public static boolean isInMemory() {
+        return IN_MEMORY_STORE != null;
+    }
+
+    /**
+     * @return true if messages are spread across several H2 databases.
+     */
+    public static boolean isSharded() {
+        return IN_MEMORY_STORE == null && MESSAGE_SHARDS > 1;
+    }
+
+    /**
+     * @return a repository for accounts backed by the configured engine.
+     */
+    public static AccountRepository accounts() {
+        return IN_MEMORY_STORE != null ? IN_MEMORY_STORE : new AccountDAO();
+    }
+
+    /**
+     * @return a repository for messages backed by the configured engine.
+     */
+    public static MessageRepository messages() {
+        if (IN_MEMORY_STORE != null) {
+            return IN_MEMORY_STORE;
+        }
+        return isSharded() ? ShardedHolder.INSTANCE : new MessageDAO();
+    }
+
+    /**
+     * Empties the in-memory store and adds the same account and message that SocialMedia.sql inserts into H2, so
+     * tests start from the same data with either engine.
+     */
+    public static void resetInMemoryStore() {
+        IN_MEMORY_STORE.clear();
+        IN_MEMORY_STORE.registerAccount(new Account("testuser1", "password"));
+        IN_MEMORY_STORE.addMessage(new Message(1, "test message 1", 1669947792));
+    }
+
+    /**
+     * Moves the message that SocialMedia.sql inserts out of the main database into the emptied shards, where it
+     * lands in shard 1 with message_id 1 just as it does unsharded. The accounts must already have been reset.
+     */
+    public static void resetShardedStore() {
+        MessageDAO main = new MessageDAO();
+        for (Message message : main.getAllMessages()) {
+            main.deleteMessageById(message.getMessage_id());
+        }
+        ShardedHolder.INSTANCE.clear();
+        ShardedHolder.INSTANCE.addMessage(new Message(1, "test message 1", 1669947792));
+    }
+}
@@ -0,0 +1,480 @@
+package DAO;
+
+import Util.Metrics;
+import Util.PageCursor;
+import Util.Timer;
+import Model.Message;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * The ShardedMessageRepository class spreads messages across several independent H2 databases, each holding its
+ * own message table, so writes from different accounts do not contend on one database file.
+ *
+ * A message lives in shard posted_by mod N. Account IDs are handed out sequentially, so this spreads accounts
+ * evenly, and all of an account's messages sit in one shard. Each shard's message_id column starts at its own index
+ * and counts up by N, so IDs are unique across shards and message_id mod N names the shard. Lookups, updates and
+ * deletes by ID, and every per-account query, therefore go to exactly one shard.
+ *
+ * Queries over all messages are scatter-gathered: each shard is queried on its own virtual thread and the sorted
+ * results are merged by time_posted_epoch and then message_id, the order used for pages. streamAllMessages instead
+ * streams the shards one after another, so it never holds more than one shard's cursor. A shard whose query fails
+ * throws DatabaseUnavailableException rather than answering as if it were empty, so a merged list or page is
+ * either complete or not returned at all.
+ *
+ * Shards have no account table, so the foreign key on posted_by cannot be declared. Instead, before an account's
+ * first insert it is pinned in the main database (AccountRepository.pinMessageAuthors), where a foreign key of its
+ * own both checks that the account exists and stops it from being deleted afterwards. So no account can disappear
+ * between the check and the insert. Pinned accounts are remembered, so later inserts skip the main database.
+ * Batches that span shards are inserted in one transaction per shard, and committed only once every shard has
+ * accepted its rows.
+ */
+public class ShardedMessageRepository implements MessageRepository {
+    /**
+     * The order of merged results and pages.
+     */
+    private static final Comparator<Message> TIME_ORDER = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+    private static final Comparator<Message> ID_ORDER = Comparator.comparingInt(Message::getMessage_id);
+
+    /**
+     * Time spent in each scatter-gather method, including every shard's query and the merge.
+     */
+    private static final Timer ADD_MESSAGES_TIMER =
+            Metrics.getDefault().queryTimer("ShardedMessageRepository.addMessages");
+    private static final Timer GET_ALL_MESSAGES_TIMER =
+            Metrics.getDefault().queryTimer("ShardedMessageRepository.getAllMessages");
+    private static final Timer GET_MESSAGES_BY_IDS_TIMER =
+            Metrics.getDefault().queryTimer("ShardedMessageRepository.getMessagesByIds");
+    private static final Timer GET_MESSAGES_PAGE_TIMER =
+            Metrics.getDefault().queryTimer("ShardedMessageRepository.getMessagesPage");
+
+    private final IntFunction<Connection> connections;
+    private final MessageDAO[] shards;
+    private final AccountRepository accounts;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /**
+     * Accounts already pinned in the main database. Pins are never removed, so this only needs clearing when the
+     * databases are reset.
+     */
+    private final Set<Integer> pinnedAuthors = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Opens the shards, creating their tables if they do not exist yet.
+     *
+     * @param shardCount The number of shards.
+     * @param connections Opens a connection to the shard with the given index, throwing if it cannot.
+     * @param accounts Where the accounts that post messages are kept.
+     * @throws IllegalStateException if a shard was created as part of a different number of shards.
+     */
+    public ShardedMessageRepository(int shardCount, IntFunction<Connection> connections, AccountRepository accounts) {
+        this.connections = connections;
+        this.shards = new MessageDAO[shardCount];
+        this.accounts = accounts;
+        for (int shard = 0; shard < shardCount; shard++) {
+            int index = shard;
+            shards[shard] = new MessageDAO(() -> connections.apply(index));
+            createSchema(shard);
+        }
+    }
+
+    /**
+     * Sharded reads never look at the main database's message table, so messages already there would silently
+     * disappear. Rather than renumber them into the shards, startup stops until they have been moved.
+     *
+     * @param main The message table of the main database.
+     * @throws IllegalStateException if the main database holds any messages.
+     */
+    public static void requireNoUnshardedMessages(MessageRepository main) {
+        if (!main.getMessagesPage(null, 1).isEmpty()) {
+            throw new IllegalStateException("Messages are sharded but the main database still holds messages, "
+                    + "which the shards would hide. Move them into the shards or run with "
+                    + "socialmedia.messages.shards=1");
+        }
+    }
+
+    /**
+     * @return the number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param accountId The account that posted a message.
+     * @return the index of the shard holding the account's messages.
+     */
+    public int shardOfAccount(int accountId) {
+        return Math.floorMod(accountId, shards.length);
+    }
+
+    /**
+     * @param messageId The ID of a message.
+     * @return the index of the shard that generated the ID.
+     */
+    public int shardOfMessage(int messageId) {
+        return Math.floorMod(messageId, shards.length);
+    }
+
+    /**
+     * Drops every message and restarts each shard's IDs, for tests.
+     */
+    public void clear() {
+        pinnedAuthors.clear();
+        for (int shard = 0; shard < shards.length; shard++) {
+            Connection connection = connections.apply(shard);
+            try {
+                connection.createStatement().execute("DROP TABLE IF EXISTS message");
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            createSchema(shard);
+        }
+    }
+
+    /**
+     * Creates a shard's tables and records which shard it is, or checks the record if it already exists.
+     */
+    private void createSchema(int shard) {
+        Connection connection = connections.apply(shard);
+        try {
+            connection.createStatement().execute("CREATE TABLE IF NOT EXISTS shard_info ("
+                    + "shard_index int not null, "
+                    + "shard_count int not null)");
+            ResultSet rs = connection.createStatement().executeQuery("SELECT shard_index, shard_count FROM shard_info");
+            if (rs.next()) {
+                if (rs.getInt("shard_index") != shard || rs.getInt("shard_count") != shards.length) {
+                    throw new IllegalStateException("Message shard " + shard + " of " + shards.length
+                            + " was created as shard " + rs.getInt("shard_index") + " of " + rs.getInt("shard_count"));
+                }
+            } else {
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        "INSERT INTO shard_info (shard_index, shard_count) VALUES (?, ?)");
+                preparedStatement.setInt(1, shard);
+                preparedStatement.setInt(2, shards.length);
+                preparedStatement.executeUpdate();
+            }
+            // IDs start at the shard's index (or N for shard 0) and step by N, so message_id mod N is the shard.
+            int firstId = shard == 0 ? shards.length : shard;
+            connection.createStatement().execute("CREATE TABLE IF NOT EXISTS message ("
+                    + "message_id int generated by default as identity (start with " + firstId
+                    + " increment by " + shards.length + ") primary key, "
+                    + "posted_by int, "
+                    + "message_text varchar(255), "
+                    + "time_posted_epoch bigint)");
+            connection.createStatement().execute("CREATE INDEX IF NOT EXISTS message_posted_by_time_idx "
+                    + "ON message (posted_by, time_posted_epoch, message_id)");
+            connection.createStatement().execute("CREATE INDEX IF NOT EXISTS message_time_idx "
+                    + "ON message (time_posted_epoch, message_id)");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create the schema of message shard " + shard, e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Pins the accounts that are not pinned yet.
+     *
+     * @param accountIds Distinct account IDs.
+     * @return true if every account exists and is pinned.
+     */
+    private boolean pinAuthors(int[] accountIds) {
+        int[] unpinned = Arrays.stream(accountIds).filter(id -> !pinnedAuthors.contains(id)).toArray();
+        if (unpinned.length == 0) {
+            return true;
+        }
+        if (accounts.pinMessageAuthors(unpinned) != unpinned.length) {
+            return false;
+        }
+        for (int accountId : unpinned) {
+            pinnedAuthors.add(accountId);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a message to its poster's shard, rejecting it if the account does not exist.
+     *
+     * @param message The message to be added.
+     * @return The added message with its generated ID, or null if the operation fails.
+     */
+    public Message addMessage(Message message) {
+        if (!pinAuthors(new int[] {message.getPosted_by()})) {
+            return null;
+        }
+        return shards[shardOfAccount(message.getPosted_by())].addMessage(message);
+    }
+
+    /**
+     * Adds several messages. A batch from accounts in one shard is a single transaction there. Otherwise each shard
+     * inserts its part in its own transaction, and the transactions are committed only after every shard has
+     * inserted its rows. Should a commit still fail, the parts already committed are deleted again.
+     *
+     * @param messages The messages to be added.
+     * @return The added messages with their generated IDs, in the same order, or null if any could not be added.
+     */
+    public List<Message> addMessages(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        try {
+            int[] postedBy = messages.stream().mapToInt(Message::getPosted_by).distinct().toArray();
+            if (!pinAuthors(postedBy)) {
+                return null;
+            }
+            List<List<Integer>> indexesByShard = new ArrayList<>(shards.length);
+            for (int shard = 0; shard < shards.length; shard++) {
+                indexesByShard.add(new ArrayList<>());
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                indexesByShard.get(shardOfAccount(messages.get(i).getPosted_by())).add(i);
+            }
+            for (int shard = 0; shard < shards.length; shard++) {
+                if (indexesByShard.get(shard).size() == messages.size()) {
+                    return shards[shard].addMessages(messages);
+                }
+            }
+            return addAcrossShards(messages, indexesByShard);
+        } finally {
+            ADD_MESSAGES_TIMER.recordSince(start);
+        }
+    }
+
+    private List<Message> addAcrossShards(List<Message> messages, List<List<Integer>> indexesByShard) {
+        Message[] added = new Message[messages.size()];
+        Connection[] open = new Connection[shards.length];
+        int committed = 0;
+        try {
+            for (int shard = 0; shard < shards.length; shard++) {
+                List<Integer> indexes = indexesByShard.get(shard);
+                if (indexes.isEmpty()) {
+                    continue;
+                }
+                List<Message> part = new ArrayList<>(indexes.size());
+                for (int index : indexes) {
+                    part.add(messages.get(index));
+                }
+                open[shard] = connections.apply(shard);
+                open[shard].setAutoCommit(false);
+                List<Message> inserted = shards[shard].insertMessages(open[shard], part);
+                for (int i = 0; i < indexes.size(); i++) {
+                    added[indexes.get(i)] = inserted.get(i);
+                }
+            }
+            for (; committed < shards.length; committed++) {
+                if (open[committed] != null) {
+                    open[committed].commit();
+                }
+            }
+            return Arrays.asList(added);
+        } catch (SQLException e) {
+            ADD_MESSAGES_TIMER.recordError();
+            System.out.println(e.getMessage());
+            for (int shard = 0; shard < shards.length; shard++) {
+                if (open[shard] == null) {
+                    continue;
+                }
+                if (shard < committed) {
+                    for (int index : indexesByShard.get(shard)) {
+                        shards[shard].deleteMessageById(added[index].getMessage_id());
+                    }
+                } else {
+                    try {
+                        open[shard].rollback();
+                    } catch (SQLException rollbackException) {
+                        rollbackException.printStackTrace();
+                    }
+                }
+            }
+        } finally {
+            for (Connection connection : open) {
+                if (connection == null) {
+                    continue;
+                }
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queries every shard at once and merges their messages.
+     *
+     * @return every message, ordered by time_posted_epoch and then message_id.
+     */
+    public List<Message> getAllMessages() {
+        long start = System.nanoTime();
+        try {
+            return merge(scatter(shard -> {
+                List<Message> messages = shards[shard].getAllMessages();
+                messages.sort(TIME_ORDER);
+                return messages;
+            }), TIME_ORDER, Integer.MAX_VALUE);
+        } finally {
+            GET_ALL_MESSAGES_TIMER.recordSince(start);
+        }
+    }
+
+    public Message getMessageById(int messageId) {
+        return shards[shardOfMessage(messageId)].getMessageById(messageId);
+    }
+
+    /**
+     * Looks the IDs up in the shards that generated them, at once, and merges the results.
+     *
+     * @param messageIds The IDs of the messages to be retrieved, in ascending order. Must not be empty.
+     * @return The messages that exist, ordered by message_id.
+     */
+    public List<Message> getMessagesByIds(int[] messageIds) {
+        long start = System.nanoTime();
+        try {
+            return merge(scatter(shard -> {
+                int[] ids = Arrays.stream(messageIds).filter(id -> shardOfMessage(id) == shard).toArray();
+                return ids.length == 0 ? new ArrayList<>() : shards[shard].getMessagesByIds(ids);
+            }), ID_ORDER, Integer.MAX_VALUE);
+        } finally {
+            GET_MESSAGES_BY_IDS_TIMER.recordSince(start);
+        }
+    }
+
+    public Message deleteMessageById(int messageId) {
+        return shards[shardOfMessage(messageId)].deleteMessageById(messageId);
+    }
+
+    public Message deleteMessageByIdAndAuthor(int messageId, int postedBy) {
+        return shards[shardOfMessage(messageId)].deleteMessageByIdAndAuthor(messageId, postedBy);
+    }
+
+    public Message updateMessageById(Message message) {
+        return shards[shardOfMessage(message.getMessage_id())].updateMessageById(message);
+    }
+
+    public Message updateMessageByIdAndAuthor(Message message, int postedBy) {
+        return shards[shardOfMessage(message.getMessage_id())].updateMessageByIdAndAuthor(message, postedBy);
+    }
+
+    public List<Message> getAllMessagesByAccountId(int accountId) {
+        return shards[shardOfAccount(accountId)].getAllMessagesByAccountId(accountId);
+    }
+
+    /**
+     * Fetches the page from every shard at once and keeps the first limit messages of the merged result.
+     *
+     * @param after The position of the last message on the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     * @return The messages on the page, or an empty list if there are none.
+     */
+    public List<Message> getMessagesPage(PageCursor after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return merge(scatter(shard -> shards[shard].getMessagesPage(after, limit)), TIME_ORDER, limit);
+        } finally {
+            GET_MESSAGES_PAGE_TIMER.recordSince(start);
+        }
+    }
+
+    public List<Message> getMessagesPageByAccountId(int accountId, PageCursor after, int limit) {
+        return shards[shardOfAccount(accountId)].getMessagesPageByAccountId(accountId, after, limit);
+    }
+
+    /**
+     * Streams each shard's messages in turn, so only one shard's result set is open at a time.
+     *
+     * @param sink Receives each message in turn.
+     * @throws IOException if the sink fails; the remaining shards are not read.
+     */
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        for (MessageDAO shard : shards) {
+            shard.streamAllMessages(sink);
+        }
+    }
+
+    public void streamMessagesByAccountId(int accountId, MessageSink sink) throws IOException {
+        shards[shardOfAccount(accountId)].streamMessagesByAccountId(accountId, sink);
+    }
+
+    /**
+     * Runs a query against every shard, each on its own virtual thread, and waits for all of them. The shard
+     * pools bound how many queries really run at once.
+     */
+    private List<List<Message>> scatter(IntFunction<List<Message>> query) {
+        List<Future<List<Message>>> futures = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            int index = shard;
+            futures.add(executor.submit(() -> query.apply(index)));
+        }
+        List<List<Message>> results = new ArrayList<>(shards.length);
+        try {
+            for (Future<List<Message>> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying message shards", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Merges lists that are each sorted by order into one sorted list of at most limit messages.
+     */
+    private static List<Message> merge(List<List<Message>> sorted, Comparator<Message> order, int limit) {
+        int total = 0;
+        for (List<Message> list : sorted) {
+            total += list.size();
+        }
+        List<Message> merged = new ArrayList<>(Math.min(total, limit));
+        // Each entry is {list, position}; the queue yields the list whose next message comes first.
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(sorted.size(), 1),
+                (a, b) -> order.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1])));
+        for (int i = 0; i < sorted.size(); i++) {
+            if (!sorted.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+        while (merged.size() < limit && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Message> list = sorted.get(head[0]);
+            merged.add(list.get(head[1]));
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+}
@@ -1,4 +1,8 @@
 import Controller.SocialMediaController;
+import DAO.Repositories;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
 import io.javalin.Javalin;
 
 /**
@@ -7,8 +11,15 @@ import io.javalin.Javalin;
  */
 public class Main {
     public static void main(String[] args) {
+        // The in-memory engine starts empty and has no schema to migrate
+        if (!Repositories.isInMemory()) {
+            // Fail now if socialmedia.db.profile is misconfigured or its database cannot be reached
+            ConnectionUtil.getProfile();
+            SchemaMigrator.migrate();
+        }
         SocialMediaController controller = new SocialMediaController();
-        Javalin app = controller.startAPI();
+        // Run each request on its own virtual thread with -Dsocialmedia.server.virtualThreads=true
+        Javalin app = controller.startAPI(AppConfig.getBoolean("socialmedia.server.virtualThreads", false));
         app.start(8080);
     }
 }
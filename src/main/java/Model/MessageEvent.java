@@ -0,0 +1,68 @@
+package Model;
+
+/**
+ * This is a class that models a change to a message, as pushed to subscribers of the message stream.
+ */
+public class MessageEvent {
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    /**
+     * What happened to the message: CREATED, UPDATED or DELETED.
+     */
+    public String type;
+    /**
+     * The message as it is after the change, or as it was before deletion.
+     */
+    public Message message;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageEvent() {
+    }
+    /**
+     * @param type
+     * @param message
+     */
+    public MessageEvent(String type, Message message) {
+        this.type = type;
+        this.message = message;
+    }
+    /**
+     * @return type
+     */
+    public String getType() {
+        return type;
+    }
+    /**
+     * @param type
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageEvent{" +
+                "type='" + type + '\'' +
+                ", message=" + message +
+                '}';
+    }
+}
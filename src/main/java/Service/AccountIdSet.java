@@ -0,0 +1,72 @@
+package Service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A growable bitmap of account IDs that are known to exist.
+ *
+ * Lookups are lock-free and never allocate; additions, which only happen on registration and at startup, are
+ * synchronized. The set only ever answers "known to exist" or "not known"; a miss
+ * does not prove the account is absent, so callers must fall back to the database on a miss. Because accounts are
+ * never deleted, a hit can be trusted without going to the database.
+ */
+public class AccountIdSet {
+    private static final int INITIAL_WORDS = 64;
+
+    private volatile AtomicLongArray words = new AtomicLongArray(INITIAL_WORDS);
+
+    /**
+     * @param accountId The account ID to test.
+     * @return true if the account is known to exist.
+     */
+    public boolean contains(int accountId) {
+        if (accountId < 0) {
+            return false;
+        }
+        AtomicLongArray current = words;
+        int word = accountId >>> 6;
+        return word < current.length() && (current.get(word) & (1L << accountId)) != 0;
+    }
+
+    /**
+     * Records that an account exists.
+     *
+     * @param accountId The account ID to add. Negative IDs are ignored.
+     */
+    public synchronized void add(int accountId) {
+        if (accountId < 0) {
+            return;
+        }
+        int word = accountId >>> 6;
+        AtomicLongArray current = words;
+        if (word >= current.length()) {
+            current = grow(word);
+        }
+        current.set(word, current.get(word) | (1L << accountId));
+    }
+
+    /**
+     * Records every ID in the array as existing.
+     *
+     * @param accountIds The account IDs to add.
+     */
+    public synchronized void addAll(int[] accountIds) {
+        for (int accountId : accountIds) {
+            add(accountId);
+        }
+    }
+
+    private AtomicLongArray grow(int word) {
+        AtomicLongArray current = words;
+        int length = current.length();
+        while (length <= word) {
+            length <<= 1;
+        }
+        AtomicLongArray grown = new AtomicLongArray(length);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        words = grown;
+        return grown;
+    }
+}
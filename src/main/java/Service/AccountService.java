@@ -1,40 +1,79 @@
 package Service;
 
 import Model.Account;
-import DAO.AccountDAO;
+import DAO.AccountRepository;
+import DAO.Repositories;
+import Util.DatabaseExecutor;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class AccountService {
-    private AccountDAO accountDAO;
+    private AccountRepository accountRepository;
+    /**
+     * Account IDs known to exist, so isAccountValid can usually answer without a database round trip.
+     */
+    private final AccountIdSet knownAccountIds = new AccountIdSet();
+    private volatile boolean knownAccountIdsLoaded;
+    /**
+     * Guards the one-time load. A ReentrantLock rather than synchronized, so a virtual thread waiting on the query
+     * does not pin its carrier thread.
+     */
+    private final ReentrantLock loadLock = new ReentrantLock();
 
     /**
-     * Default constructor for AccountService that initializes the AccountDAO.
+     * Default constructor for AccountService that uses the storage engine chosen by Repositories.
      */
     public AccountService() {
-        accountDAO = new AccountDAO();
+        accountRepository = Repositories.accounts();
     }
 
     /**
-     * Constructor for an AccountService when an AccountDAO is passed in.
-     * @param accountDAO
+     * Constructor for an AccountService when an AccountRepository is passed in.
+     * @param accountRepository
      */
-    public AccountService(AccountDAO accountDAO) {
-        this.accountDAO = accountDAO;
+    public AccountService(AccountRepository accountRepository) {
+        this.accountRepository = accountRepository;
+    }
+
+    /**
+     * Loads every existing account ID into memory so later existence checks skip the database. Calling it is
+     * optional: isAccountValid loads the IDs itself on first use.
+     */
+    public void loadKnownAccountIds() {
+        if (!knownAccountIdsLoaded) {
+            loadLock.lock();
+            try {
+                if (!knownAccountIdsLoaded) {
+                    knownAccountIds.addAll(accountRepository.getAllAccountIds());
+                    knownAccountIdsLoaded = true;
+                }
+            } finally {
+                loadLock.unlock();
+            }
+        }
     }
 
     /**
      * Registers a new account if the username is not blank, the password is at least 4 characters long,
-     * and the username does not already exist in the database.
+     * and the username does not already exist in the database. Uniqueness is enforced by the database in the
+     * same statement as the insert, so there is no window between checking and inserting.
      * 
      * @param account The account to be registered.
      * @return The registered account with its account_id, or null if registration fails.
      */
     public Account addAccount(Account account) {
         if (account.getUsername() == null || account.getUsername().isBlank() ||
-            account.getPassword() == null || account.getPassword().length() < 4 ||
-            accountDAO.getAccountByUsername(account.getUsername()) != null) {
+            account.getPassword() == null || account.getPassword().length() < 4) {
             return null; // Registration fails
         }
-        return accountDAO.registerAccount(account); // Persist the account
+        Account registeredAccount = accountRepository.registerAccount(account); // Persist the account
+        if (registeredAccount != null) {
+            knownAccountIds.add(registeredAccount.getAccount_id());
+        }
+        return registeredAccount;
     }
 
     /**
@@ -44,7 +83,7 @@ public class AccountService {
      * @return The account with its account_id if login is successful, or null if login fails.
      */
     public Account login(Account account) {
-        Account existingAccount = accountDAO.getAccountByUsername(account.getUsername());
+        Account existingAccount = accountRepository.getAccountByUsername(account.getUsername());
         if (existingAccount != null && existingAccount.getPassword().equals(account.getPassword())) {
             return existingAccount; // Login successful
         }
@@ -52,15 +91,97 @@ public class AccountService {
     }
 
     /**
-     * Checks if an account exists in the database by its account_id.
+     * Asynchronous variant of addAccount, run on the shared DatabaseExecutor.
+     *
+     * @param account The account to be registered.
+     * @return a future of the registered account, or of null if registration fails.
+     */
+    public CompletableFuture<Account> addAccountAsync(Account account) {
+        return supply(() -> addAccount(account));
+    }
+
+    /**
+     * Asynchronous variant of login, run on the shared DatabaseExecutor.
+     *
+     * @param account The account containing the username and password to verify.
+     * @return a future of the logged in account, or of null if login fails.
+     */
+    public CompletableFuture<Account> loginAsync(Account account) {
+        return supply(() -> login(account));
+    }
+
+    /**
+     * Runs repository work on the shared DatabaseExecutor when the repository blocks on I/O, and on the calling
+     * thread when it does not.
+     */
+    private <T> CompletableFuture<T> supply(Supplier<T> task) {
+        if (accountRepository.isBlocking()) {
+            return DatabaseExecutor.getDefault().supply(task);
+        }
+        try {
+            return CompletableFuture.completedFuture(task.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Checks if an account exists by its account_id. Accounts already known to exist are answered from memory;
+     * anything else, including IDs registered by another instance since startup, is checked against the database.
      * 
      * @param accountId The account_id to check.
      * @return true if the account exists, false otherwise.
      */
     public boolean isAccountValid(int accountId) {
-        if (accountDAO.getAccountById(accountId) == null) {
+        loadKnownAccountIds();
+        if (knownAccountIds.contains(accountId)) {
+            return true; // Account exists
+        }
+        if (!accountRepository.accountExists(accountId)) {
             return false; // Account does not exist
         }
+        knownAccountIds.add(accountId);
         return true; // Account exists
     }
+
+    /**
+     * Checks if an account is already known to exist, from memory only. Unlike isAccountValid it never queries the
+     * database, so it may answer false for an account registered by another instance since startup.
+     *
+     * @param accountId The account_id to check.
+     * @return true if the account is known to exist.
+     */
+    public boolean isKnownAccount(int accountId) {
+        loadKnownAccountIds();
+        return knownAccountIds.contains(accountId);
+    }
+
+    /**
+     * Finds which of the given account IDs exist. IDs already known to exist are answered from memory and the
+     * rest are checked together in a single database query.
+     *
+     * @param accountIds The distinct account IDs to check.
+     * @return The subset of the IDs that exist.
+     */
+    public int[] getExistingAccountIds(int[] accountIds) {
+        loadKnownAccountIds();
+        int[] existing = new int[accountIds.length];
+        int existingCount = 0;
+        int[] unknown = new int[accountIds.length];
+        int unknownCount = 0;
+        for (int accountId : accountIds) {
+            if (knownAccountIds.contains(accountId)) {
+                existing[existingCount++] = accountId;
+            } else {
+                unknown[unknownCount++] = accountId;
+            }
+        }
+        if (unknownCount > 0) {
+            for (int accountId : accountRepository.getExistingAccountIds(Arrays.copyOf(unknown, unknownCount))) {
+                knownAccountIds.add(accountId);
+                existing[existingCount++] = accountId;
+            }
+        }
+        return Arrays.copyOf(existing, existingCount);
+    }
 }
@@ -0,0 +1,57 @@
+package Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts changes to messages so list responses can be given ETags without querying the database.
+ *
+ * There is one global generation, bumped by every add, update and delete, and one generation per account, bumped
+ * by changes to that account's messages. A list ETag is built from the generation read before the list is queried,
+ * so if a write lands while the list is being read the next request sees a different tag and refetches.
+ *
+ * Generations only count changes made through this process. Each tracker has a random instance id that is part of
+ * every tag, so tags from before a restart never match. Writes made directly to the database, or by another
+ * instance sharing it, are not seen.
+ */
+public class ChangeTracker {
+    private final String instanceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final AtomicLong globalGeneration = new AtomicLong();
+    private final ConcurrentHashMap<Integer, AtomicLong> accountGenerations = new ConcurrentHashMap<>();
+
+    /**
+     * Records a change to a message posted by the given account.
+     *
+     * @param accountId The posted_by of the message that changed.
+     */
+    public void messageChanged(int accountId) {
+        accountGenerations.computeIfAbsent(accountId, id -> new AtomicLong()).incrementAndGet();
+        globalGeneration.incrementAndGet();
+    }
+
+    /**
+     * @param variant Anything else that changes the response body, such as paging parameters, or "" for none.
+     * @return the ETag for the list of all messages as it is now, or null if variant is null.
+     */
+    public String allMessagesETag(String variant) {
+        if (variant == null) {
+            return null;
+        }
+        return "\"g-" + instanceId + "-" + globalGeneration.get() + variant + "\"";
+    }
+
+    /**
+     * @param accountId The account whose messages are listed.
+     * @param variant Anything else that changes the response body, such as paging parameters, or "" for none.
+     * @return the ETag for the list of the account's messages as it is now, or null if variant is null.
+     */
+    public String accountMessagesETag(int accountId, String variant) {
+        if (variant == null) {
+            return null;
+        }
+        AtomicLong generation = accountGenerations.get(accountId);
+        return "\"a" + accountId + "-" + instanceId + "-" + (generation == null ? 0 : generation.get()) + variant
+                + "\"";
+    }
+}
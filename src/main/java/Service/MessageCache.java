@@ -0,0 +1,312 @@
+package Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import Model.Message;
+
+/**
+ * A bounded in-process cache of messages keyed by message_id.
+ *
+ * Keys are stored as primitive ints in an open-addressing hash table, so lookups never box. When the cache is full,
+ * an entry is evicted with the CLOCK algorithm: every hit marks an entry as recently used, and the eviction hand
+ * skips (and unmarks) recently used entries, which approximates LRU without reordering anything on a hit.
+ *
+ * A large cache is split into up to MAX_SEGMENTS segments by key, each with its own table, clock hand and lock, so
+ * concurrent lookups of different messages rarely wait for each other. Each segment evicts on its own once it holds
+ * its share of the capacity. Caches smaller than two segments' worth of entries use a single segment.
+ *
+ * To stop a slow reader from caching a value that was updated or deleted while it was being loaded, callers take a
+ * stamp() before loading from the database and pass it to putIfUnchanged(), which drops the value if any
+ * invalidation happened in between.
+ *
+ * Cached Message objects are shared between callers and must not be modified.
+ */
+public class MessageCache {
+    /**
+     * The most segments a cache is split into.
+     */
+    private static final int MAX_SEGMENTS = 16;
+    /**
+     * The fewest entries a segment holds, so small caches keep one clock over all their entries.
+     */
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity The maximum number of messages held at once. Must be at least 1.
+     */
+    public MessageCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, capacity / MIN_SEGMENT_CAPACITY)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // Spread the remainder so the segment capacities add up to exactly the requested capacity
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Looks up a message and counts the hit or miss.
+     *
+     * @param messageId The ID of the message.
+     * @return the cached message, or null if it is not cached.
+     */
+    public Message get(int messageId) {
+        Message message = segmentFor(messageId).get(messageId);
+        if (message == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return message;
+    }
+
+    /**
+     * @return a stamp to pass to putIfUnchanged() after loading a value from the database.
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a message unless an invalidation has happened since the stamp was taken.
+     *
+     * @param message The message to cache.
+     * @param stamp The value returned by stamp() before the message was loaded.
+     */
+    public void putIfUnchanged(Message message, long stamp) {
+        segmentFor(message.getMessage_id()).putIfUnchanged(message, stamp);
+    }
+
+    /**
+     * Caches a message, replacing any existing entry with the same message_id and evicting another entry if the
+     * cache is full.
+     *
+     * @param message The message to cache.
+     */
+    public void put(Message message) {
+        segmentFor(message.getMessage_id()).put(message);
+    }
+
+    /**
+     * Removes a message from the cache, for example after it has been updated or deleted.
+     *
+     * @param messageId The ID of the message.
+     */
+    public void invalidate(int messageId) {
+        // Counted before the entry is removed, so a put that checks its stamp after this either sees the new
+        // count or lands before the removal and is removed with it
+        invalidations.incrementAndGet();
+        segmentFor(messageId).remove(messageId);
+    }
+
+    /**
+     * Removes every message from the cache.
+     */
+    public void clear() {
+        invalidations.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(int key) {
+        return segments.length == 1 ? segments[0] : segments[hash(key) >>> segmentShift];
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * One independently locked part of the cache, holding the keys whose hash selects it.
+     */
+    private final class Segment {
+        private final int capacity;
+        private final int mask;
+        /**
+         * Hash table of entry slot + 1, with 0 marking an empty bucket.
+         */
+        private final int[] table;
+        private final int[] entryKeys;
+        private final Message[] entryValues;
+        private final boolean[] referenced;
+        private final int[] freeSlots;
+        private int freeCount;
+        private int size;
+        private int hand;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.mask = tableSize - 1;
+            this.table = new int[tableSize];
+            this.entryKeys = new int[capacity];
+            this.entryValues = new Message[capacity];
+            this.referenced = new boolean[capacity];
+            this.freeSlots = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                freeSlots[i] = capacity - 1 - i;
+            }
+            this.freeCount = capacity;
+        }
+
+        synchronized Message get(int messageId) {
+            int bucket = find(messageId);
+            if (bucket < 0) {
+                return null;
+            }
+            int slot = table[bucket] - 1;
+            referenced[slot] = true;
+            return entryValues[slot];
+        }
+
+        synchronized void putIfUnchanged(Message message, long stamp) {
+            if (stamp == invalidations.get()) {
+                put(message);
+            }
+        }
+
+        synchronized void put(Message message) {
+            int key = message.getMessage_id();
+            int bucket = find(key);
+            if (bucket >= 0) {
+                int slot = table[bucket] - 1;
+                entryValues[slot] = message;
+                referenced[slot] = true;
+                return;
+            }
+            if (freeCount == 0) {
+                evict();
+                bucket = find(key);
+            }
+            int slot = freeSlots[--freeCount];
+            entryKeys[slot] = key;
+            entryValues[slot] = message;
+            referenced[slot] = false;
+            table[-bucket - 1] = slot + 1;
+            size++;
+        }
+
+        synchronized void remove(int messageId) {
+            int bucket = find(messageId);
+            if (bucket >= 0) {
+                removeAt(bucket);
+            }
+        }
+
+        synchronized void clear() {
+            for (int bucket = 0; bucket <= mask; bucket++) {
+                if (table[bucket] != 0) {
+                    int slot = table[bucket] - 1;
+                    entryValues[slot] = null;
+                    freeSlots[freeCount++] = slot;
+                    table[bucket] = 0;
+                }
+            }
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Finds the bucket holding a key.
+         *
+         * @return the bucket index, or -(insertion bucket) - 1 if the key is absent.
+         */
+        private int find(int key) {
+            int bucket = hash(key) & mask;
+            while (table[bucket] != 0) {
+                if (entryKeys[table[bucket] - 1] == key) {
+                    return bucket;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return -bucket - 1;
+        }
+
+        /**
+         * Advances the clock hand to the first entry that has not been used since the hand last passed it, and
+         * evicts it.
+         */
+        private void evict() {
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) % capacity;
+                if (referenced[slot]) {
+                    referenced[slot] = false;
+                } else {
+                    removeAt(find(entryKeys[slot]));
+                    evictions.increment();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Empties a bucket and shifts later entries of the same probe run back, so lookups never need tombstones.
+         */
+        private void removeAt(int bucket) {
+            int slot = table[bucket] - 1;
+            entryValues[slot] = null;
+            freeSlots[freeCount++] = slot;
+            size--;
+            table[bucket] = 0;
+            int hole = bucket;
+            int next = bucket;
+            while (true) {
+                next = (next + 1) & mask;
+                if (table[next] == 0) {
+                    return;
+                }
+                int home = hash(entryKeys[table[next] - 1]) & mask;
+                boolean between = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!between) {
+                    table[hole] = table[next];
+                    table[next] = 0;
+                    hole = next;
+                }
+            }
+        }
+    }
+}
@@ -1,47 +1,264 @@
 package Service;
 
 import Model.Message;
-import DAO.MessageDAO;
+import Model.MessageBatchResult;
+import Model.MessageEvent;
+import Model.MessagePage;
+import DAO.MessageRepository;
+import DAO.MessageSink;
+import DAO.Repositories;
+import Util.AppConfig;
+import Util.DatabaseExecutor;
+import Util.DatabaseProfile;
+import Util.EventRing;
+import Util.Metrics;
+import Util.PageCursor;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 public class MessageService {
-    private MessageDAO messageDAO;
+    /**
+     * The largest page size a client may request from a paginated endpoint.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * The largest number of messages accepted by addMessages, set with socialmedia.messages.batch.maxSize.
+     */
+    public static final int MAX_BATCH_SIZE = AppConfig.getInt("socialmedia.messages.batch.maxSize", 10000);
+    /**
+     * The most distinct terms a search query may contain.
+     */
+    public static final int MAX_SEARCH_TERMS = 16;
+    private static final int EVENT_LOCK_STRIPES = 64;
+
+    private MessageRepository messageRepository;
     private AccountService accountService;
+    /**
+     * Read-through cache for getMessageById, sized with socialmedia.cache.messages.maxSize. Null when the size
+     * is 0, which disables caching.
+     */
+    private MessageCache messageCache;
+    /**
+     * Generations of the message lists, bumped on every add, update and delete, used to build list ETags.
+     */
+    private final ChangeTracker changeTracker = new ChangeTracker();
+    /**
+     * Inverted index over message_text, kept in step by every add, update and delete. Empty until
+     * rebuildSearchIndex is called.
+     */
+    private final SearchIndex searchIndex = new SearchIndex();
+    /**
+     * True when other instances write to the same store (see DatabaseProfile.isSharedStore), so the cache is
+     * disabled and the search index, which could only ever hold this instance's writes, is not maintained.
+     */
+    private final boolean sharedStore = DatabaseProfile.isSharedStore();
+    /**
+     * Every add, update and delete, in the order they were published, for the live message stream. Holds the last
+     * socialmedia.stream.bufferSize events (default 4096) for subscribers that fall behind or reconnect.
+     *
+     * Changes to different messages are published after they commit and may be seen in a different order than
+     * they committed in. Updates and deletes of one message hold that message's lock from the write until the
+     * event is published, so they are always published in the order they committed. A created event is published
+     * under the same lock, but only once the new ID is known, so a change that races with the creation itself can
+     * still be published before it.
+     */
+    private final EventRing<MessageEvent> messageEvents =
+            new EventRing<>(AppConfig.getInt("socialmedia.stream.bufferSize", 4096));
+    /**
+     * Locks that keep the events of each message in commit order, striped by message_id.
+     */
+    private final ReentrantLock[] eventLocks = newEventLocks();
 
     /**
-     * Default constructor for MessageService that initializes the MessageDAO.
+     * Default constructor for MessageService that uses the storage engine chosen by Repositories.
      */
     public MessageService() {
-        messageDAO = new MessageDAO();
+        messageRepository = Repositories.messages();
         accountService = new AccountService();
+        messageCache = createCache();
+    }
+
+    /**
+     * Constructor for a MessageService that shares an AccountService with the caller, so both see the same
+     * in-memory set of known accounts.
+     * @param accountService The AccountService used to check that accounts exist.
+     */
+    public MessageService(AccountService accountService) {
+        this.messageRepository = Repositories.messages();
+        this.accountService = accountService;
+        this.messageCache = createCache();
+    }
+
+    /**
+     * Constructor for a MessageService when a MessageRepository is passed in.
+     * @param messageRepository The MessageRepository to be used by this service.
+     */
+    public MessageService(MessageRepository messageRepository) {
+        this.messageRepository = messageRepository;
+        this.accountService = new AccountService();
+        this.messageCache = createCache();
+    }
+
+    private static MessageCache createCache() {
+        if (DatabaseProfile.isSharedStore()) {
+            return null; // Would keep serving messages other instances have changed
+        }
+        int maxSize = AppConfig.getInt("socialmedia.cache.messages.maxSize", 10000);
+        if (maxSize <= 0) {
+            return null;
+        }
+        MessageCache cache = new MessageCache(maxSize);
+        // Replaces the gauges of any earlier service, so /metrics follows the cache that is serving requests
+        Metrics metrics = Metrics.getDefault();
+        metrics.gauge("socialmedia_message_cache_hits", "Message lookups answered from the cache.",
+                cache::getHitCount);
+        metrics.gauge("socialmedia_message_cache_misses", "Message lookups that had to read the database.",
+                cache::getMissCount);
+        metrics.gauge("socialmedia_message_cache_evictions", "Messages evicted to make room in the cache.",
+                cache::getEvictionCount);
+        metrics.gauge("socialmedia_message_cache_size", "Messages currently cached.", cache::size);
+        metrics.gauge("socialmedia_message_cache_capacity", "The most messages the cache holds.",
+                cache::getCapacity);
+        return cache;
+    }
+
+    /**
+     * @return the tracker of message list changes, used to build ETags for list responses.
+     */
+    public ChangeTracker getChangeTracker() {
+        return changeTracker;
     }
 
     /**
-     * Constructor for a MessageService when a MessageDAO is passed in.
-     * @param messageDAO The MessageDAO to be used by this service.
+     * Builds the ETag of a single message from its contents, so it changes whenever the message is updated.
+     *
+     * @param message The message.
+     * @return the message's ETag.
      */
-    public MessageService(MessageDAO messageDAO) {
-        this.messageDAO = messageDAO;
+    public static String messageETag(Message message) {
+        int hash = message.getMessage_id();
+        hash = 31 * hash + message.getPosted_by();
+        hash = 31 * hash + Long.hashCode(message.getTime_posted_epoch());
+        hash = 31 * hash + (message.getMessage_text() == null ? 0 : message.getMessage_text().hashCode());
+        return "\"m" + message.getMessage_id() + "-" + Integer.toHexString(hash) + "\"";
+    }
+
+    /**
+     * @return the message cache, for reading its hit, miss and eviction counters, or null if caching is disabled.
+     */
+    public MessageCache getMessageCache() {
+        return messageCache;
     }
 
 
     /**
      * Adds a message to the database if the message text is not blank, 
-     * the length is less than 255 characters, and the account exists.
+     * the length is less than 255 characters, and the account exists. The account is checked by the foreign key
+     * as part of the insert rather than by a separate query.
      * 
      * @param message The message to be added.
      * @return The added message with its generated ID, or null if the operation fails.
      */
     public Message addMessage(Message message) {
-        if (message.getMessage_text() == null || 
-            message.getMessage_text().isBlank() ||
-            message.getMessage_text().length() > 255 ||
-            !accountService.isAccountValid(message.getPosted_by())) {
+        if (!isValidMessageText(message)) {
             return null; // Message content is invalid
         }
-        return messageDAO.addMessage(message); // Persist the message
+        long stamp = messageCache == null ? 0 : messageCache.stamp();
+        Message addedMessage = messageRepository.addMessage(message); // Persist the message
+        if (addedMessage != null) {
+            changeTracker.messageChanged(addedMessage.getPosted_by());
+            if (!sharedStore) {
+                searchIndex.add(addedMessage);
+            }
+            publish(MessageEvent.CREATED, addedMessage);
+            if (messageCache != null) {
+                // A delete or update that raced with this insert must not be undone by caching the new row
+                messageCache.putIfUnchanged(addedMessage, stamp);
+            }
+        }
+        return addedMessage;
+    }
+
+    /**
+     * Adds many messages at once, applying the same rules as addMessage to each one. The accounts of all the
+     * messages are checked together, and every valid message is inserted in a single transaction.
+     *
+     * @param messages The messages to be added.
+     * @return One result per message, in request order, with status 200 and the created message, status 400 if
+     *         the message was invalid, or status 500 if the batch could not be written.
+     * @throws IllegalArgumentException if there are more than MAX_BATCH_SIZE messages.
+     */
+    public List<MessageBatchResult> addMessages(List<Message> messages) {
+        if (messages.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch may contain at most " + MAX_BATCH_SIZE + " messages");
+        }
+        List<MessageBatchResult> results = new ArrayList<>(messages.size());
+        int[] postedBy = new int[messages.size()];
+        int postedByCount = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            boolean valid = message != null && isValidMessageText(message);
+            results.add(new MessageBatchResult(i, valid ? 200 : 400, null));
+            if (valid) {
+                postedBy[postedByCount++] = message.getPosted_by();
+            }
+        }
+        if (postedByCount == 0) {
+            return results;
+        }
+
+        int[] existingAccounts = accountService.getExistingAccountIds(
+                Arrays.stream(postedBy, 0, postedByCount).distinct().toArray());
+        Arrays.sort(existingAccounts);
+        List<Message> toInsert = new ArrayList<>(postedByCount);
+        List<MessageBatchResult> insertedResults = new ArrayList<>(postedByCount);
+        for (MessageBatchResult result : results) {
+            if (result.getStatus() != 200) {
+                continue;
+            }
+            Message message = messages.get(result.getIndex());
+            if (Arrays.binarySearch(existingAccounts, message.getPosted_by()) >= 0) {
+                toInsert.add(message);
+                insertedResults.add(result);
+            } else {
+                result.setStatus(400); // Account does not exist
+            }
+        }
+        if (toInsert.isEmpty()) {
+            return results;
+        }
+
+        long stamp = messageCache == null ? 0 : messageCache.stamp();
+        List<Message> added = messageRepository.addMessages(toInsert);
+        for (int i = 0; i < insertedResults.size(); i++) {
+            if (added == null) {
+                insertedResults.get(i).setStatus(500);
+            } else {
+                insertedResults.get(i).setMessage(added.get(i));
+                changeTracker.messageChanged(added.get(i).getPosted_by());
+                if (!sharedStore) {
+                    searchIndex.add(added.get(i));
+                }
+                publish(MessageEvent.CREATED, added.get(i));
+                if (messageCache != null) {
+                    messageCache.putIfUnchanged(added.get(i), stamp);
+                }
+            }
+        }
+        return results;
+    }
+
+    private boolean isValidMessageText(Message message) {
+        return message.getMessage_text() != null &&
+            !message.getMessage_text().isBlank() &&
+            message.getMessage_text().length() <= 255;
     }
 
     /**
@@ -50,54 +267,180 @@ public class MessageService {
      * @return A list of all messages, or an empty list if no messages are found.
      */
     public List<Message> getAllMessages() {
-        return messageDAO.getAllMessages();
+        return messageRepository.getAllMessages();
     }
 
     /**
-     * Retrieves a message by its ID.
+     * Streams all messages to the given sink as they are read from the database.
+     *
+     * @param sink Receives each message in turn.
+     * @throws IOException if the sink fails to write a message or the messages cannot be read.
+     */
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        messageRepository.streamAllMessages(sink);
+    }
+
+    /**
+     * Streams all messages posted by a specific account to the given sink. Nothing is streamed if the account
+     * does not exist.
+     *
+     * @param accountId The ID of the account whose messages are to be streamed.
+     * @param sink Receives each message in turn.
+     * @throws IOException if the sink fails to write a message or the messages cannot be read.
+     */
+    public void streamMessagesByAccountId(int accountId, MessageSink sink) throws IOException {
+        if (accountService.isAccountValid(accountId)) {
+            messageRepository.streamMessagesByAccountId(accountId, sink);
+        }
+    }
+
+    /**
+     * Retrieves a message by its ID, from the cache when possible.
      * 
      * @param messageId The ID of the message to be retrieved.
      * @return The message with the specified ID, or null if no such message exists.
      */
     public Message getMessageById(int messageId) {
-        return messageDAO.getMessageById(messageId);
+        if (messageCache == null) {
+            return messageRepository.getMessageById(messageId);
+        }
+        Message message = messageCache.get(messageId);
+        return message != null ? message : loadMessageById(messageId);
     }
 
     /**
-     * Deletes a message by its ID.
+     * Reads a message from the database and caches it, unless it was invalidated while being read.
+     */
+    private Message loadMessageById(int messageId) {
+        if (messageCache == null) {
+            return messageRepository.getMessageById(messageId);
+        }
+        long stamp = messageCache.stamp();
+        Message message = messageRepository.getMessageById(messageId);
+        if (message != null) {
+            messageCache.putIfUnchanged(message, stamp);
+        }
+        return message;
+    }
+
+    /**
+     * Deletes a message by its ID in a single statement that also returns the deleted row.
      * 
      * @param messageId The ID of the message to be deleted.
      * @return The deleted message, or null if no such message exists.
      */
     public Message deleteMessageById(int messageId) {
-        Message messageToDelete = messageDAO.getMessageById(messageId);
-        if (messageToDelete != null) {
-            messageDAO.deleteMessageById(messageId);
-            return messageToDelete;
+        return deleteMessage(messageId, () -> messageRepository.deleteMessageById(messageId));
+    }
+
+    /**
+     * Deletes a message only if the given account posted it. The author is checked in the delete statement itself,
+     * so there is no window between the check and the delete.
+     * 
+     * @param messageId The ID of the message to be deleted.
+     * @param postedBy The account that must have posted the message.
+     * @return The deleted message, or null if no such message by that account exists.
+     */
+    public Message deleteMessageByIdAndAuthor(int messageId, int postedBy) {
+        return deleteMessage(messageId, () -> messageRepository.deleteMessageByIdAndAuthor(messageId, postedBy));
+    }
+
+    private Message deleteMessage(int messageId, Supplier<Message> delete) {
+        ReentrantLock lock = eventLock(messageId);
+        lock.lock();
+        try {
+            Message deletedMessage = delete.get();
+            invalidate(messageId);
+            if (deletedMessage != null) {
+                changeTracker.messageChanged(deletedMessage.getPosted_by());
+                if (!sharedStore) {
+                    searchIndex.remove(deletedMessage);
+                }
+                messageEvents.publish(new MessageEvent(MessageEvent.DELETED, deletedMessage));
+            }
+            return deletedMessage;
+        } finally {
+            lock.unlock();
         }
-        return null; // Message does not exist
     }
 
     /**
-     * Updates a message by its ID.
+     * Updates a message by its ID in a single statement that also returns the row it replaced, whose text is
+     * removed from the search index.
      * 
      * @param message The message to be updated.
-     * @return The updated message, or null if the operation fails.
+     * @return The updated message, or null if the text is invalid or the message does not exist.
      */
     public Message updateMessageById(Message message) {
-        if (message.getMessage_text() == null || 
-            message.getMessage_text().isBlank() || 
-            message.getMessage_text().length() > 255) {
+        return updateMessage(message, () -> messageRepository.updateMessageById(message));
+    }
+
+    /**
+     * Updates a message only if the given account posted it, checking the author in the update statement itself.
+     * 
+     * @param message The message to be updated.
+     * @param postedBy The account that must have posted the message.
+     * @return The updated message, or null if the text is invalid or no such message by that account exists.
+     */
+    public Message updateMessageByIdAndAuthor(Message message, int postedBy) {
+        return updateMessage(message, () -> messageRepository.updateMessageByIdAndAuthor(message, postedBy));
+    }
+
+    private Message updateMessage(Message message, Supplier<Message> update) {
+        if (!isValidMessageText(message)) {
             return null; // Invalid message text
         }
+        ReentrantLock lock = eventLock(message.getMessage_id());
+        lock.lock();
+        try {
+            Message previous = update.get();
+            invalidate(message.getMessage_id());
+            Message updatedMessage = null;
+            if (previous != null) {
+                updatedMessage = new Message(previous.getMessage_id(), previous.getPosted_by(),
+                        message.getMessage_text(), previous.getTime_posted_epoch());
+                changeTracker.messageChanged(updatedMessage.getPosted_by());
+                if (!sharedStore) {
+                    searchIndex.remove(previous);
+                    searchIndex.add(updatedMessage);
+                }
+                messageEvents.publish(new MessageEvent(MessageEvent.UPDATED, updatedMessage));
+            }
+            return updatedMessage;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        Message existingMessage = messageDAO.getMessageById(message.getMessage_id());
-        if (existingMessage == null) {
-            return null; // Message does not exist
+    /**
+     * Publishes the event for a newly added message under that message's event lock.
+     */
+    private void publish(String type, Message message) {
+        ReentrantLock lock = eventLock(message.getMessage_id());
+        lock.lock();
+        try {
+            messageEvents.publish(new MessageEvent(type, message));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ReentrantLock[] newEventLocks() {
+        ReentrantLock[] locks = new ReentrantLock[EVENT_LOCK_STRIPES];
+        for (int i = 0; i < EVENT_LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
         }
+        return locks;
+    }
 
-        messageDAO.updateMessageById(message);
-        return messageDAO.getMessageById(message.getMessage_id()); // Return the updated message
+    private ReentrantLock eventLock(int messageId) {
+        return eventLocks[messageId & (EVENT_LOCK_STRIPES - 1)];
+    }
+
+    private void invalidate(int messageId) {
+        if (messageCache != null) {
+            messageCache.invalidate(messageId);
+        }
     }
 
     /**
@@ -110,6 +453,310 @@ public class MessageService {
         if (!accountService.isAccountValid(accountId)) {
             return new ArrayList<>(); // Return an empty list if the account is invalid
         }
-        return messageDAO.getAllMessagesByAccountId(accountId); // Retrieve messages from the DAO
+        return messageRepository.getAllMessagesByAccountId(accountId); // Retrieve messages from the DAO
+    }
+
+    /**
+     * Retrieves one page of all messages, ordered by time_posted_epoch and then message_id.
+     *
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages on the page, between 1 and MAX_PAGE_SIZE.
+     * @return The page of messages, with a cursor for the next page if there may be more.
+     * @throws IllegalArgumentException if the cursor or limit is invalid.
+     */
+    public MessagePage getMessagesPage(String after, int limit) {
+        return loadMessagesPage(parsePageRequest(after, limit), limit);
+    }
+
+    /**
+     * Retrieves one page of the messages posted by a specific account, ordered by time_posted_epoch and then
+     * message_id.
+     *
+     * @param accountId The ID of the account whose messages are to be retrieved.
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages on the page, between 1 and MAX_PAGE_SIZE.
+     * @return The page of messages, which is empty if the account does not exist.
+     * @throws IllegalArgumentException if the cursor or limit is invalid.
+     */
+    public MessagePage getMessagesPageByAccountId(int accountId, String after, int limit) {
+        return loadMessagesPageByAccountId(accountId, parsePageRequest(after, limit), limit);
+    }
+
+    /**
+     * Rebuilds the search index from every stored message. Meant to be called once at startup, before requests
+     * are served. Does nothing when the store is shared, since the index could not follow other instances' writes.
+     */
+    public void rebuildSearchIndex() {
+        if (sharedStore) {
+            return;
+        }
+        try {
+            searchIndex.rebuild(messageRepository);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the ring of message changes that stream subscribers read from.
+     */
+    public EventRing<MessageEvent> getMessageEvents() {
+        return messageEvents;
+    }
+
+    /**
+     * @return the search index, for reading its size.
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Retrieves one page of the messages whose text contains every term of the query, ordered by message_id.
+     * Matching ignores case and punctuation, and terms match whole words only.
+     *
+     * @param query The search query, split into terms like message_text.
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages on the page, between 1 and MAX_PAGE_SIZE.
+     * @return The page of messages, with a cursor for the next page if there may be more.
+     * @throws IllegalArgumentException if the query has no terms or more than MAX_SEARCH_TERMS, or the cursor or
+     *         limit is invalid.
+     */
+    public MessagePage searchMessages(String query, String after, int limit) {
+        List<String> terms = parseSearchQuery(query);
+        return loadSearchPage(terms, parsePageRequest(after, limit), limit);
+    }
+
+    private List<String> parseSearchQuery(String query) {
+        List<String> terms = query == null ? List.of() : SearchIndex.terms(query);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("A search query must contain at least one word");
+        }
+        if (terms.size() > MAX_SEARCH_TERMS) {
+            throw new IllegalArgumentException("A search query may contain at most " + MAX_SEARCH_TERMS + " words");
+        }
+        return terms;
+    }
+
+    /**
+     * Reads matching IDs from the index a page at a time and keeps the messages whose stored text still contains
+     * every term, so stale index entries left by edits are skipped.
+     */
+    private MessagePage loadSearchPage(List<String> terms, PageCursor cursor, int limit) {
+        List<Message> matches = new ArrayList<>();
+        int afterId = cursor == null ? 0 : cursor.getMessageId();
+        while (matches.size() <= limit) {
+            int[] ids = searchIndex.search(terms, afterId, limit + 1 - matches.size());
+            if (ids.length == 0) {
+                break;
+            }
+            for (Message message : messageRepository.getMessagesByIds(ids)) {
+                if (SearchIndex.terms(message.getMessage_text()).containsAll(terms)) {
+                    matches.add(message);
+                }
+            }
+            afterId = ids[ids.length - 1];
+        }
+        return toPage(matches, limit);
+    }
+
+    private MessagePage loadMessagesPage(PageCursor cursor, int limit) {
+        return toPage(messageRepository.getMessagesPage(cursor, limit + 1), limit);
+    }
+
+    private MessagePage loadMessagesPageByAccountId(int accountId, PageCursor cursor, int limit) {
+        if (!accountService.isAccountValid(accountId)) {
+            return new MessagePage(new ArrayList<>(), null);
+        }
+        return toPage(messageRepository.getMessagesPageByAccountId(accountId, cursor, limit + 1), limit);
+    }
+
+    /**
+     * Asynchronous variant of addMessage. Invalid text is rejected at once without using a database thread.
+     *
+     * @param message The message to be added.
+     * @return a future of the added message, or of null if the operation fails.
+     * @see DatabaseExecutor#supply for how a full queue and timeouts are reported.
+     */
+    public CompletableFuture<Message> addMessageAsync(Message message) {
+        if (!isValidMessageText(message)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return supply(() -> addMessage(message));
+    }
+
+    /**
+     * Asynchronous variant of addMessages.
+     *
+     * @param messages The messages to be added.
+     * @return a future of one result per message, in request order.
+     * @throws IllegalArgumentException if there are more than MAX_BATCH_SIZE messages.
+     */
+    public CompletableFuture<List<MessageBatchResult>> addMessagesAsync(List<Message> messages) {
+        if (messages.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch may contain at most " + MAX_BATCH_SIZE + " messages");
+        }
+        return supply(() -> addMessages(messages));
+    }
+
+    /**
+     * Asynchronous variant of getAllMessages.
+     *
+     * @return a future of all messages.
+     */
+    public CompletableFuture<List<Message>> getAllMessagesAsync() {
+        return supply(this::getAllMessages);
+    }
+
+    /**
+     * Asynchronous variant of getMessageById. A cached message is returned in an already completed future.
+     *
+     * @param messageId The ID of the message to be retrieved.
+     * @return a future of the message, or of null if no such message exists.
+     */
+    public CompletableFuture<Message> getMessageByIdAsync(int messageId) {
+        Message message = messageCache == null ? null : messageCache.get(messageId);
+        if (message != null) {
+            return CompletableFuture.completedFuture(message);
+        }
+        return supply(() -> loadMessageById(messageId));
+    }
+
+    /**
+     * Asynchronous variant of deleteMessageById.
+     *
+     * @param messageId The ID of the message to be deleted.
+     * @return a future of the deleted message, or of null if no such message exists.
+     */
+    public CompletableFuture<Message> deleteMessageByIdAsync(int messageId) {
+        return supply(() -> deleteMessageById(messageId));
+    }
+
+    /**
+     * Asynchronous variant of deleteMessageByIdAndAuthor.
+     *
+     * @param messageId The ID of the message to be deleted.
+     * @param postedBy The account that must have posted the message.
+     * @return a future of the deleted message, or of null if no such message by that account exists.
+     */
+    public CompletableFuture<Message> deleteMessageByIdAndAuthorAsync(int messageId, int postedBy) {
+        return supply(() -> deleteMessageByIdAndAuthor(messageId, postedBy));
+    }
+
+    /**
+     * Asynchronous variant of updateMessageById. Invalid text is rejected at once without using a database thread.
+     *
+     * @param message The message to be updated.
+     * @return a future of the updated message, or of null if the text is invalid or the message does not exist.
+     */
+    public CompletableFuture<Message> updateMessageByIdAsync(Message message) {
+        if (!isValidMessageText(message)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return supply(() -> updateMessageById(message));
+    }
+
+    /**
+     * Asynchronous variant of updateMessageByIdAndAuthor. Invalid text is rejected at once without using a
+     * database thread.
+     *
+     * @param message The message to be updated.
+     * @param postedBy The account that must have posted the message.
+     * @return a future of the updated message, or of null if the text is invalid or no such message by that
+     * account exists.
+     */
+    public CompletableFuture<Message> updateMessageByIdAndAuthorAsync(Message message, int postedBy) {
+        if (!isValidMessageText(message)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return supply(() -> updateMessageByIdAndAuthor(message, postedBy));
+    }
+
+    /**
+     * Asynchronous variant of getAllMessagesByAccountId.
+     *
+     * @param accountId The ID of the account whose messages are to be retrieved.
+     * @return a future of the account's messages.
+     */
+    public CompletableFuture<List<Message>> getAllMessagesByAccountIdAsync(int accountId) {
+        return supply(() -> getAllMessagesByAccountId(accountId));
+    }
+
+    /**
+     * Asynchronous variant of getMessagesPage. The cursor and limit are checked before anything is queued.
+     *
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages on the page, between 1 and MAX_PAGE_SIZE.
+     * @return a future of the page of messages.
+     * @throws IllegalArgumentException if the cursor or limit is invalid.
+     */
+    public CompletableFuture<MessagePage> getMessagesPageAsync(String after, int limit) {
+        PageCursor cursor = parsePageRequest(after, limit);
+        return supply(() -> loadMessagesPage(cursor, limit));
+    }
+
+    /**
+     * Asynchronous variant of getMessagesPageByAccountId. The cursor and limit are checked before anything is
+     * queued.
+     *
+     * @param accountId The ID of the account whose messages are to be retrieved.
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages on the page, between 1 and MAX_PAGE_SIZE.
+     * @return a future of the page of messages.
+     * @throws IllegalArgumentException if the cursor or limit is invalid.
+     */
+    public CompletableFuture<MessagePage> getMessagesPageByAccountIdAsync(int accountId, String after, int limit) {
+        PageCursor cursor = parsePageRequest(after, limit);
+        return supply(() -> loadMessagesPageByAccountId(accountId, cursor, limit));
+    }
+
+    /**
+     * Runs repository work on the shared DatabaseExecutor when the repository blocks on I/O, and on the calling
+     * thread when it does not, so the in-memory engine skips the queue hand-off.
+     */
+    private <T> CompletableFuture<T> supply(Supplier<T> task) {
+        if (messageRepository.isBlocking()) {
+            return DatabaseExecutor.getDefault().supply(task);
+        }
+        try {
+            return CompletableFuture.completedFuture(task.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronous variant of searchMessages. The query, cursor and limit are checked before anything is queued.
+     *
+     * @param query The search query.
+     * @param after The opaque cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages on the page, between 1 and MAX_PAGE_SIZE.
+     * @return a future of the page of matching messages.
+     * @throws IllegalArgumentException if the query, cursor or limit is invalid.
+     */
+    public CompletableFuture<MessagePage> searchMessagesAsync(String query, String after, int limit) {
+        List<String> terms = parseSearchQuery(query);
+        PageCursor cursor = parsePageRequest(after, limit);
+        return supply(() -> loadSearchPage(terms, cursor, limit));
+    }
+
+    private PageCursor parsePageRequest(String after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return after == null || after.isEmpty() ? null : PageCursor.decode(after);
+    }
+
+    /**
+     * Builds a page from a query that fetched one row more than the limit, so the extra row tells us whether
+     * another page exists without a separate count query.
+     */
+    private MessagePage toPage(List<Message> rows, int limit) {
+        if (rows.size() <= limit) {
+            return new MessagePage(rows, null);
+        }
+        List<Message> messages = new ArrayList<>(rows.subList(0, limit));
+        Message last = messages.get(limit - 1);
+        return new MessagePage(messages, new PageCursor(last.getTime_posted_epoch(), last.getMessage_id()).encode());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,447 @@
+package Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.MessageRepository;
+import Model.Message;
+
+/**
+ * An inverted index from the words of message_text to the IDs of the messages containing them.
+ *
+ * Text is split into terms at every character that is not a letter or digit, and terms are lower-cased. Each
+ * term's posting list holds its message IDs in ascending order, stored in blocks as the gaps between consecutive
+ * IDs in a variable-length byte encoding, so a list of nearby IDs costs about one byte per message. New messages
+ * usually append to the end of each list, and any other change rewrites a single block.
+ *
+ * The index is kept in step by MessageService, which applies each change under the message's event lock, in the
+ * order the writes reached the store. A deleted message's terms are removed, and an edit removes the terms of the
+ * text it replaced (as returned by the update statement) before adding the new ones. A message edited or deleted
+ * before its insert was indexed can still leave stale entries, so callers must check each result against the
+ * stored text.
+ */
+public class SearchIndex {
+    /**
+     * Terms longer than this are cut short, both when indexing and when searching.
+     */
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private Map<String, PostingList> postings = new HashMap<>();
+    /**
+     * A ReentrantReadWriteLock rather than synchronized, so searches run in parallel and a virtual thread waiting
+     * for the lock does not pin its carrier thread.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Splits text into its distinct terms, in order of first appearance.
+     *
+     * @param text The text to split.
+     * @return the lower-cased terms, or an empty list if the text has no letters or digits.
+     */
+    public static List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.codePointAt(i))) {
+                i += Character.charCount(text.codePointAt(i));
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.codePointAt(i))) {
+                i += Character.charCount(text.codePointAt(i));
+            }
+            if (i > start) {
+                String term = text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT);
+                terms.add(term);
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * Indexes the terms of a message. Adding a message that is already indexed has no effect.
+     *
+     * @param message The message to index.
+     */
+    public void add(Message message) {
+        List<String> terms = terms(message.getMessage_text());
+        lock.writeLock().lock();
+        try {
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new PostingList()).add(message.getMessage_id());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a message from the posting lists of the terms in its text.
+     *
+     * @param message The message as it was stored, with its message_id and message_text.
+     */
+    public void remove(Message message) {
+        List<String> terms = terms(message.getMessage_text());
+        lock.writeLock().lock();
+        try {
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list != null && list.remove(message.getMessage_id()) && list.size() == 0) {
+                    postings.remove(term);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole index with one built from the given messages. Messages added to the old index while the
+     * new one is being built are not carried over, so this is meant to be called before requests are served.
+     *
+     * @param repository The repository to read every message from.
+     * @throws IOException if reading the messages fails.
+     */
+    public void rebuild(MessageRepository repository) throws IOException {
+        SearchIndex rebuilt = new SearchIndex();
+        repository.streamAllMessages(rebuilt::add);
+        lock.writeLock().lock();
+        try {
+            postings = rebuilt.postings;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the messages that contain every term, by intersecting the terms' posting lists starting from the
+     * shortest.
+     *
+     * @param terms The terms to look for, as returned by terms(). Must not be empty.
+     * @param afterId Only IDs greater than this are returned. Use 0 to start from the first message.
+     * @param limit The maximum number of IDs to return.
+     * @return the matching IDs in ascending order, at most limit of them.
+     */
+    public int[] search(List<String> terms, int afterId, int limit) {
+        if (afterId >= PostingList.Cursor.END - 1) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            PostingList[] lists = new PostingList[terms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = postings.get(terms.get(i));
+                if (lists[i] == null) {
+                    return new int[0];
+                }
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+            PostingList.Cursor[] cursors = new PostingList.Cursor[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                cursors[i] = lists[i].cursor();
+            }
+
+            int[] ids = new int[Math.min(limit, lists[0].size())];
+            int count = 0;
+            int candidate = cursors[0].advance(Math.max(afterId, 0) + 1);
+            while (count < ids.length && candidate != PostingList.Cursor.END) {
+                int next = candidate;
+                for (int i = 1; i < cursors.length && next == candidate; i++) {
+                    next = cursors[i].advance(candidate);
+                }
+                if (next == candidate) {
+                    ids[count++] = candidate;
+                    next = candidate + 1;
+                }
+                candidate = next == PostingList.Cursor.END ? next : cursors[0].advance(next);
+            }
+            return Arrays.copyOf(ids, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms in the index.
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the total size of the encoded posting lists, in bytes.
+     */
+    public long getPostingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList list : postings.values()) {
+                bytes += list.byteSize();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A sorted set of message IDs, split into blocks of at most BLOCK_SIZE IDs in ascending order. Within a block
+     * each ID is stored as its gap from the one before (the first from the block's base), seven bits per byte, low
+     * bits first, with the high bit set on every byte but the last.
+     *
+     * Adding an ID above every other appends to the last block. Adding or removing any other ID re-encodes only the
+     * block it falls in, splitting the block in two once it is full, so edits of old messages and IDs arriving out of
+     * order cost O(BLOCK_SIZE) rather than the size of the whole list.
+     */
+    static final class PostingList {
+        static final int BLOCK_SIZE = 128;
+
+        private final List<Block> blocks = new ArrayList<>();
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int byteSize() {
+            int bytes = 0;
+            for (Block block : blocks) {
+                bytes += block.length;
+            }
+            return bytes;
+        }
+
+        /**
+         * @return true if the ID was added, false if it was already present.
+         */
+        boolean add(int id) {
+            Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (last == null || id > last.lastId) {
+                if (last == null || last.size == BLOCK_SIZE) {
+                    last = new Block(last == null ? 0 : last.lastId);
+                    blocks.add(last);
+                }
+                last.append(id);
+                size++;
+                return true;
+            }
+            int index = blockFor(id);
+            Block block = blocks.get(index);
+            int[] ids = block.decode();
+            int position = Arrays.binarySearch(ids, id);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            int[] updated = new int[ids.length + 1];
+            System.arraycopy(ids, 0, updated, 0, position);
+            updated[position] = id;
+            System.arraycopy(ids, position, updated, position + 1, ids.length - position);
+            if (updated.length > BLOCK_SIZE) {
+                int half = updated.length / 2;
+                block.encode(updated, 0, half);
+                Block right = new Block(updated[half - 1]);
+                right.encode(updated, half, updated.length);
+                blocks.add(index + 1, right);
+            } else {
+                block.encode(updated, 0, updated.length);
+            }
+            size++;
+            return true;
+        }
+
+        /**
+         * @return true if the ID was removed, false if it was not present.
+         */
+        boolean remove(int id) {
+            if (size == 0 || id > blocks.get(blocks.size() - 1).lastId) {
+                return false;
+            }
+            int index = blockFor(id);
+            Block block = blocks.get(index);
+            int[] ids = block.decode();
+            int position = Arrays.binarySearch(ids, id);
+            if (position < 0) {
+                return false;
+            }
+            if (ids.length == 1) {
+                blocks.remove(index);
+            } else {
+                int[] updated = new int[ids.length - 1];
+                System.arraycopy(ids, 0, updated, 0, position);
+                System.arraycopy(ids, position + 1, updated, position, ids.length - position - 1);
+                block.encode(updated, 0, updated.length);
+            }
+            size--;
+            return true;
+        }
+
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        /**
+         * @return the index of the first block whose last ID is at least id. The list must hold an ID that large.
+         */
+        private int blockFor(int id) {
+            int low = 0;
+            int high = blocks.size() - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (blocks.get(middle).lastId < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * One run of encoded gaps. The base is below the block's first ID and at least the previous block's last
+         * ID when the block was last encoded.
+         */
+        private static final class Block {
+            private byte[] bytes = new byte[16];
+            private int length;
+            private int size;
+            private int base;
+            private int lastId;
+
+            Block(int base) {
+                this.base = base;
+                this.lastId = base;
+            }
+
+            void append(int id) {
+                int gap = id - lastId;
+                if (length + 5 > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+                }
+                while ((gap & ~0x7F) != 0) {
+                    bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                    gap >>>= 7;
+                }
+                bytes[length++] = (byte) gap;
+                lastId = id;
+                size++;
+            }
+
+            int[] decode() {
+                int[] ids = new int[size];
+                int position = 0;
+                int current = base;
+                for (int i = 0; i < size; i++) {
+                    int gap = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[position++];
+                        gap |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    current += gap;
+                    ids[i] = current;
+                }
+                return ids;
+            }
+
+            /**
+             * Replaces the block's contents with ids[from] to ids[to - 1], which must be ascending.
+             */
+            void encode(int[] ids, int from, int to) {
+                // The previous block may have lost its last IDs, letting a smaller ID land here
+                base = Math.min(base, ids[from] - 1);
+                bytes = new byte[Math.max(16, (to - from) * 2)];
+                length = 0;
+                size = 0;
+                lastId = base;
+                for (int i = from; i < to; i++) {
+                    append(ids[i]);
+                }
+            }
+        }
+
+        /**
+         * Reads the IDs of a posting list in ascending order. Only valid while the list is not modified, which the
+         * index's read lock guarantees.
+         */
+        final class Cursor {
+            /**
+             * Returned once every ID has been read. Larger than any real ID, so it never matches a candidate.
+             */
+            static final int END = Integer.MAX_VALUE;
+
+            private int blockIndex;
+            private int position;
+            private int previous = blocks.isEmpty() ? 0 : blocks.get(0).base;
+            private int current;
+
+            /**
+             * @return the next ID, or END if there are no more.
+             */
+            int next() {
+                while (blockIndex < blocks.size() && position >= blocks.get(blockIndex).length) {
+                    moveToBlock(blockIndex + 1);
+                }
+                if (blockIndex >= blocks.size()) {
+                    current = END;
+                    return END;
+                }
+                byte[] bytes = blocks.get(blockIndex).bytes;
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += gap;
+                current = previous;
+                return current;
+            }
+
+            /**
+             * Moves forward to the first ID that is at least target, skipping whole blocks that end before it. The
+             * ID the cursor is on counts, so asking again for the same target returns the same ID.
+             *
+             * @param target The smallest ID wanted. Must be positive.
+             * @return the ID, or END if there is none.
+             */
+            int advance(int target) {
+                while (current < target) {
+                    while (blockIndex < blocks.size() - 1 && blocks.get(blockIndex).lastId < target) {
+                        moveToBlock(blockIndex + 1);
+                    }
+                    if (next() == END) {
+                        return END;
+                    }
+                }
+                return current;
+            }
+
+            private void moveToBlock(int index) {
+                blockIndex = index;
+                position = 0;
+                if (index < blocks.size()) {
+                    previous = blocks.get(index).base;
+                }
+            }
+        }
+    }
+}
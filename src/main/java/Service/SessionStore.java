@@ -0,0 +1,142 @@
+package Service;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import Util.Metrics;
+import Util.Timer;
+
+/**
+ * The SessionStore class issues opaque session tokens at login and resolves them back to an account_id.
+ *
+ * Tokens are 32 random bytes from SecureRandom, URL-safe Base64 encoded, and are kept in a ConcurrentHashMap with
+ * their account and expiry time, so resolving one is a single map lookup with no database round trip. Sessions
+ * expire a fixed time after they are issued. Expired sessions are removed when they are next presented, and
+ * the rest are swept out when new sessions are issued, at most once a minute. Sessions live in memory, so a restart
+ * logs everyone out.
+ */
+public class SessionStore {
+    /**
+     * Returned by resolve for a token that is unknown or expired.
+     */
+    public static final int NO_ACCOUNT = -1;
+
+    private static final long SWEEP_INTERVAL_NANOS = 60_000_000_000L;
+    private static final Timer ISSUE_TIMER = Metrics.getDefault().timer("socialmedia_session",
+            "Time spent issuing and validating session tokens.", "operation", "issue");
+    /**
+     * Time spent validating a token on the request path, with unknown and expired tokens counted as errors.
+     */
+    private static final Timer VALIDATE_TIMER = Metrics.getDefault().timer("socialmedia_session",
+            "Time spent issuing and validating session tokens.", "operation", "validate");
+
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long nextSweepNanos;
+
+    /**
+     * @param ttlSeconds How long a session lasts after it is issued.
+     */
+    public SessionStore(long ttlSeconds) {
+        this(ttlSeconds, System::nanoTime);
+    }
+
+    /**
+     * @param ttlSeconds How long a session lasts after it is issued.
+     * @param clock Returns the current time in nanoseconds, like System.nanoTime.
+     */
+    public SessionStore(long ttlSeconds, LongSupplier clock) {
+        if (ttlSeconds < 1) {
+            throw new IllegalArgumentException("ttlSeconds must be positive");
+        }
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.clock = clock;
+        this.nextSweepNanos = clock.getAsLong() + SWEEP_INTERVAL_NANOS;
+    }
+
+    /**
+     * Starts a session for an account.
+     *
+     * @param accountId The account that logged in.
+     * @return the new session's token.
+     */
+    public String issue(int accountId) {
+        long start = System.nanoTime();
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long now = clock.getAsLong();
+        sessions.put(token, new Session(accountId, now + ttlNanos));
+        sweep(now);
+        ISSUE_TIMER.recordSince(start);
+        return token;
+    }
+
+    /**
+     * Finds the account a token was issued to.
+     *
+     * @param token The token presented by the client.
+     * @return the account_id, or NO_ACCOUNT if the token is unknown or has expired.
+     */
+    public int resolve(String token) {
+        long start = System.nanoTime();
+        Session session = sessions.get(token);
+        int accountId = NO_ACCOUNT;
+        if (session != null) {
+            if (session.expiresAtNanos - clock.getAsLong() > 0) {
+                accountId = session.accountId;
+            } else {
+                sessions.remove(token, session);
+            }
+        }
+        if (accountId == NO_ACCOUNT) {
+            VALIDATE_TIMER.recordError();
+        }
+        VALIDATE_TIMER.recordSince(start);
+        return accountId;
+    }
+
+    /**
+     * Ends a session. Revoking an unknown token has no effect.
+     *
+     * @param token The session's token.
+     */
+    public void revoke(String token) {
+        sessions.remove(token);
+    }
+
+    /**
+     * @return the number of sessions held, including expired ones not yet swept out.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    private void sweep(long now) {
+        if (now - nextSweepNanos < 0 || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sessions.values().removeIf(session -> session.expiresAtNanos - now <= 0);
+            nextSweepNanos = now + SWEEP_INTERVAL_NANOS;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private static final class Session {
+        private final int accountId;
+        private final long expiresAtNanos;
+
+        Session(int accountId, long expiresAtNanos) {
+            this.accountId = accountId;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
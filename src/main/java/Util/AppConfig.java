@@ -0,0 +1,147 @@
+package Util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The AppConfig class reads tunable settings for the application. A setting is looked up first as a JVM system
+ * property (e.g. -Dsocialmedia.pool.maxSize=20), then as an environment variable, where the key is upper-cased
+ * and dots are replaced with underscores (e.g. SOCIALMEDIA_POOL_MAXSIZE=20), and then in the properties file named
+ * by socialmedia.config (default socialmedia.properties in the working directory), which need not exist. If none of
+ * them sets it, the default is used.
+ */
+public class AppConfig {
+    /**
+     * The setting naming the properties file. It can only be set as a system property or environment variable.
+     */
+    public static final String CONFIG_FILE_KEY = "socialmedia.config";
+    private static final String DEFAULT_CONFIG_FILE = "socialmedia.properties";
+
+    /**
+     * The properties file last loaded, reloaded only when socialmedia.config names a different file.
+     */
+    private static volatile ConfigFile configFile;
+
+    private AppConfig() {
+    }
+
+    /**
+     * Retrieves a setting as a string.
+     *
+     * @param key The name of the setting, e.g. "socialmedia.pool.maxSize".
+     * @param defaultValue The value to use if the setting is not present.
+     * @return The configured value, or the default value if none is set.
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = lookup(key);
+        if (value == null && !key.equals(CONFIG_FILE_KEY)) {
+            value = configFile().properties.getProperty(key);
+        }
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Retrieves a setting as an int.
+     *
+     * @param key The name of the setting.
+     * @param defaultValue The value to use if the setting is not present.
+     * @return The configured value, or the default value if none is set.
+     * @throws IllegalArgumentException if the setting is present but is not a valid int.
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Retrieves a setting as a long.
+     *
+     * @param key The name of the setting.
+     * @param defaultValue The value to use if the setting is not present.
+     * @return The configured value, or the default value if none is set.
+     * @throws IllegalArgumentException if the setting is present but is not a valid long.
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid long for " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Retrieves a setting as a boolean. Only "true" (in any case) is treated as true.
+     *
+     * @param key The name of the setting.
+     * @param defaultValue The value to use if the setting is not present.
+     * @return The configured value, or the default value if none is set.
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static String lookup(String key) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key.toUpperCase().replace('.', '_'));
+        }
+        return value;
+    }
+
+    private static ConfigFile configFile() {
+        String path = lookup(CONFIG_FILE_KEY);
+        if (path == null || path.isBlank()) {
+            path = DEFAULT_CONFIG_FILE;
+        }
+        ConfigFile loaded = configFile;
+        if (loaded == null || !loaded.path.equals(path)) {
+            loaded = new ConfigFile(path);
+            configFile = loaded;
+        }
+        return loaded;
+    }
+
+    private static final class ConfigFile {
+        private final String path;
+        private final Properties properties = new Properties();
+
+        /**
+         * Reads the file, treating a missing file as empty.
+         *
+         * @throws IllegalArgumentException if the file exists but cannot be read.
+         */
+        ConfigFile(String path) {
+            this.path = path;
+            try (Reader reader = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (NoSuchFileException e) {
+                // No file means every setting comes from the JVM, the environment or its default
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read " + CONFIG_FILE_KEY + " file " + path, e);
+            }
+        }
+    }
+}
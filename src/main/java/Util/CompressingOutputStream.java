@@ -0,0 +1,248 @@
+package Util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The CompressingOutputStream class compresses a response body with gzip or deflate as it is written, without
+ * buffering the whole body.
+ *
+ * The first minSize bytes are held back. If the body ends before reaching minSize it is written uncompressed, since
+ * compressing a small body costs more CPU than it saves in bytes. Once minSize is reached, onCompress is run (so the
+ * caller can set Content-Encoding before anything is sent), the held bytes are compressed, and everything after is
+ * compressed as it arrives through a fixed-size buffer.
+ *
+ * "deflate" is sent in the zlib format (RFC 1950), which is what HTTP means by that name, and "gzip" uses the gzip
+ * format (RFC 1952). Closing the stream finishes the compressed data and releases the native compressor, but leaves
+ * the underlying stream open.
+ */
+public class CompressingOutputStream extends OutputStream {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The content codings this stream can produce, named as they appear in Accept-Encoding and Content-Encoding.
+     */
+    public enum Encoding {
+        GZIP("gzip"), DEFLATE("deflate");
+
+        private final String headerValue;
+
+        Encoding(String headerValue) {
+            this.headerValue = headerValue;
+        }
+
+        public String getHeaderValue() {
+            return headerValue;
+        }
+    }
+
+    private final OutputStream out;
+    private final Encoding encoding;
+    private final int level;
+    private final Runnable onCompress;
+    private byte[] pending;
+    private int pendingCount;
+    private Deflater deflater;
+    private byte[] buffer;
+    private CRC32 crc;
+    private final byte[] singleByte = new byte[1];
+    private boolean finished;
+
+    /**
+     * @param out The stream to write the (possibly compressed) body to.
+     * @param encoding The coding to use, or null to pass everything through uncompressed.
+     * @param level The Deflater compression level, 1 (fastest) to 9 (smallest).
+     * @param minSize Bodies shorter than this many bytes are sent uncompressed.
+     * @param onCompress Run once, before the first compressed byte is written, when the body turns out to be large
+     *                   enough to compress.
+     */
+    public CompressingOutputStream(OutputStream out, Encoding encoding, int level, int minSize,
+            Runnable onCompress) {
+        this.out = out;
+        this.encoding = encoding;
+        this.level = level;
+        this.onCompress = onCompress;
+        if (encoding != null) {
+            this.pending = new byte[Math.max(minSize, 1)];
+        }
+    }
+
+    /**
+     * Picks the coding to use from an Accept-Encoding header, honoring q-values. gzip is preferred over deflate when
+     * both are equally acceptable, and a coding with q=0 is never chosen.
+     *
+     * @param acceptEncoding The Accept-Encoding header, or null if the request had none.
+     * @return the coding to use, or null if the body should not be compressed.
+     */
+    public static Encoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double wildcard = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String coding = fields[0].trim().toLowerCase();
+            double q = 1;
+            for (int i = 1; i < fields.length; i++) {
+                String parameter = fields[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0; // An unreadable weight is treated as "not acceptable"
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("deflate")) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                wildcard = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = wildcard;
+        }
+        if (deflate < 0) {
+            deflate = wildcard;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return Encoding.GZIP;
+        }
+        return deflate > 0 ? Encoding.DEFLATE : null;
+    }
+
+    /**
+     * @return true once the body has passed minSize and is being compressed.
+     */
+    public boolean isCompressing() {
+        return deflater != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+        if (encoding == null) {
+            out.write(b, off, len);
+            return;
+        }
+        if (deflater == null) {
+            if (pendingCount + len < pending.length) {
+                System.arraycopy(b, off, pending, pendingCount, len);
+                pendingCount += len;
+                return;
+            }
+            startCompressing();
+        }
+        compress(b, off, len);
+    }
+
+    /**
+     * Sends what has been compressed so far. While the body is still shorter than minSize nothing is sent, so the
+     * decision to compress is not forced early.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (deflater != null) {
+            int count;
+            while ((count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH)) > 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+        if (encoding == null || deflater != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the rest of the body: the held-back bytes uncompressed if the body never reached minSize, otherwise the
+     * end of the compressed data. The underlying stream is flushed but not closed.
+     *
+     * @throws IOException if writing to the underlying stream fails.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (deflater == null) {
+            if (pendingCount > 0) {
+                out.write(pending, 0, pendingCount);
+            }
+        } else {
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    out.write(buffer, 0, count);
+                }
+                if (encoding == Encoding.GZIP) {
+                    writeIntLE((int) crc.getValue());
+                    writeIntLE(deflater.getTotalIn());
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        pending = null;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void startCompressing() throws IOException {
+        onCompress.run();
+        buffer = new byte[BUFFER_SIZE];
+        if (encoding == Encoding.GZIP) {
+            deflater = new Deflater(level, true); // Raw deflate data inside our own gzip header and trailer
+            crc = new CRC32();
+            out.write(new byte[] {(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0,
+                    (byte) 0xff});
+        } else {
+            deflater = new Deflater(level);
+        }
+        compress(pending, 0, pendingCount);
+        pending = null;
+        pendingCount = 0;
+    }
+
+    private void compress(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (crc != null) {
+            crc.update(b, off, len);
+        }
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            int count = deflater.deflate(buffer);
+            if (count > 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
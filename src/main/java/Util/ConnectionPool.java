@@ -0,0 +1,428 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of physical JDBC connections.
+ *
+ * Callers borrow a connection with getConnection() and give it back by calling close() on it, exactly as they would
+ * with an unpooled connection. The pool keeps between minSize and maxSize physical connections open, waits up to
+ * acquireTimeoutMillis for a free connection before failing, closes connections that have been idle longer than
+ * idleTimeoutMillis (down to minSize), validates connections before handing them out, and logs a warning with the
+ * borrower's stack trace when a connection is held longer than leakDetectionThresholdMillis.
+ *
+ * Statements created through a borrowed connection are closed when the connection is returned, so code that does
+ * not close its own PreparedStatements does not leak them onto the physical connection.
+ *
+ * Every borrow gets its own proxy, which stops working once it is closed. A borrower that keeps its handle and
+ * calls close() again, or uses it, after the physical connection has been lent to someone else therefore cannot
+ * touch the new lease. The physical connection is never handed out: unwrap() refuses anything but the proxy
+ * itself.
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Connections that were used within this window are handed out again without a validation round trip.
+     */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 5000;
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakDetectionThresholdMillis;
+
+    private final Semaphore leases;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Map<PooledConnection, Boolean> leased = new ConcurrentHashMap<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final Timer acquireTimer = new Timer();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool over the given DataSource and opens minSize connections up front.
+     *
+     * @param dataSource The source of physical connections.
+     * @param minSize The number of connections kept open even when idle.
+     * @param maxSize The maximum number of connections that may be open at once.
+     * @param acquireTimeoutMillis How long getConnection() waits for a free connection before failing.
+     * @param idleTimeoutMillis How long a connection above minSize may sit idle before it is closed.
+     * @param leakDetectionThresholdMillis How long a connection may be held before a leak is reported, or 0 to
+     *        disable leak detection. While it is enabled, every borrow captures its caller's stack trace.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long leakDetectionThresholdMillis) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.leases = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fillToMinimum();
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_PERIOD_MILLIS, HOUSEKEEPING_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new physical connection if none is idle and the pool is not
+     * full. Calling close() on the returned connection gives it back to the pool.
+     *
+     * @return a validated connection.
+     * @throws SQLTimeoutException if no connection became available within the acquire timeout.
+     * @throws SQLException if the pool is closed or a new connection could not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return acquire();
+        } catch (SQLException | RuntimeException e) {
+            acquireTimer.recordError();
+            throw e;
+        } finally {
+            acquireTimer.recordSince(start);
+        }
+    }
+
+    private Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!leases.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                        + "ms waiting for a connection (max pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection pooled = takeIdleOrCreate();
+            Connection lease = pooled.lease(
+                    leakDetectionThresholdMillis > 0 ? new Throwable("Connection acquired here") : null);
+            leased.put(pooled, Boolean.TRUE);
+            return lease;
+        } catch (SQLException | RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return leased.size();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of physical connections currently open.
+     */
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return the number of threads waiting for a connection.
+     */
+    public int getPendingCount() {
+        return leases.getQueueLength();
+    }
+
+    /**
+     * @return the time callers spend in getConnection(), with failed acquisitions counted as errors.
+     */
+    public Timer getAcquireTimer() {
+        return acquireTimer;
+    }
+
+    /**
+     * @return the maximum number of connections this pool will open.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Closes every idle connection and stops the housekeeper. Borrowed connections are closed when they are
+     * returned.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isUsable(pooled)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return create();
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = dataSource.getConnection();
+        totalConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastReturnedAt < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Puts a returned connection back into the pool after resetting the state a borrower may have changed.
+     */
+    private void release(PooledConnection pooled) {
+        leased.remove(pooled);
+        try {
+            boolean healthy = !pooled.broken && resetState(pooled);
+            if (healthy && !closed && idle.size() < maxSize) {
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            } else {
+                discard(pooled);
+            }
+        } finally {
+            leases.release();
+        }
+    }
+
+    private boolean resetState(PooledConnection pooled) {
+        pooled.closeStatements();
+        try {
+            Connection physical = pooled.physical;
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (physical.isReadOnly()) {
+                physical.setReadOnly(false);
+            }
+            physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            LOGGER.warn("Discarding connection that could not be reset: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Error closing discarded connection", e);
+        } finally {
+            totalConnections.decrementAndGet();
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && totalConnections.get() < minSize) {
+            try {
+                PooledConnection pooled = create();
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                LOGGER.warn("Could not open connection to reach minimum pool size: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs periodically to close connections that have been idle too long, reopen connections down to the
+     * minimum size, and report connections that have been held longer than the leak detection threshold.
+     */
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> iterator = idle.descendingIterator();
+            while (iterator.hasNext() && totalConnections.get() > minSize) {
+                PooledConnection pooled = iterator.next();
+                if (now - pooled.lastReturnedAt > idleTimeoutMillis && idle.remove(pooled)) {
+                    discard(pooled);
+                }
+            }
+            fillToMinimum();
+            if (leakDetectionThresholdMillis > 0) {
+                for (PooledConnection pooled : leased.keySet()) {
+                    if (!pooled.leakReported && now - pooled.leasedAt > leakDetectionThresholdMillis) {
+                        pooled.leakReported = true;
+                        LOGGER.warn("Connection held for more than " + leakDetectionThresholdMillis
+                                + "ms, possible leak", pooled.leaseTrace);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Connection pool housekeeping failed", e);
+        }
+    }
+
+    /**
+     * A physical connection and the state of its current lease.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final List<Statement> openStatements = new ArrayList<>();
+        private volatile long leasedAt;
+        private volatile long lastReturnedAt;
+        private volatile Throwable leaseTrace;
+        private volatile boolean leakReported;
+        private volatile boolean broken;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Starts a new lease.
+         *
+         * @return the proxy for this lease only.
+         */
+        Connection lease(Throwable trace) {
+            leasedAt = System.currentTimeMillis();
+            leaseTrace = trace;
+            leakReported = false;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Lease(this));
+        }
+
+        synchronized void closeStatements() {
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    LOGGER.debug("Error closing statement on connection return", e);
+                }
+            }
+            openStatements.clear();
+        }
+    }
+
+    /**
+     * The handler behind one borrower's proxy. It forwards calls to the physical connection until the first
+     * close(), after which the proxy is dead for good, even once the connection has been lent out again.
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        /**
+         * Cleared with compareAndSet, so only the first of several racing close() calls gives the lease back.
+         */
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (open.compareAndSet(true, false)) {
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return !open.get() || pooled.physical.isClosed();
+                case "equals":
+                    return proxyInstance == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyInstance);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxyInstance);
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxyInstance)) {
+                        return proxyInstance;
+                    }
+                    // Handing out the physical connection would let it outlive the lease
+                    throw new SQLException("A pooled connection cannot be unwrapped to " + args[0]);
+                default:
+                    break;
+            }
+            if (!open.get()) {
+                throw new SQLException("Connection is closed");
+            }
+            try {
+                Object result = method.invoke(pooled.physical, args);
+                if (result instanceof Statement) {
+                    synchronized (pooled) {
+                        pooled.openStatements.add((Statement) result);
+                    }
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("08")) {
+                        pooled.broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
@@ -5,23 +5,34 @@ import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import DAO.Repositories;
+
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
+import org.h2.tools.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a bounded ConnectionPool, so closing a connection returns it to the pool rather
+ * than closing the physical H2 connection. The pool can be tuned with the following settings (see AppConfig):
+ * socialmedia.pool.minSize, socialmedia.pool.maxSize, socialmedia.pool.acquireTimeoutMillis,
+ * socialmedia.pool.idleTimeoutMillis and socialmedia.pool.leakDetectionThresholdMillis, which is 0 (off) by
+ * default since it records a stack trace on every borrow. The pool's sizes and acquire times are published in the
+ * default Metrics registry. When no connection can be had, getConnection() throws DatabaseUnavailableException.
+ *
+ * Which database is opened, and how it is tuned, is chosen by the DatabaseProfile named in socialmedia.db.profile
+ * (memory, file or tcp; file by default). The profile is validated when the first connection is requested, and
+ * published in the metrics as socialmedia_db_profile_info along with its cache size and write delay. When messages
+ * are sharded (socialmedia.messages.shards above 1), getShardConnection() borrows from one pool per shard database.
  */
 public class ConnectionUtil {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionUtil.class);
 
-	/**
-	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
-	 */
-	private static String url = "jdbc:h2:./h2/db;";
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,43 +43,194 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Holds the pool and tracer, so they are created (and H2 opened) on first use rather than when the class is
+	 * loaded. With socialmedia.storage=memory nothing ever asks for a connection and H2 is never touched.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static final class Holder {
+		/**
+		 * The configured profile, which supplies the connection string.
+		 */
+		private static final DatabaseProfile profile = DatabaseProfile.fromConfig();
+
+		/**
+		 * The H2 TCP server hosted by this process, or null if the profile does not ask for one.
+		 */
+		private static final Server server;
+
+		/**
+		 * Pool of reusable connections. Closing a borrowed connection returns it to this pool.
+		 */
+		private static final ConnectionPool pool;
+
+		/**
+		 * Times every statement run through getConnection() and logs slow ones when tracing is turned on with
+		 * socialmedia.db.trace.enabled=true, or null otherwise. Tracing proxies every connection, statement and
+		 * result set call, so it is off by default. Statements taking at least
+		 * socialmedia.db.slowQuery.thresholdMillis (default 100) are logged, with their EXPLAIN plan when
+		 * socialmedia.db.slowQuery.explain=true.
+		 */
+		private static final StatementTracer tracer = AppConfig.getBoolean("socialmedia.db.trace.enabled", false)
+				? new StatementTracer(Metrics.getDefault(),
+						AppConfig.getLong("socialmedia.db.slowQuery.thresholdMillis", 100),
+						AppConfig.getBoolean("socialmedia.db.slowQuery.explain", false))
+				: null;
+
+		/**
+		 * static initialization block to start the profile's server, if any, and create the pool
+		 */
+		static {
+			try {
+				server = profile.startServer();
+			} catch (SQLException e) {
+				throw new IllegalStateException("Could not start the H2 TCP server for " + profile, e);
+			}
+			LOGGER.info("Using database profile {}", profile);
+			pool = newPool(profile.getUrl());
+			Metrics metrics = Metrics.getDefault();
+			metrics.register("socialmedia_db_pool_acquire", "Time spent borrowing a connection from the pool.",
+					pool.getAcquireTimer());
+			metrics.gauge("socialmedia_db_pool_active_connections", "Connections currently borrowed.",
+					pool::getActiveCount);
+			metrics.gauge("socialmedia_db_pool_idle_connections", "Open connections waiting in the pool.",
+					pool::getIdleCount);
+			metrics.gauge("socialmedia_db_pool_total_connections", "Physical connections currently open.",
+					pool::getTotalCount);
+			metrics.gauge("socialmedia_db_pool_pending_threads", "Threads waiting for a connection.",
+					pool::getPendingCount);
+			metrics.gauge("socialmedia_db_pool_max_connections", "The most connections the pool will open.",
+					pool::getMaxSize);
+			metrics.info("socialmedia_db_profile_info", "The database profile in use.", "profile",
+					profile.getName());
+			metrics.gauge("socialmedia_db_cache_size_kilobytes", "The H2 page cache size, or 0 for in-memory.",
+					profile::getCacheSizeKb);
+			metrics.gauge("socialmedia_db_write_delay_milliseconds",
+					"How long H2 may delay writing committed changes, or 0 for in-memory.", profile::getWriteDelayMillis);
+		}
+	}
+
+	/**
+	 * Holds one pool per message shard, created on first use when socialmedia.messages.shards is above 1. Each
+	 * shard pool is sized by the same socialmedia.pool settings as the main one.
+	 */
+	private static final class ShardHolder {
+		private static final ConnectionPool[] pools = new ConnectionPool[Repositories.MESSAGE_SHARDS];
+
+		static {
+			for (int shard = 0; shard < pools.length; shard++) {
+				pools[shard] = newPool(Holder.profile.getShardUrl(shard));
+			}
+			Metrics.getDefault().gauge("socialmedia_db_shard_active_connections",
+					"Connections currently borrowed from the message shard pools.", () -> {
+						long active = 0;
+						for (ConnectionPool shardPool : pools) {
+							active += shardPool.getActiveCount();
+						}
+						return active;
+					});
+		}
+	}
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Creates a pool of connections to the given database, using the socialmedia.pool settings.
 	 */
-	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+	private static ConnectionPool newPool(String url) {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		return new ConnectionPool(dataSource,
+				AppConfig.getInt("socialmedia.pool.minSize", 2),
+				AppConfig.getInt("socialmedia.pool.maxSize", 10),
+				AppConfig.getLong("socialmedia.pool.acquireTimeoutMillis", 30000),
+				AppConfig.getLong("socialmedia.pool.idleTimeoutMillis", 600000),
+				AppConfig.getLong("socialmedia.pool.leakDetectionThresholdMillis", 0));
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, traced unless tracing is turned off
+	 * @throws DatabaseUnavailableException if the pool is exhausted for the whole acquire timeout or a connection
+	 * cannot be opened.
 	 */
 	public static Connection getConnection() {
+		return borrow(Holder.pool, "the database");
+	}
+
+	/**
+	 * @param shard The index of a message shard, from 0 to socialmedia.messages.shards - 1.
+	 * @return an active connection to that shard's database, traced unless tracing is turned off
+	 * @throws DatabaseUnavailableException if the shard's pool is exhausted for the whole acquire timeout or a
+	 * connection cannot be opened.
+	 */
+	public static Connection getShardConnection(int shard) {
+		return borrow(ShardHolder.pools[shard], "message shard " + shard);
+	}
+
+	private static Connection borrow(ConnectionPool pool, String name) {
 		try {
-			return pool.getConnection();
+			Connection connection = pool.getConnection();
+			return Holder.tracer == null ? connection : Holder.tracer.wrap(connection);
 		} catch (SQLException e) {
-			e.printStackTrace();
+			throw new DatabaseUnavailableException("No connection to " + name + ": " + e.getMessage(), e);
 		}
+	}
 
-		return null;
+	/**
+	 * Validates the configured profile and opens the pool, so a bad setting or unreachable database fails at
+	 * startup instead of on the first request.
+	 *
+	 * @return the profile in use.
+	 * @throws ExceptionInInitializerError caused by an IllegalArgumentException if the profile's settings are
+	 * invalid.
+	 * @throws IllegalStateException if the database cannot be reached.
+	 */
+	public static DatabaseProfile getProfile() {
+		DatabaseProfile profile = Holder.profile;
+		try (Connection connection = Holder.pool.getConnection()) {
+			if (!connection.isValid(5)) {
+				throw new IllegalStateException("Database connection for " + profile + " is not valid");
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("Could not connect to the database for " + profile, e);
+		}
+		return profile;
+	}
+
+	/**
+	 * @return the connection pool backing getConnection()
+	 */
+	public static ConnectionPool getPool() {
+		return Holder.pool;
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources and then applies the schema migrations, so tests run against the same indexes as
+	 * production. This will be performed before every test. With socialmedia.storage=memory the in-memory store is
+	 * reset to the same data instead, and with socialmedia.messages.shards above 1 the message shards are emptied
+	 * and the seeded message is moved into them.
 	 */
 	public static void resetTestDatabase() {
+		if (Repositories.isInMemory()) {
+			Repositories.resetInMemoryStore();
+			return;
+		}
+		Connection connection = getConnection();
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		SchemaMigrator.migrate();
+		if (Repositories.isSharded()) {
+			Repositories.resetShardedStore();
 		}
 	}
 }
@@ -0,0 +1,122 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The DatabaseExecutor class runs blocking JDBC work off the HTTP threads. It has one thread per pooled connection,
+ * so a task never waits for a connection once it starts, and a bounded queue in front of them.
+ *
+ * supply() never blocks the caller. When the queue is full the returned future fails at once with
+ * RejectedExecutionException, and when a task has not finished within the timeout the future fails with
+ * TimeoutException. A task that times out while still queued is removed and never runs; one that is already
+ * running is left to finish, and its result is discarded.
+ *
+ * The default instance is sized from the connection pool and tuned with socialmedia.db.executor.queueSize
+ * (default 1000) and socialmedia.db.executor.timeoutMillis (default 30000, 0 for none).
+ */
+public class DatabaseExecutor {
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param threads The number of worker threads, normally the connection pool's maximum size.
+     * @param queueSize The most tasks that may wait for a thread before new ones are rejected.
+     * @param timeoutMillis How long a task may take from submission to completion, or 0 for no limit.
+     */
+    public DatabaseExecutor(int threads, int queueSize, long timeoutMillis) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = task -> {
+            Thread thread = new Thread(task, "jdbc-executor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the shared executor used by the services, created on first use.
+     */
+    public static DatabaseExecutor getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Runs a task on a database thread.
+     *
+     * @param task The blocking work to run.
+     * @return a future completed with the task's result, or exceptionally with the exception it threw,
+     * RejectedExecutionException if the queue is full, or TimeoutException if it took too long.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            if (result.isDone()) {
+                return; // Timed out while queued
+            }
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        };
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (timeoutMillis > 0) {
+            result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+                if (error instanceof TimeoutException) {
+                    executor.remove(runnable); // Free the queue slot of a task that no longer matters
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of threads currently running a task.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Stops accepting tasks and lets the queued ones finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static final class DefaultHolder {
+        private static final DatabaseExecutor INSTANCE = new DatabaseExecutor(
+                ConnectionUtil.getPool().getMaxSize(),
+                AppConfig.getInt("socialmedia.db.executor.queueSize", 1000),
+                AppConfig.getLong("socialmedia.db.executor.timeoutMillis", 30000));
+
+        static {
+            Metrics.getDefault().gauge("socialmedia_db_executor_queued_tasks",
+                    "Database tasks waiting for an executor thread.", INSTANCE::getQueueDepth);
+            Metrics.getDefault().gauge("socialmedia_db_executor_active_tasks",
+                    "Database tasks currently running.", INSTANCE::getActiveCount);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package Util;
+
+import java.sql.SQLException;
+
+import org.h2.tools.Server;
+
+/**
+ * The DatabaseProfile class describes which H2 database ConnectionUtil connects to and how it is tuned. The profile
+ * is chosen with socialmedia.db.profile, read through AppConfig like every other setting:
+ *
+ * memory - a private in-memory database (jdbc:h2:mem:socialmedia) that lives as long as the process. It starts
+ * empty and is gone on restart. This is different from socialmedia.storage=memory, which bypasses H2 entirely.
+ *
+ * file (the default) - an embedded database stored at socialmedia.db.path (default ./h2/db), as before.
+ *
+ * tcp - a database served by an H2 TCP server at socialmedia.db.tcp.host and socialmedia.db.tcp.port (default
+ * localhost:9092), so several instances of the application can share one store. socialmedia.db.path is then the
+ * path on the server. With socialmedia.db.tcp.startServer=true this process starts the server itself, listening
+ * only on localhost unless socialmedia.db.tcp.allowOthers=true. A local-only server creates the database on first
+ * use; one open to other hosts only serves databases that already exist.
+ *
+ * The message cache, list ETags, search index and message stream are kept in each process and only see that
+ * process's own writes, so they go stale as soon as another instance writes to the same store. Every instance
+ * sharing a store must therefore be started with socialmedia.db.tcp.instances set to more than 1 (default 1),
+ * which turns those features off: messages are always read from the database, lists carry no ETag, and search
+ * and the stream answer 501 Not Implemented. Sessions and rate limits stay per instance as well, so a client must
+ * keep talking to the instance it logged in to.
+ *
+ * The file and tcp profiles set the MVStore page cache with socialmedia.db.cacheSizeKb (default 65536, 64 MB) and
+ * how long committed changes may wait before being written to disk with socialmedia.db.writeDelayMillis (default
+ * 500). A larger write delay batches more commits per disk write, at the cost of losing that much work on a crash.
+ */
+public class DatabaseProfile {
+    /**
+     * The name of each supported profile, as given in socialmedia.db.profile.
+     */
+    public enum Kind {
+        MEMORY, FILE, TCP
+    }
+
+    /**
+     * The setting that declares how many application instances share the store.
+     */
+    public static final String INSTANCES_KEY = "socialmedia.db.tcp.instances";
+
+    private static final String DEFAULT_PATH = "./h2/db";
+    private static final int MAX_WRITE_DELAY_MILLIS = 60000;
+
+    private final Kind kind;
+    private final String path;
+    private final String host;
+    private final int port;
+    private final int cacheSizeKb;
+    private final int writeDelayMillis;
+    private final boolean startServer;
+    private final boolean allowOthers;
+
+    private DatabaseProfile(Kind kind, String path, String host, int port, int cacheSizeKb, int writeDelayMillis,
+            boolean startServer, boolean allowOthers) {
+        this.kind = kind;
+        this.path = path;
+        this.host = host;
+        this.port = port;
+        this.cacheSizeKb = cacheSizeKb;
+        this.writeDelayMillis = writeDelayMillis;
+        this.startServer = startServer;
+        this.allowOthers = allowOthers;
+    }
+
+    /**
+     * Reads and validates the configured profile.
+     *
+     * @return the profile named by socialmedia.db.profile.
+     * @throws IllegalArgumentException if the profile is unknown or one of its settings is out of range.
+     */
+    public static DatabaseProfile fromConfig() {
+        String name = AppConfig.getString("socialmedia.db.profile", "file");
+        Kind kind;
+        try {
+            kind = Kind.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown socialmedia.db.profile: " + name
+                    + " (expected memory, file or tcp)");
+        }
+        String path = AppConfig.getString("socialmedia.db.path", DEFAULT_PATH);
+        if (path.indexOf(';') >= 0) {
+            throw new IllegalArgumentException("socialmedia.db.path must not contain ';': " + path);
+        }
+        String host = AppConfig.getString("socialmedia.db.tcp.host", "localhost");
+        if (!host.matches("[A-Za-z0-9.:\\[\\]-]+")) {
+            throw new IllegalArgumentException("Invalid socialmedia.db.tcp.host: " + host);
+        }
+        int port = AppConfig.getInt("socialmedia.db.tcp.port", 9092);
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("socialmedia.db.tcp.port must be between 1 and 65535: " + port);
+        }
+        int cacheSizeKb = AppConfig.getInt("socialmedia.db.cacheSizeKb", 65536);
+        if (cacheSizeKb < 1024) {
+            throw new IllegalArgumentException("socialmedia.db.cacheSizeKb must be at least 1024: " + cacheSizeKb);
+        }
+        int writeDelayMillis = AppConfig.getInt("socialmedia.db.writeDelayMillis", 500);
+        if (writeDelayMillis < 0 || writeDelayMillis > MAX_WRITE_DELAY_MILLIS) {
+            throw new IllegalArgumentException("socialmedia.db.writeDelayMillis must be between 0 and "
+                    + MAX_WRITE_DELAY_MILLIS + ": " + writeDelayMillis);
+        }
+        int instances = AppConfig.getInt(INSTANCES_KEY, 1);
+        if (instances < 1) {
+            throw new IllegalArgumentException(INSTANCES_KEY + " must be at least 1: " + instances);
+        }
+        if (instances > 1 && kind != Kind.TCP) {
+            // Only the tcp profile lets another process open the same database
+            throw new IllegalArgumentException(INSTANCES_KEY + " above 1 requires socialmedia.db.profile=tcp");
+        }
+        boolean startServer = AppConfig.getBoolean("socialmedia.db.tcp.startServer", false);
+        if (startServer && kind != Kind.TCP) {
+            throw new IllegalArgumentException("socialmedia.db.tcp.startServer requires socialmedia.db.profile=tcp");
+        }
+        return new DatabaseProfile(kind, path, host, port, cacheSizeKb, writeDelayMillis, startServer,
+                AppConfig.getBoolean("socialmedia.db.tcp.allowOthers", false));
+    }
+
+    /**
+     * Reads socialmedia.db.tcp.instances on its own, so services can check it without opening the database.
+     *
+     * @return true if other application instances write to the same store, so per-process state such as caches
+     * and indexes must not be trusted.
+     */
+    public static boolean isSharedStore() {
+        return AppConfig.getInt(INSTANCES_KEY, 1) > 1;
+    }
+
+    /**
+     * @return the JDBC URL for this profile, including its tuning settings.
+     */
+    public String getUrl() {
+        return url("");
+    }
+
+    /**
+     * @param shard The index of a message shard, from 0.
+     * @return the JDBC URL of that shard's database, which sits next to the main one: for example ./h2/db-shard0
+     * for the file profile.
+     */
+    public String getShardUrl(int shard) {
+        return url("-shard" + shard);
+    }
+
+    private String url(String suffix) {
+        switch (kind) {
+            case MEMORY:
+                // Keep the database open while the pool has no connections
+                return "jdbc:h2:mem:socialmedia" + suffix + ";DB_CLOSE_DELAY=-1";
+            case TCP:
+                return "jdbc:h2:tcp://" + host + ":" + port + "/" + path + suffix + tuning();
+            default:
+                return "jdbc:h2:" + path + suffix + tuning();
+        }
+    }
+
+    private String tuning() {
+        return ";CACHE_SIZE=" + cacheSizeKb + ";WRITE_DELAY=" + writeDelayMillis;
+    }
+
+    /**
+     * Starts the H2 TCP server this profile asks for. Its threads are daemons, so it never keeps the process alive.
+     *
+     * @return the running server, or null if this process should not host one.
+     * @throws SQLException if the server could not be started, for example because the port is in use.
+     */
+    public Server startServer() throws SQLException {
+        if (!startServer) {
+            return null;
+        }
+        Server server = allowOthers
+                ? Server.createTcpServer("-tcpPort", Integer.toString(port), "-tcpDaemon", "-tcpAllowOthers")
+                // Only local clients can reach this server, so let them create the database on first use
+                : Server.createTcpServer("-tcpPort", Integer.toString(port), "-tcpDaemon", "-ifNotExists");
+        return server.start();
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the profile's name as written in socialmedia.db.profile.
+     */
+    public String getName() {
+        return kind.name().toLowerCase();
+    }
+
+    public int getCacheSizeKb() {
+        return kind == Kind.MEMORY ? 0 : cacheSizeKb;
+    }
+
+    public int getWriteDelayMillis() {
+        return kind == Kind.MEMORY ? 0 : writeDelayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " (" + getUrl() + ")";
+    }
+}
@@ -0,0 +1,19 @@
+package Util;
+
+/**
+ * Thrown when the database cannot answer a request: ConnectionUtil throws it when no connection can be had, because
+ * the pool stayed exhausted for the whole acquire timeout or a new connection could not be opened, and the message
+ * shards and group commit writer throw it when a query fails. The controller answers it with 503 Service
+ * Unavailable.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message What could not be reached.
+     * @param cause The underlying error, such as the pool's SQLTimeoutException.
+     */
+    public DatabaseUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
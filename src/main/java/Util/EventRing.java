@@ -0,0 +1,300 @@
+package Util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The EventRing class is a fixed-size ring buffer that one writer at a time appends to and any number of readers
+ * follow independently.
+ *
+ * Every event gets the next sequence number, starting at 1, and is stored in slot (sequence % capacity),
+ * overwriting the event from capacity sequences earlier. Writers never wait for readers: a reader that falls more
+ * than capacity events behind skips to the oldest event still held and is told how many it missed. Publishing
+ * takes a lock only to keep writers in order; reading is lock-free, and an idle reader parks until the next event
+ * is published.
+ *
+ * Parked readers push themselves onto a lock-free stack of waiters. A publish detaches the whole stack with one
+ * atomic swap and wakes only its first waiter; each woken reader wakes the next one on its way out. The cost of a
+ * publish therefore does not depend on how many readers are subscribed, and the wakeups are spread over the
+ * readers' own threads. A reader that stops waiting without being woken leaves its entry behind to be skipped;
+ * such entries are unlinked in one pass once there are more of them than readers.
+ *
+ * @param <T> The type of event.
+ */
+public class EventRing<T> {
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final int mask;
+    /**
+     * Random for each ring, so a sequence number handed out by another ring, for example before a restart, can be
+     * told apart from one of this ring's.
+     */
+    private final long epoch = ThreadLocalRandom.current().nextLong() >>> 1;
+    /**
+     * The sequence of the last published event, or 0 before the first. Written after the event's slot, so a
+     * reader that sees a sequence here also sees its slot.
+     */
+    private volatile long cursor;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    /**
+     * The most recently parked reader, linked to the ones that parked before it, or null if none is waiting.
+     */
+    private final AtomicReference<Waiter> waiters = new AtomicReference<>();
+    private final AtomicInteger readerCount = new AtomicInteger();
+    /**
+     * Roughly how many waiters were left on the stack by readers that timed out, since the stack was last pruned.
+     */
+    private final AtomicInteger abandonedWaiters = new AtomicInteger();
+
+    /**
+     * @param capacity The number of events kept for readers that fall behind, rounded up to a power of two.
+     */
+    public EventRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Appends an event and starts waking the readers waiting for it. Never waits for readers.
+     *
+     * @param value The event.
+     * @return the event's sequence number.
+     */
+    public long publish(T value) {
+        long sequence;
+        publishLock.lock();
+        try {
+            sequence = cursor + 1;
+            slots.set((int) sequence & mask, new Slot<>(sequence, value));
+            cursor = sequence;
+        } finally {
+            publishLock.unlock();
+        }
+        Waiter first = waiters.getAndSet(null);
+        if (first != null) {
+            first.release();
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the number of events kept.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the sequence of the last published event, or 0 if there is none.
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return a number identifying this ring, to be sent alongside sequence numbers.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the number of open readers.
+     */
+    public int getReaderCount() {
+        return readerCount.get();
+    }
+
+    /**
+     * Opens a reader that will return the events published after the given sequence. If some of them have already
+     * been overwritten, the reader starts at the oldest event still held and counts the rest as missed. A sequence
+     * beyond the last published one is treated as the last published one.
+     *
+     * @param afterSequence The sequence of the last event the caller has seen, or getCursor() for new events only.
+     * @return the reader, which must be closed when no longer used.
+     */
+    public Reader reader(long afterSequence) {
+        Reader reader = new Reader(Math.max(0, Math.min(afterSequence, cursor)) + 1);
+        readerCount.incrementAndGet();
+        return reader;
+    }
+
+    /**
+     * A parked reader's entry in the stack of waiters.
+     */
+    private static final class Waiter {
+        private static final int WAITING = 0;
+        private static final int RELEASED = 1;
+        private static final int LEFT = 2;
+
+        private final Thread thread = Thread.currentThread();
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Waiter next;
+
+        /**
+         * Wakes this waiter, or, if its reader has already stopped waiting, the first waiter after it that has not.
+         */
+        void release() {
+            for (Waiter waiter = this; waiter != null; waiter = waiter.next) {
+                if (waiter.state.compareAndSet(WAITING, RELEASED)) {
+                    LockSupport.unpark(waiter.thread);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Called by the reader when it stops waiting for any reason. If it was woken by a publish, it passes the
+         * wakeup on to the waiter after it.
+         *
+         * @return true if the waiter was abandoned without being woken.
+         */
+        boolean leave() {
+            if (state.compareAndSet(WAITING, LEFT)) {
+                return true;
+            }
+            Waiter after = next;
+            if (after != null) {
+                after.release();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Unlinks abandoned waiters from the stack. Only links between entries are changed, never the head, so this
+     * can run alongside pushes and publishes; an entry that is abandoned for good is only ever skipped, so a race
+     * between two passes at worst leaves one behind for the next pass.
+     */
+    private void pruneWaiters() {
+        abandonedWaiters.set(0);
+        Waiter previous = waiters.get();
+        if (previous == null) {
+            return;
+        }
+        for (Waiter waiter = previous.next; waiter != null; waiter = waiter.next) {
+            if (waiter.state.get() == Waiter.LEFT) {
+                previous.next = waiter.next;
+            } else {
+                previous = waiter;
+            }
+        }
+    }
+
+    /**
+     * One event and its sequence number.
+     */
+    public static final class Slot<T> {
+        private final long sequence;
+        private final T value;
+
+        Slot(long sequence, T value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Follows the ring from a starting sequence. A reader is meant to be used by one thread.
+     */
+    public final class Reader implements AutoCloseable {
+        private long next;
+        private long missed;
+        private boolean closed;
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Returns the next event, waiting up to the timeout for one to be published.
+         *
+         * @param timeoutNanos How long to wait.
+         * @return the event, or null if none was published in time.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         */
+        public Slot<T> take(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (true) {
+                Slot<T> slot = poll();
+                if (slot != null) {
+                    return slot;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                Waiter waiter = new Waiter();
+                do {
+                    waiter.next = waiters.get();
+                } while (!waiters.compareAndSet(waiter.next, waiter));
+                // Checked again after registering, so an event published in between is not slept through
+                while (next > cursor && waiter.state.get() == Waiter.WAITING
+                        && !Thread.currentThread().isInterrupted()
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (waiter.leave() && abandonedWaiters.incrementAndGet() > readerCount.get()) {
+                    pruneWaiters();
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+
+        /**
+         * @return the next event, or null if none has been published yet.
+         */
+        public Slot<T> poll() {
+            while (next <= cursor) {
+                Slot<T> slot = slots.get((int) next & mask);
+                if (slot.sequence == next) {
+                    next++;
+                    return slot;
+                }
+                // Overwritten: skip to the oldest event the ring still holds
+                long oldest = Math.max(next + 1, cursor - mask);
+                missed += oldest - next;
+                next = oldest;
+            }
+            return null;
+        }
+
+        /**
+         * @return the number of events skipped so far because they were overwritten before being read.
+         */
+        public long getMissed() {
+            return missed;
+        }
+
+        /**
+         * Stops following the ring.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                readerCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import Model.Account;
+import Model.Message;
+import Model.MessagePage;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The JacksonJsonMapper class is the single JSON serialization layer for the API. It is registered once as
+ * Javalin's JsonMapper and keeps one ObjectMapper together with cached ObjectReader and ObjectWriter instances per
+ * type, so handlers never build a mapper or look up serializers per request. Request bodies are parsed straight
+ * from the input stream and responses are written straight to the output stream, without an intermediate String.
+ */
+public class JacksonJsonMapper implements JsonMapper {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the mapper and pre-builds the readers and writers for the model classes.
+     */
+    public JacksonJsonMapper() {
+        mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        for (Class<?> type : List.of(Message.class, Message[].class, Account.class, MessagePage.class)) {
+            reader(type);
+            writer(type);
+        }
+        writer(ArrayList.class);
+    }
+
+    /**
+     * Parses a value from a stream, such as the request body.
+     *
+     * @param json The stream to read the JSON from.
+     * @param targetType The type to read.
+     * @return the parsed value.
+     * @throws BadRequestResponse if the stream does not contain valid JSON for the type.
+     */
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try {
+            return reader(targetType).readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new BadRequestResponse("Invalid JSON body: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses a value from a string.
+     *
+     * @param json The JSON text.
+     * @param targetType The type to read.
+     * @return the parsed value.
+     * @throws BadRequestResponse if the text is not valid JSON for the type.
+     */
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        try {
+            return reader(targetType).readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new BadRequestResponse("Invalid JSON body: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Serializes a value to a string. A String value is assumed to already be JSON (or an intentionally empty
+     * body) and is returned as is.
+     *
+     * @param obj The value to serialize.
+     * @param type The declared type of the value.
+     * @return the JSON text.
+     */
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        if (obj instanceof String) {
+            return (String) obj;
+        }
+        try {
+            return writer(type).writeValueAsString(obj);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serializes a value straight to a stream, such as the response body.
+     *
+     * @param obj The value to serialize.
+     * @param out The stream to write to. It is flushed but not closed.
+     * @throws IOException if writing to the stream fails.
+     */
+    public void writeTo(Object obj, OutputStream out) throws IOException {
+        writer(obj.getClass()).writeValue(out, obj);
+    }
+
+    /**
+     * Creates a generator for writing JSON token by token, for responses that are produced incrementally.
+     *
+     * @param out The stream to write to.
+     * @return a generator that flushes, but does not close, the stream when it is closed.
+     * @throws IOException if the generator could not be created.
+     */
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return mapper.getFactory().createGenerator(out);
+    }
+
+    private ObjectReader reader(Type type) {
+        ObjectReader reader = readers.get(type);
+        return reader != null ? reader : readers.computeIfAbsent(type, key -> mapper.readerFor(javaType(key)));
+    }
+
+    private ObjectWriter writer(Type type) {
+        ObjectWriter writer = writers.get(type);
+        return writer != null ? writer : writers.computeIfAbsent(type, key -> mapper.writerFor(javaType(key)));
+    }
+
+    private JavaType javaType(Type type) {
+        return mapper.getTypeFactory().constructType(type);
+    }
+}
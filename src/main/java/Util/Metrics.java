@@ -0,0 +1,446 @@
+package Util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Metrics class is the registry behind the /metrics endpoint. It holds a Timer per HTTP route, labelled
+ * families of timers and counters (such as one timer per DAO method), any other named timers and gauges that
+ * components register (such as the connection pool's), and the number of requests in flight.
+ *
+ * Recording is lock-free and allocation-free once a route or query has been seen: lookups are plain
+ * ConcurrentHashMap reads and the timers only update atomic counters. Formatting happens only when scrape() is
+ * called, which renders everything in the Prometheus text exposition format. Timers are exported as summaries with
+ * the 0.5, 0.95, 0.99 and 0.999 quantiles.
+ *
+ * The default registry also registers itself and each timer with the platform MBeanServer under the "SocialMedia"
+ * JMX domain.
+ */
+public class Metrics implements MetricsMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+    private static final String JMX_DOMAIN = "SocialMedia";
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+
+    /**
+     * The route label used for requests that did not match any endpoint, so unknown paths cannot create new series.
+     */
+    public static final String UNMATCHED_ROUTE = "unmatched";
+
+    private final MBeanServer mbeanServer;
+    private final Map<String, Map<String, RouteTimer>> routes = new ConcurrentHashMap<>();
+    private final Map<String, Family<Timer>> timerFamilies = new ConcurrentSkipListMap<>();
+    private final Map<String, Family<LongAdder>> counterFamilies = new ConcurrentSkipListMap<>();
+    private final Map<String, NamedTimer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final LongAdder inFlight = new LongAdder();
+
+    /**
+     * Creates a registry that is not exported over JMX.
+     */
+    public Metrics() {
+        this(null);
+    }
+
+    /**
+     * Creates a registry that will register its timers with the given MBeanServer. The registry itself is
+     * registered by exportedTo() once it is fully constructed.
+     *
+     * @param mbeanServer The server to register with, or null to skip JMX.
+     */
+    private Metrics(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    /**
+     * Creates a registry that registers itself and its timers with the given MBeanServer.
+     *
+     * @param mbeanServer The server to register with, or null to skip JMX.
+     * @return the new registry.
+     */
+    public static Metrics exportedTo(MBeanServer mbeanServer) {
+        Metrics metrics = new Metrics(mbeanServer);
+        metrics.registerMBean(metrics.objectName(null, null), metrics, MetricsMXBean.class);
+        return metrics;
+    }
+
+    /**
+     * @return the registry shared by the application, exported over JMX.
+     */
+    public static Metrics getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Counts a request as in flight. Each call must be matched by one call to requestFinished().
+     */
+    public void requestStarted() {
+        inFlight.increment();
+    }
+
+    /**
+     * Records a finished request against its route.
+     *
+     * @param method The HTTP method.
+     * @param route The route's path template, such as "/messages/{message_id}", or null if no route matched.
+     * @param status The response status code.
+     * @param nanos How long the request took, in nanoseconds.
+     */
+    public void requestFinished(String method, String route, int status, long nanos) {
+        inFlight.decrement();
+        routeTimer(method, route == null || route.isEmpty() ? UNMATCHED_ROUTE : route).record(nanos, status);
+    }
+
+    /**
+     * Returns the timer for a database query, creating it on first use. Callers should look it up once and keep
+     * it in a static field.
+     *
+     * @param query The name of the query, such as "MessageDAO.getMessageById".
+     * @return the timer for that query.
+     */
+    public Timer queryTimer(String query) {
+        return timer("socialmedia_db_query", "Time spent in each DAO method, including borrowing the connection.",
+                "query", query);
+    }
+
+    /**
+     * Returns one timer of a labelled family, creating it on first use. The family is rendered as the summary
+     * name_duration_seconds and the counter name_errors_total, with one series per label value, so label values
+     * must come from a small fixed set.
+     *
+     * @param name The metric name prefix, such as "socialmedia_db_query".
+     * @param help A one-line description of what is timed.
+     * @param label The label name, such as "query".
+     * @param value The label value for this timer.
+     * @return the timer for that label value.
+     */
+    public Timer timer(String name, String help, String label, String value) {
+        Family<Timer> family = timerFamilies.get(name);
+        if (family == null) {
+            family = timerFamilies.computeIfAbsent(name, key -> new Family<>(help, label));
+        }
+        Timer timer = family.members.get(value);
+        return timer != null ? timer : family.members.computeIfAbsent(value, key -> {
+            Timer created = new Timer();
+            registerMBean(objectName(name, key), created, TimerMXBean.class);
+            return created;
+        });
+    }
+
+    /**
+     * Returns one counter of a labelled family, creating it on first use.
+     *
+     * @param name The metric name, ending in "_total".
+     * @param help A one-line description of what is counted.
+     * @param label The label name.
+     * @param value The label value for this counter.
+     * @return the counter for that label value.
+     */
+    public LongAdder counter(String name, String help, String label, String value) {
+        Family<LongAdder> family = counterFamilies.get(name);
+        if (family == null) {
+            family = counterFamilies.computeIfAbsent(name, key -> new Family<>(help, label));
+        }
+        LongAdder counter = family.members.get(value);
+        return counter != null ? counter : family.members.computeIfAbsent(value, key -> new LongAdder());
+    }
+
+    /**
+     * Exports a timer owned by another component, replacing any timer registered under the same name. It is
+     * rendered as the summary name_duration_seconds and the counter name_errors_total.
+     *
+     * @param name The metric name prefix, such as "socialmedia_db_pool_acquire".
+     * @param help A one-line description of what is timed.
+     * @param timer The timer to export.
+     */
+    public void register(String name, String help, Timer timer) {
+        timers.put(name, new NamedTimer(help, timer));
+        registerMBean(objectName(name, null), timer, TimerMXBean.class);
+    }
+
+    /**
+     * Exports a value that is read each time the metrics are scraped, replacing any gauge registered under the
+     * same name.
+     *
+     * @param name The metric name, such as "socialmedia_db_pool_active_connections".
+     * @param help A one-line description of the value.
+     * @param value Reads the current value.
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, null, value));
+    }
+
+    /**
+     * Exports a constant 1 labelled with a piece of configuration, such as the database profile, replacing any
+     * gauge registered under the same name. This follows the Prometheus convention for "_info" metrics.
+     *
+     * @param name The metric name, ending in "_info".
+     * @param help A one-line description of the setting.
+     * @param label The label name.
+     * @param value The label value.
+     */
+    public void info(String name, String help, String label, String value) {
+        gauges.put(name, new Gauge(help, label + "=\"" + escape(value) + "\"", () -> 1));
+    }
+
+    @Override
+    public long getInFlightRequests() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().value.getAsLong());
+        }
+        return values;
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format, version 0.0.4.
+     *
+     * @return the metrics text.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "socialmedia_http_requests_in_flight", "Requests currently being handled.", "gauge");
+        out.append("socialmedia_http_requests_in_flight ").append(inFlight.sum()).append('\n');
+
+        Map<String, RouteTimer> sortedRoutes = new TreeMap<>();
+        for (Map.Entry<String, Map<String, RouteTimer>> byMethod : routes.entrySet()) {
+            for (Map.Entry<String, RouteTimer> byRoute : byMethod.getValue().entrySet()) {
+                sortedRoutes.put("method=\"" + escape(byMethod.getKey()) + "\",route=\"" + escape(byRoute.getKey())
+                        + "\"", byRoute.getValue());
+            }
+        }
+        header(out, "socialmedia_http_request_duration_seconds",
+                "Time from receiving a request to finishing its response, by route.", "summary");
+        for (Map.Entry<String, RouteTimer> entry : sortedRoutes.entrySet()) {
+            summary(out, "socialmedia_http_request_duration_seconds", entry.getKey(), entry.getValue());
+        }
+        header(out, "socialmedia_http_requests_total", "Requests handled, by route and status class.", "counter");
+        for (Map.Entry<String, RouteTimer> entry : sortedRoutes.entrySet()) {
+            LongAdder[] statusClasses = entry.getValue().statusClasses;
+            for (int i = 0; i < statusClasses.length; i++) {
+                long count = statusClasses[i].sum();
+                if (count > 0) {
+                    out.append("socialmedia_http_requests_total{").append(entry.getKey()).append(",status=\"")
+                            .append(i + 1).append("xx\"} ").append(count).append('\n');
+                }
+            }
+        }
+        header(out, "socialmedia_http_request_errors_total", "Requests that ended with a 5xx status, by route.",
+                "counter");
+        for (Map.Entry<String, RouteTimer> entry : sortedRoutes.entrySet()) {
+            counter(out, "socialmedia_http_request_errors_total", entry.getKey(), entry.getValue().getErrorCount());
+        }
+
+        for (Map.Entry<String, Family<Timer>> entry : timerFamilies.entrySet()) {
+            String name = entry.getKey();
+            Family<Timer> family = entry.getValue();
+            header(out, name + "_duration_seconds", family.help, "summary");
+            for (Map.Entry<String, Timer> member : family.members.entrySet()) {
+                summary(out, name + "_duration_seconds", family.labels(member.getKey()), member.getValue());
+            }
+            header(out, name + "_errors_total", "Failures of: " + family.help, "counter");
+            for (Map.Entry<String, Timer> member : family.members.entrySet()) {
+                counter(out, name + "_errors_total", family.labels(member.getKey()),
+                        member.getValue().getErrorCount());
+            }
+        }
+        for (Map.Entry<String, Family<LongAdder>> entry : counterFamilies.entrySet()) {
+            Family<LongAdder> family = entry.getValue();
+            header(out, entry.getKey(), family.help, "counter");
+            for (Map.Entry<String, LongAdder> member : family.members.entrySet()) {
+                counter(out, entry.getKey(), family.labels(member.getKey()), member.getValue().sum());
+            }
+        }
+
+        for (Map.Entry<String, NamedTimer> entry : timers.entrySet()) {
+            String name = entry.getKey();
+            NamedTimer named = entry.getValue();
+            header(out, name + "_duration_seconds", named.help, "summary");
+            summary(out, name + "_duration_seconds", null, named.timer);
+            header(out, name + "_errors_total", "Failures of: " + named.help, "counter");
+            counter(out, name + "_errors_total", null, named.timer.getErrorCount());
+        }
+
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            Gauge gauge = entry.getValue();
+            header(out, entry.getKey(), gauge.help, "gauge");
+            counter(out, entry.getKey(), gauge.labels, gauge.value.getAsLong());
+        }
+        return out.toString();
+    }
+
+    private RouteTimer routeTimer(String method, String route) {
+        Map<String, RouteTimer> byRoute = routes.get(method);
+        if (byRoute == null) {
+            byRoute = routes.computeIfAbsent(method, key -> new ConcurrentHashMap<>());
+        }
+        RouteTimer timer = byRoute.get(route);
+        return timer != null ? timer : byRoute.computeIfAbsent(route, key -> {
+            RouteTimer created = new RouteTimer();
+            registerMBean(objectName("socialmedia_http_request", method + " " + key), created, TimerMXBean.class);
+            return created;
+        });
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, Timer timer) {
+        LatencyHistogram histogram = timer.getHistogram();
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND).append('\n');
+        }
+        String suffix = labels == null ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(histogram.getSum() / NANOS_PER_SECOND).append('\n');
+        out.append(name).append("_count").append(suffix).append(histogram.getCount()).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Names a bean "SocialMedia:type=Metrics" for the registry itself and
+     * "SocialMedia:type=Timer,family=<metric name>,name=<label value>" for a timer.
+     */
+    private ObjectName objectName(String family, String name) {
+        if (mbeanServer == null) {
+            return null;
+        }
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("type", family == null ? "Metrics" : "Timer");
+        if (family != null) {
+            properties.put("family", family);
+        }
+        if (name != null) {
+            properties.put("name", ObjectName.quote(name));
+        }
+        try {
+            return new ObjectName(JMX_DOMAIN, properties);
+        } catch (JMException e) {
+            LOGGER.warn("Invalid JMX name for {} {}: {}", family, name, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Registers a bean, replacing whatever was registered under the same name. Failures are logged rather than
+     * thrown, since JMX is a convenience and must not stop the server from starting.
+     */
+    private <T> void registerMBean(ObjectName name, T bean, Class<T> mbeanInterface) {
+        if (name == null) {
+            return;
+        }
+        try {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // Nothing registered under this name yet
+            }
+            mbeanServer.registerMBean(new StandardMBean(bean, mbeanInterface, true), name);
+        } catch (JMException e) {
+            LOGGER.warn("Could not register {} with JMX: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * A Timer for one route that also counts responses by status class.
+     */
+    private static final class RouteTimer extends Timer {
+        private final LongAdder[] statusClasses = new LongAdder[5];
+
+        RouteTimer() {
+            for (int i = 0; i < statusClasses.length; i++) {
+                statusClasses[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos, int status) {
+            record(nanos);
+            int statusClass = Math.min(Math.max(status / 100, 1), 5);
+            statusClasses[statusClass - 1].increment();
+            if (statusClass == 5) {
+                recordError();
+            }
+        }
+    }
+
+    /**
+     * The members of a labelled metric, keyed and rendered in label value order.
+     */
+    private static final class Family<T> {
+        private final String help;
+        private final String label;
+        private final Map<String, T> members = new ConcurrentSkipListMap<>();
+
+        Family(String help, String label) {
+            this.help = help;
+            this.label = label;
+        }
+
+        String labels(String value) {
+            return label + "=\"" + escape(value) + "\"";
+        }
+    }
+
+    private static final class NamedTimer {
+        private final String help;
+        private final Timer timer;
+
+        NamedTimer(String help, Timer timer) {
+            this.help = help;
+            this.timer = timer;
+        }
+    }
+
+    private static final class Gauge {
+        private final String help;
+        private final String labels;
+        private final LongSupplier value;
+
+        Gauge(String help, String labels, LongSupplier value) {
+            this.help = help;
+            this.labels = labels;
+            this.value = value;
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final Metrics INSTANCE = Metrics.exportedTo(ManagementFactory.getPlatformMBeanServer());
+    }
+}
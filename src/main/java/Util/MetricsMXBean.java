@@ -0,0 +1,13 @@
+package Util;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the values in a Metrics registry that are not timers. Each timer is registered as its own
+ * TimerMXBean.
+ */
+public interface MetricsMXBean {
+    long getInFlightRequests();
+
+    Map<String, Long> getGauges();
+}
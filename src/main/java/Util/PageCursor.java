@@ -0,0 +1,59 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A position in the (time_posted_epoch, message_id) ordering of messages, used for keyset pagination. Clients only
+ * ever see the encoded form, which is an opaque URL-safe string.
+ */
+public class PageCursor {
+    private final long timePostedEpoch;
+    private final int messageId;
+
+    /**
+     * @param timePostedEpoch The time_posted_epoch of the last message on the previous page.
+     * @param messageId The message_id of the last message on the previous page.
+     */
+    public PageCursor(long timePostedEpoch, int messageId) {
+        this.timePostedEpoch = timePostedEpoch;
+        this.messageId = messageId;
+    }
+
+    public long getTimePostedEpoch() {
+        return timePostedEpoch;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return the opaque string form of this cursor.
+     */
+    public String encode() {
+        String raw = timePostedEpoch + ":" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Parses a cursor previously produced by encode().
+     *
+     * @param encoded The opaque cursor string.
+     * @return the decoded cursor.
+     * @throws IllegalArgumentException if the string is not a valid cursor.
+     */
+    public static PageCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.US_ASCII);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + encoded);
+            }
+            return new PageCursor(Long.parseLong(raw.substring(0, separator)),
+                    Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package Util;
+
+/**
+ * Thrown when an account has used up its RateLimiter bucket. The controller answers it with 429 Too Many Requests.
+ */
+public class RateLimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterNanos;
+
+    /**
+     * @param retryAfterNanos How long the client should wait before retrying, in nanoseconds.
+     */
+    public RateLimitExceededException(long retryAfterNanos) {
+        super("Rate limit exceeded", null, false, false);
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    /**
+     * @return how long the client should wait before retrying, in nanoseconds.
+     */
+    public long getRetryAfterNanos() {
+        return retryAfterNanos;
+    }
+
+    /**
+     * @return the wait rounded up to whole seconds, as sent in the Retry-After header.
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfterNanos + 999_999_999L) / 1_000_000_000L);
+    }
+}
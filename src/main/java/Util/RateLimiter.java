@@ -0,0 +1,115 @@
+package Util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The RateLimiter class limits how often each account may do something, using a token bucket per account.
+ *
+ * Each bucket is a single AtomicLong holding the time at which it will be full again (the generic cell rate
+ * algorithm), so a check is one map lookup, one read and one compare-and-set, with no lock. The map is keyed by
+ * boxed Integers, so looking up an account above 127 may allocate a short-lived key; a primitive map would need a
+ * lock, which costs more under contention than the allocation. A bucket that has refilled is the same as no bucket, so those are dropped whenever the map grows past
+ * maxAccounts, at most once per second. If every bucket is still in use, new accounts are let through without one
+ * rather than growing the map.
+ */
+public class RateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int maxAccounts;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<Integer, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long nextSweepNanos;
+
+    /**
+     * @param ratePerSecond The sustained number of requests each account may make per second.
+     * @param burst The number of requests an idle account may make at once.
+     * @param maxAccounts The number of accounts to keep buckets for.
+     */
+    public RateLimiter(double ratePerSecond, int burst, int maxAccounts) {
+        this(ratePerSecond, burst, maxAccounts, System::nanoTime);
+    }
+
+    /**
+     * @param ratePerSecond The sustained number of requests each account may make per second.
+     * @param burst The number of requests an idle account may make at once.
+     * @param maxAccounts The number of accounts to keep buckets for.
+     * @param clock Returns the current time in nanoseconds, like System.nanoTime.
+     */
+    public RateLimiter(double ratePerSecond, int burst, int maxAccounts, LongSupplier clock) {
+        if (ratePerSecond <= 0 || burst < 1 || maxAccounts < 1) {
+            throw new IllegalArgumentException("ratePerSecond, burst and maxAccounts must be positive");
+        }
+        this.emissionIntervalNanos = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.maxAccounts = maxAccounts;
+        this.clock = clock;
+        this.nextSweepNanos = clock.getAsLong();
+    }
+
+    /**
+     * Takes one token from the account's bucket if there is one.
+     *
+     * @param accountId The account making the request.
+     * @return 0 if the request is allowed, or how long to wait before retrying, in nanoseconds.
+     */
+    public long tryAcquire(int accountId) {
+        long now = clock.getAsLong();
+        AtomicLong bucket = buckets.get(accountId);
+        if (bucket == null) {
+            bucket = newBucket(accountId, now);
+            if (bucket == null) {
+                return 0; // No room to track this account
+            }
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long start = fullAt - now > 0 ? fullAt : now;
+            long wait = start - burstToleranceNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, start + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of accounts that currently have a bucket.
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong newBucket(int accountId, long now) {
+        if (buckets.size() >= maxAccounts) {
+            sweep(now);
+            if (buckets.size() >= maxAccounts) {
+                return buckets.get(accountId);
+            }
+        }
+        return buckets.computeIfAbsent(accountId, id -> new AtomicLong(now));
+    }
+
+    /**
+     * Drops the buckets that have refilled. A thread still holding a dropped bucket may take one token from it
+     * that is then forgotten, which can only let a request through, never wrongly reject one.
+     */
+    private void sweep(long now) {
+        if (now - nextSweepNanos < 0 || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            nextSweepNanos = now + SWEEP_INTERVAL_NANOS;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
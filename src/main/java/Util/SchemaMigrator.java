@@ -0,0 +1,149 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.tools.RunScript;
+
+/**
+ * The SchemaMigrator class brings the database schema up to date on startup. Migrations are SQL scripts under
+ * db/migration on the classpath, applied in version order. Each applied version is recorded in the schema_version
+ * table, so every script runs exactly once per database.
+ *
+ * Instances sharing a database over TCP may start at the same time, so the migrator first locks the single row of
+ * the schema_lock table on a connection of its own and holds it until it is done; a second instance waits there
+ * and then finds the versions already recorded. Each script and its schema_version row are committed together.
+ * H2 commits DDL as it runs it, though, so a script that fails halfway can leave its earlier statements applied
+ * without a version row.
+ *
+ * To change the schema, add a new script and list it at the end of MIGRATIONS. Never edit a script that has
+ * already shipped.
+ */
+public class SchemaMigrator {
+
+    /**
+     * Every migration in the order it must be applied. The version is the number between "V" and "__".
+     */
+    private static final String[] MIGRATIONS = {
+            "V1__baseline.sql",
+            "V2__message_indexes.sql",
+            "V3__sharded_message_authors.sql",
+    };
+
+    /**
+     * The SQLState H2 reports when a lock wait times out.
+     */
+    private static final String LOCK_TIMEOUT_STATE = "HYT00";
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies every migration newer than the version recorded in the database, while holding the migration lock.
+     *
+     * @return the schema version after migrating.
+     * @throws IllegalStateException if a migration fails or the lock is not granted within
+     * socialmedia.migration.lockTimeoutMillis; the versions before a failed one stay applied.
+     */
+    public static int migrate() {
+        Connection lock = ConnectionUtil.getConnection();
+        Connection connection = null;
+        try {
+            lock.createStatement().execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + "version int primary key, "
+                    + "script varchar(255) not null, "
+                    + "installed_on timestamp default current_timestamp)");
+            lock.createStatement().execute("CREATE TABLE IF NOT EXISTS schema_lock (id int primary key)");
+            lock.createStatement().execute("MERGE INTO schema_lock (id) KEY (id) VALUES (1)");
+            lock.setAutoCommit(false);
+            acquire(lock, AppConfig.getLong("socialmedia.migration.lockTimeoutMillis", 60000));
+
+            connection = ConnectionUtil.getConnection();
+            connection.setAutoCommit(false);
+            int current = currentVersion(connection);
+            for (String script : MIGRATIONS) {
+                int version = versionOf(script);
+                if (version > current) {
+                    apply(connection, script);
+                    PreparedStatement preparedStatement = connection.prepareStatement(
+                            "INSERT INTO schema_version (version, script) VALUES (?, ?)");
+                    preparedStatement.setInt(1, version);
+                    preparedStatement.setString(2, script);
+                    preparedStatement.executeUpdate();
+                    connection.commit();
+                    current = version;
+                }
+            }
+            return current;
+        } catch (SQLException | IOException e) {
+            if (connection != null) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackException) {
+                    rollbackException.printStackTrace();
+                }
+            }
+            throw new IllegalStateException("Schema migration failed", e);
+        } finally {
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    lock.rollback();
+                    lock.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks the schema_lock row for the rest of the lock connection's transaction, retrying lock waits that time
+     * out until timeoutMillis has passed.
+     */
+    private static void acquire(Connection lock, long timeoutMillis) throws SQLException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            try {
+                lock.createStatement().executeQuery("SELECT id FROM schema_lock WHERE id = 1 FOR UPDATE").close();
+                return;
+            } catch (SQLException e) {
+                if (!LOCK_TIMEOUT_STATE.equals(e.getSQLState()) || System.currentTimeMillis() >= deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static int currentVersion(Connection connection) throws SQLException {
+        ResultSet rs = connection.createStatement().executeQuery("SELECT MAX(version) FROM schema_version");
+        rs.next();
+        return rs.getInt(1);
+    }
+
+    private static void apply(Connection connection, String script) throws SQLException, IOException {
+        InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream("db/migration/" + script);
+        if (in == null) {
+            throw new IOException("Missing migration script db/migration/" + script);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            RunScript.execute(connection, reader);
+        }
+    }
+
+    private static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+}
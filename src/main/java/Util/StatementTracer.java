@@ -0,0 +1,486 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The StatementTracer class wraps borrowed connections so that every SQL statement run through them is measured.
+ *
+ * For each statement it times the execute call and, for queries, the time spent in ResultSet.next(), and counts the
+ * rows read or changed. The numbers are published in a Metrics registry per statement, keyed by the SQL text with
+ * whitespace collapsed, literals replaced by ? and lists of parameters shortened to "?, ...", so the values a
+ * statement was run with never appear in metrics or logs.
+ *
+ * Statistics are looked up by the exact SQL text first, which saves redacting it on every execution, but that lookup
+ * only remembers a bounded number of texts; statements built with literals share one entry per redacted form. At
+ * most maxStatements redacted forms get their own series, and any further ones are counted together under the sql
+ * label "other", so neither memory nor the number of metric series can grow without bound.
+ *
+ * A statement is complete when its result set is exhausted or closed, when the statement is closed or run again,
+ * or when the connection is closed, whichever comes first. If it took at least the slow threshold in total it is
+ * logged as a warning, with the number of bound parameters but not their values. When explain is enabled, slow
+ * SELECT statements are also run through H2's EXPLAIN with the same parameters and the plan is added to the log.
+ */
+public class StatementTracer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementTracer.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+
+    /**
+     * How many distinct redacted statements get their own metrics when no limit is given to the constructor.
+     */
+    public static final int DEFAULT_MAX_STATEMENTS = 500;
+    /**
+     * The sql label under which statements beyond the limit are counted.
+     */
+    public static final String OTHER_STATEMENTS = "other";
+
+    private final Metrics metrics;
+    private final long slowThresholdNanos;
+    private final boolean explain;
+    private final int maxStatements;
+    /**
+     * Statistics by exact SQL text, holding at most 2 * maxStatements texts.
+     */
+    private final Map<String, StatementStats> bySql = new ConcurrentHashMap<>();
+    /**
+     * Statistics by redacted SQL text, holding at most maxStatements entries.
+     */
+    private final Map<String, StatementStats> byRedactedSql = new ConcurrentHashMap<>();
+    private final LongAdder slowStatements = new LongAdder();
+    private volatile StatementStats other;
+
+    /**
+     * @param metrics The registry to publish per-statement timings and row counts in.
+     * @param slowThresholdMillis Statements taking at least this long are logged, or a negative value to log none.
+     * @param explain When true, the EXPLAIN plan of each slow SELECT is logged with it.
+     */
+    public StatementTracer(Metrics metrics, long slowThresholdMillis, boolean explain) {
+        this(metrics, slowThresholdMillis, explain, DEFAULT_MAX_STATEMENTS);
+    }
+
+    /**
+     * @param metrics The registry to publish per-statement timings and row counts in.
+     * @param slowThresholdMillis Statements taking at least this long are logged, or a negative value to log none.
+     * @param explain When true, the EXPLAIN plan of each slow SELECT is logged with it.
+     * @param maxStatements How many distinct redacted statements get their own metrics. Must be at least 1.
+     */
+    public StatementTracer(Metrics metrics, long slowThresholdMillis, boolean explain, int maxStatements) {
+        if (maxStatements < 1) {
+            throw new IllegalArgumentException("maxStatements must be at least 1");
+        }
+        this.metrics = metrics;
+        this.slowThresholdNanos = slowThresholdMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.explain = explain;
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * Wraps a connection so the statements it creates are traced. Closing the wrapper completes any statements
+     * still open and then closes the connection.
+     *
+     * @param connection The connection to wrap.
+     * @return a connection that behaves like the given one.
+     */
+    public Connection wrap(Connection connection) {
+        return proxy(Connection.class, new ConnectionHandler(connection));
+    }
+
+    /**
+     * @return the number of statements logged as slow.
+     */
+    public long getSlowStatementCount() {
+        return slowStatements.sum();
+    }
+
+    /**
+     * @return the number of distinct redacted statements with their own metrics, not counting "other".
+     */
+    public int getStatementCount() {
+        return byRedactedSql.size();
+    }
+
+    /**
+     * Reduces a SQL statement to a form that is safe to log and stable across parameter values: whitespace
+     * collapsed, string and number literals replaced by ?, and runs of parameters such as an IN list shortened to
+     * "?, ...".
+     *
+     * @param sql The SQL text.
+     * @return the redacted SQL text.
+     */
+    public static String redact(String sql) {
+        String redacted = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        redacted = STRING_LITERAL.matcher(redacted).replaceAll("?");
+        redacted = NUMBER_LITERAL.matcher(redacted).replaceAll("?");
+        return PARAMETER_LIST.matcher(redacted).replaceAll("?, ...");
+    }
+
+    private StatementStats statsFor(String sql) {
+        StatementStats statementStats = bySql.get(sql);
+        if (statementStats != null) {
+            return statementStats;
+        }
+        String redacted = redact(sql);
+        statementStats = byRedactedSql.get(redacted);
+        if (statementStats == null) {
+            // The size check can be passed by a few racing threads at once, which only overshoots by that many
+            statementStats = byRedactedSql.size() < maxStatements
+                    ? byRedactedSql.computeIfAbsent(redacted, StatementStats::new)
+                    : otherStats();
+        }
+        if (bySql.size() < 2 * maxStatements) {
+            bySql.putIfAbsent(sql, statementStats);
+        }
+        return statementStats;
+    }
+
+    private StatementStats otherStats() {
+        StatementStats statementStats = other;
+        if (statementStats == null) {
+            synchronized (this) {
+                statementStats = other;
+                if (statementStats == null) {
+                    statementStats = new StatementStats(OTHER_STATEMENTS);
+                    other = statementStats;
+                }
+            }
+        }
+        return statementStats;
+    }
+
+    private void complete(Trace trace, Connection connection) {
+        if (trace.completed) {
+            return;
+        }
+        trace.completed = true;
+        StatementStats statementStats = trace.stats;
+        if (trace.hasResultSet) {
+            statementStats.fetch.record(trace.fetchNanos);
+        }
+        statementStats.rows.add(trace.rows);
+        long totalNanos = trace.executeNanos + trace.fetchNanos;
+        if (slowThresholdNanos < 0 || totalNanos < slowThresholdNanos) {
+            return;
+        }
+        slowStatements.increment();
+        statementStats.slow.increment();
+        // Statements counted under "other" still log their own redacted text
+        String sql = statementStats == other ? redact(trace.sql) : statementStats.sql;
+        String plan = explain && sql.regionMatches(true, 0, "SELECT", 0, 6) ? explain(connection, trace) : null;
+        LOGGER.warn("Slow statement: {} ms (execute {} ms, fetch {} ms, {} rows): {} [{} parameters redacted]{}",
+                LatencyHistogram.toMillis(totalNanos), LatencyHistogram.toMillis(trace.executeNanos),
+                LatencyHistogram.toMillis(trace.fetchNanos), trace.rows, sql, trace.parameterCount,
+                plan == null ? "" : "\nPlan: " + plan);
+    }
+
+    /**
+     * Runs EXPLAIN for a traced query on the connection it ran on, binding the same parameters.
+     *
+     * @return the plan, or null if it could not be produced.
+     */
+    private String explain(Connection connection, Trace trace) {
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement("EXPLAIN " + trace.sql);
+            try {
+                for (int i = 0; i < trace.parameterCount; i++) {
+                    preparedStatement.setObject(i + 1, trace.parameters[i]);
+                }
+                ResultSet rs = preparedStatement.executeQuery();
+                return rs.next() ? WHITESPACE.matcher(rs.getString(1)).replaceAll(" ") : null;
+            } finally {
+                preparedStatement.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.debug("Could not explain slow statement", e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The metrics for one SQL text.
+     */
+    private final class StatementStats {
+        private final String sql;
+        private final Timer execute;
+        private final Timer fetch;
+        private final LongAdder rows;
+        private final LongAdder slow;
+
+        StatementStats(String sql) {
+            this.sql = sql;
+            this.execute = metrics.timer("socialmedia_db_statement", "Time spent executing each SQL statement.",
+                    "sql", sql);
+            this.fetch = metrics.timer("socialmedia_db_statement_fetch",
+                    "Time spent reading each SQL statement's result set.", "sql", sql);
+            this.rows = metrics.counter("socialmedia_db_statement_rows_total",
+                    "Rows read or changed by each SQL statement.", "sql", sql);
+            this.slow = metrics.counter("socialmedia_db_slow_statements_total",
+                    "Executions of each SQL statement that exceeded the slow-query threshold.", "sql", sql);
+        }
+    }
+
+    /**
+     * One execution of a statement, from the execute call until its results are no longer read.
+     */
+    private static final class Trace {
+        private final StatementStats stats;
+        private final String sql;
+        private final Object[] parameters;
+        private final int parameterCount;
+        private long executeNanos;
+        private long fetchNanos;
+        private long rows;
+        private boolean hasResultSet;
+        private boolean completed;
+
+        Trace(StatementStats stats, String sql, Object[] parameters, int parameterCount) {
+            this.stats = stats;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.parameterCount = parameterCount;
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final List<Trace> open = new ArrayList<>();
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class,
+                            new StatementHandler(this, (Statement) StatementTracer.invoke(target, method, args),
+                                    (String) args[0]));
+                case "createStatement":
+                    return proxy(Statement.class,
+                            new StatementHandler(this, (Statement) StatementTracer.invoke(target, method, args), null));
+                case "close":
+                    completeAll();
+                    target.close();
+                    return null;
+                case "equals":
+                    return proxyInstance == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyInstance);
+                case "toString":
+                    return "Traced" + target;
+                default:
+                    return StatementTracer.invoke(target, method, args);
+            }
+        }
+
+        void complete(Trace trace) {
+            open.remove(trace);
+            StatementTracer.this.complete(trace, target);
+        }
+
+        private void completeAll() {
+            for (Trace trace : open.toArray(new Trace[0])) {
+                complete(trace);
+            }
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final ConnectionHandler connection;
+        private final Statement target;
+        private final String sql;
+        private Object[] parameters = new Object[8];
+        private int parameterCount;
+        private Trace current;
+
+        StatementHandler(ConnectionHandler connection, Statement target, String sql) {
+            this.connection = connection;
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            switch (name) {
+                case "getResultSet":
+                    ResultSet rs = (ResultSet) StatementTracer.invoke(target, method, args);
+                    return rs == null || current == null || current.completed ? rs : traceResultSet(rs, current);
+                case "clearParameters":
+                    parameterCount = 0;
+                    return StatementTracer.invoke(target, method, args);
+                case "close":
+                    completeCurrent();
+                    return StatementTracer.invoke(target, method, args);
+                case "equals":
+                    return proxyInstance == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyInstance);
+                case "toString":
+                    return "Traced" + target;
+                default:
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        remember((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+                    return StatementTracer.invoke(target, method, args);
+            }
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            completeCurrent();
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            if (executed == null) {
+                return StatementTracer.invoke(target, method, args);
+            }
+            Trace trace = new Trace(statsFor(executed), executed,
+                    explain ? Arrays.copyOf(parameters, parameterCount) : null, parameterCount);
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = StatementTracer.invoke(target, method, args);
+            } catch (Throwable e) {
+                trace.stats.execute.recordError();
+                throw e;
+            } finally {
+                trace.executeNanos = System.nanoTime() - start;
+                trace.stats.execute.record(trace.executeNanos);
+            }
+            if (result instanceof ResultSet) {
+                return traceResultSet((ResultSet) result, trace);
+            }
+            if (result instanceof Boolean && (Boolean) result) {
+                current = trace; // The result set is fetched with getResultSet()
+                connection.open.add(trace);
+                return result;
+            }
+            trace.rows = rowCount(result);
+            connection.complete(trace);
+            return result;
+        }
+
+        private ResultSet traceResultSet(ResultSet rs, Trace trace) {
+            trace.hasResultSet = true;
+            if (current != trace) {
+                current = trace;
+                connection.open.add(trace);
+            }
+            return proxy(ResultSet.class, new ResultSetHandler(connection, rs, trace));
+        }
+
+        private void completeCurrent() {
+            if (current != null) {
+                connection.complete(current);
+                current = null;
+            }
+        }
+
+        private void remember(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            }
+            parameters[index - 1] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        private long rowCount(Object result) throws SQLException {
+            if (result instanceof Number) {
+                return Math.max(((Number) result).longValue(), 0);
+            }
+            if (result instanceof int[]) {
+                long rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            }
+            if (result instanceof long[]) {
+                long rows = 0;
+                for (long count : (long[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            }
+            return Math.max(target.getUpdateCount(), 0);
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ConnectionHandler connection;
+        private final ResultSet target;
+        private final Trace trace;
+
+        ResultSetHandler(ConnectionHandler connection, ResultSet target, Trace trace) {
+            this.connection = connection;
+            this.target = target;
+            this.trace = trace;
+        }
+
+        @Override
+        public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    long start = System.nanoTime();
+                    boolean hasRow = target.next();
+                    trace.fetchNanos += System.nanoTime() - start;
+                    if (hasRow) {
+                        trace.rows++;
+                    } else {
+                        connection.complete(trace);
+                    }
+                    return hasRow;
+                case "close":
+                    connection.complete(trace);
+                    target.close();
+                    return null;
+                case "equals":
+                    return proxyInstance == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyInstance);
+                case "toString":
+                    return "Traced" + target;
+                default:
+                    return StatementTracer.invoke(target, method, args);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Timer class records how long an operation takes and how often it fails. It is a LatencyHistogram plus an
+ * error counter, and like the histogram it is lock-free and allocates nothing when recording, so it can wrap every
+ * request and every query.
+ *
+ * A typical use takes System.nanoTime() before the operation, calls recordError() if it fails, and calls
+ * recordSince() with the start time once it is over, whether it failed or not.
+ */
+public class Timer implements TimerMXBean {
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Records one operation that started at the given time and ends now.
+     *
+     * @param startNanos The value of System.nanoTime() when the operation started.
+     */
+    public void recordSince(long startNanos) {
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records one operation of a known duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    /**
+     * Counts one failed operation. Its duration is still recorded separately.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * @return the durations recorded so far.
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return histogram.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return histogram.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return histogram.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP95Millis() {
+        return histogram.getValueAtPercentile(95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return histogram.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,22 @@
+package Util;
+
+/**
+ * The JMX view of a Timer. Durations are reported in milliseconds.
+ */
+public interface TimerMXBean {
+    long getCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+}
@@ -0,0 +1,5 @@
+-- GET /accounts/{account_id}/messages and its keyset pages filter on posted_by and order by
+-- (time_posted_epoch, message_id).
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch, message_id);
+-- Keyset pages of GET /messages order by (time_posted_epoch, message_id).
+create index if not exists message_time_idx on message (time_posted_epoch, message_id);
@@ -0,0 +1,7 @@
+-- With socialmedia.messages.shards above 1, messages live in other databases and cannot reference account. Every
+-- account that posts a sharded message gets a row here first, so the foreign key still stops the account from
+-- being deleted while its messages exist.
+create table if not exists sharded_message_author (
+    account_id int primary key,
+    foreign key (account_id) references account(account_id)
+);
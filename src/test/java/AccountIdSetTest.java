@@ -0,0 +1,26 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.AccountIdSet;
+
+public class AccountIdSetTest {
+
+    /**
+     * Added IDs are found, other IDs are not, and adding a large ID grows the set without losing earlier ones.
+     */
+    @Test
+    public void containsAddedIdsAcrossGrowth() {
+        AccountIdSet accountIds = new AccountIdSet();
+        accountIds.addAll(new int[] { 1, 63, 64 });
+        accountIds.add(1_000_000);
+
+        Assert.assertTrue(accountIds.contains(1));
+        Assert.assertTrue(accountIds.contains(63));
+        Assert.assertTrue(accountIds.contains(64));
+        Assert.assertTrue(accountIds.contains(1_000_000));
+        Assert.assertFalse(accountIds.contains(2));
+        Assert.assertFalse(accountIds.contains(999_999));
+        Assert.assertFalse(accountIds.contains(Integer.MAX_VALUE));
+        Assert.assertFalse(accountIds.contains(-1));
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.CompressingOutputStream;
+import Util.CompressingOutputStream.Encoding;
+
+public class CompressingOutputStreamTest {
+
+    private static byte[] body(int messages) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= messages; i++) {
+            json.append(i > 1 ? "," : "").append("{\"message_id\":").append(i)
+                    .append(",\"posted_by\":1,\"message_text\":\"message ").append(i)
+                    .append("\",\"time_posted_epoch\":").append(1669947792 + i).append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a body in small chunks, the way a streaming JSON generator does, and returns what reached the wire.
+     */
+    private static byte[] compress(byte[] body, Encoding encoding, int minSize, boolean[] compressed)
+            throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        try (CompressingOutputStream out = new CompressingOutputStream(wire, encoding, 6, minSize,
+                () -> compressed[0] = true)) {
+            for (int off = 0; off < body.length; off += 37) {
+                out.write(body, off, Math.min(37, body.length - off));
+            }
+        }
+        return wire.toByteArray();
+    }
+
+    /**
+     * A large body round-trips through gzip and is smaller on the wire.
+     */
+    @Test
+    public void gzipRoundTrip() throws IOException {
+        byte[] body = body(500);
+        boolean[] compressed = new boolean[1];
+        byte[] wire = compress(body, Encoding.GZIP, 1500, compressed);
+        Assert.assertTrue(compressed[0]);
+        Assert.assertTrue(wire.length < body.length / 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(wire))) {
+            Assert.assertArrayEquals(body, in.readAllBytes());
+        }
+    }
+
+    /**
+     * A large body round-trips through deflate in the zlib format.
+     */
+    @Test
+    public void deflateRoundTrip() throws IOException {
+        byte[] body = body(500);
+        boolean[] compressed = new boolean[1];
+        byte[] wire = compress(body, Encoding.DEFLATE, 1500, compressed);
+        Assert.assertTrue(compressed[0]);
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(wire))) {
+            Assert.assertArrayEquals(body, in.readAllBytes());
+        }
+    }
+
+    /**
+     * A body shorter than the minimum size is sent unchanged and never triggers the Content-Encoding callback.
+     */
+    @Test
+    public void smallBodyIsNotCompressed() throws IOException {
+        byte[] body = body(1);
+        boolean[] compressed = new boolean[1];
+        byte[] wire = compress(body, Encoding.GZIP, 1500, compressed);
+        Assert.assertFalse(compressed[0]);
+        Assert.assertArrayEquals(body, wire);
+    }
+
+    /**
+     * Accept-Encoding is negotiated by q-value, preferring gzip on a tie and never choosing q=0.
+     */
+    @Test
+    public void negotiatesAcceptEncoding() {
+        Assert.assertNull(CompressingOutputStream.negotiate(null));
+        Assert.assertNull(CompressingOutputStream.negotiate("br, identity"));
+        Assert.assertEquals(Encoding.GZIP, CompressingOutputStream.negotiate("deflate, gzip"));
+        Assert.assertEquals(Encoding.DEFLATE, CompressingOutputStream.negotiate("gzip;q=0.5, deflate"));
+        Assert.assertEquals(Encoding.DEFLATE, CompressingOutputStream.negotiate("gzip;q=0, *"));
+        Assert.assertNull(CompressingOutputStream.negotiate("*;q=0"));
+    }
+}
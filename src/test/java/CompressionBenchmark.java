@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import Model.Message;
+import Util.CompressingOutputStream;
+import Util.CompressingOutputStream.Encoding;
+import Util.JacksonJsonMapper;
+
+/**
+ * Reports the CPU-vs-bytes tradeoff of response compression: for list responses of several sizes it serializes
+ * the list through CompressingOutputStream with no coding, gzip at levels 1, 6 and 9, and deflate at level 6, and
+ * prints the bytes sent and the CPU time per response. This is not a unit test; run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=CompressionBenchmark
+ */
+public class CompressionBenchmark {
+    private static final int[] LIST_SIZES = {1, 10, 100, 1000, 10000};
+    private static final int MIN_SIZE = 1500;
+    private static final long TARGET_NANOS = 500_000_000L;
+
+    /**
+     * Counts and discards everything written to it, like a response stream whose bytes have already been sent.
+     */
+    private static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        JacksonJsonMapper jsonMapper = new JacksonJsonMapper();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.printf("%8s %-10s %12s %8s %14s %14s%n", "messages", "coding", "bytes", "ratio", "cpu us/resp",
+                "cpu ns/KB in");
+        for (int size : LIST_SIZES) {
+            List<Message> messages = messages(size);
+            long identityBytes = 0;
+            for (Object[] variant : new Object[][] {{null, 0}, {Encoding.GZIP, 1}, {Encoding.GZIP, 6},
+                    {Encoding.GZIP, 9}, {Encoding.DEFLATE, 6}}) {
+                Encoding encoding = (Encoding) variant[0];
+                int level = (Integer) variant[1];
+                CountingSink sink = new CountingSink();
+                write(jsonMapper, messages, sink, encoding, level); // Warm up and measure the size once
+                long bytes = sink.count;
+                if (encoding == null) {
+                    identityBytes = bytes;
+                }
+                int iterations = 0;
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                long wallStart = System.nanoTime();
+                while (System.nanoTime() - wallStart < TARGET_NANOS) {
+                    write(jsonMapper, messages, sink, encoding, level);
+                    iterations++;
+                }
+                long cpu = (threads.getCurrentThreadCpuTime() - cpuStart) / iterations;
+                String coding = encoding == null ? "identity" : encoding.getHeaderValue() + "-" + level;
+                System.out.printf("%8d %-10s %12d %8.2f %14.1f %14.0f%n", size, coding, bytes,
+                        (double) bytes / identityBytes, cpu / 1000.0, cpu * 1024.0 / identityBytes);
+            }
+        }
+    }
+
+    private static void write(JacksonJsonMapper jsonMapper, List<Message> messages, OutputStream sink,
+            Encoding encoding, int level) throws IOException {
+        try (CompressingOutputStream out = new CompressingOutputStream(sink, encoding, level, MIN_SIZE, () -> {
+        })) {
+            jsonMapper.writeTo(messages, out);
+        }
+    }
+
+    private static List<Message> messages(int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            messages.add(new Message(i, 1 + i % 50, "message " + i + " about the weather and other things",
+                    1669947792L + i));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+
+public class ConcurrentRegistrationTest {
+    AccountService accountService;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountService = new AccountService();
+    }
+
+    /**
+     * Many threads registering the same username at the same moment: exactly one succeeds and the rest are
+     * rejected, because uniqueness is enforced by the insert itself rather than by a prior lookup.
+     */
+    @Test
+    public void duplicateUsernamesRejectedUnderParallelRegistration() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Account>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return accountService.addAccount(new Account("raceuser", "password"));
+            }));
+        }
+        start.countDown();
+
+        int registered = 0;
+        for (Future<Account> result : results) {
+            if (result.get() != null) {
+                registered++;
+            }
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(1, registered);
+        Assert.assertNotNull(accountService.login(new Account("raceuser", "password")));
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Repeating GET localhost:8080/messages with the ETag it returned gives 304 until a message is added.
+     *
+     * Expected Response:
+     *  Status Code: 304 with no body, then 200 with a new ETag after the list changes
+     */
+    @Test
+    public void allMessagesNotModifiedUntilMessageAdded() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> repeat = get("/messages", etag);
+        Assert.assertEquals(304, repeat.statusCode());
+        Assert.assertEquals("", repeat.body());
+
+        send("POST", "/messages",
+                "{\"posted_by\":1, \"message_text\": \"new\", \"time_posted_epoch\": 1669947800}");
+        HttpResponse<String> changed = get("/messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Each page of a paginated list has its own ETag, and a weak or listed If-None-Match still matches.
+     *
+     * Expected Response:
+     *  Status Code: 304 only for the page the tag came from
+     */
+    @Test
+    public void pagesHaveDistinctETags() throws IOException, InterruptedException {
+        String pageTag = get("/messages?limit=1", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(304, get("/messages?limit=1", "\"other\", W/" + pageTag).statusCode());
+        Assert.assertEquals(200, get("/messages?limit=2", pageTag).statusCode());
+        Assert.assertEquals(200, get("/messages", pageTag).statusCode());
+    }
+
+    /**
+     * An account's list ETag changes when that account's message is updated, and a single message's ETag changes
+     * when its text does.
+     *
+     * Expected Response:
+     *  Status Code: 304 before the update, 200 after it
+     */
+    @Test
+    public void updateChangesMessageAndAccountETags() throws IOException, InterruptedException {
+        String accountTag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+        String messageTag = get("/messages/1", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals(304, get("/accounts/1/messages", accountTag).statusCode());
+        Assert.assertEquals(304, get("/messages/1", messageTag).statusCode());
+
+        send("PATCH", "/messages/1", "{\"message_text\": \"updated message\"}");
+
+        Assert.assertEquals(200, get("/accounts/1/messages", accountTag).statusCode());
+        HttpResponse<String> message = get("/messages/1", messageTag);
+        Assert.assertEquals(200, message.statusCode());
+        Assert.assertTrue(message.body().contains("updated message"));
+    }
+
+    /**
+     * A gzip response and a plain one carry different ETags, a tag only matches the coding it was issued for, and
+     * the 304 says it varies by Accept-Encoding just like the 200.
+     *
+     * Expected Response:
+     *  Status Code: 304 for the same coding, 200 for the other one
+     */
+    @Test
+    public void etagDependsOnContentCoding() throws IOException, InterruptedException {
+        HttpRequest.Builder gzip = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept-Encoding", "gzip");
+        HttpResponse<byte[]> compressed = webClient.send(gzip.build(), HttpResponse.BodyHandlers.ofByteArray());
+        String gzipTag = compressed.headers().firstValue("ETag").orElseThrow();
+        Assert.assertEquals("Accept-Encoding", compressed.headers().firstValue("Vary").orElse(""));
+        String plainTag = get("/messages", null).headers().firstValue("ETag").orElseThrow();
+        Assert.assertNotEquals(plainTag, gzipTag);
+
+        HttpResponse<byte[]> notModified = webClient.send(gzip.header("If-None-Match", gzipTag).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(304, notModified.statusCode());
+        Assert.assertEquals("Accept-Encoding", notModified.headers().firstValue("Vary").orElse(""));
+        Assert.assertEquals(200, get("/messages", gzipTag).statusCode());
+    }
+}
@@ -0,0 +1,181 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CountDownLatch;
+
+import org.h2.jdbc.JdbcConnection;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool over a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 1, 2, 200, 60000, 0);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Closing a borrowed connection returns it to the pool instead of closing the physical connection.
+     */
+    @Test
+    public void closedConnectionIsReused() throws SQLException {
+        Connection first = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        first.close();
+        Assert.assertTrue(first.isClosed());
+        Assert.assertEquals(0, pool.getActiveCount());
+
+        Connection second = pool.getConnection();
+        Assert.assertEquals(1, pool.getTotalCount());
+        second.close();
+    }
+
+    /**
+     * Once maxSize connections are borrowed, getConnection() fails after the acquire timeout.
+     */
+    @Test
+    public void acquireTimesOutWhenPoolIsExhausted() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail("Expected the pool to time out");
+        } catch (SQLTimeoutException e) {
+            Assert.assertEquals(2, pool.getTotalCount());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    /**
+     * Statements left open by the borrower are closed when the connection is returned, and the connection's
+     * transaction state is reset.
+     */
+    @Test
+    public void returnedConnectionIsReset() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        connection.close();
+        Assert.assertTrue(statement.isClosed());
+
+        Connection reused = pool.getConnection();
+        Assert.assertTrue(reused.getAutoCommit());
+        reused.close();
+    }
+
+    /**
+     * A connection that has been returned can no longer be used by its old borrower.
+     */
+    @Test(expected = SQLException.class)
+    public void returnedConnectionRejectsUse() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.prepareStatement("SELECT 1");
+    }
+
+    /**
+     * A handle kept after close() stays dead when its physical connection is lent out again, so closing it a
+     * second time cannot return the new borrower's connection to the pool.
+     */
+    @Test
+    public void staleHandleCannotReleaseNextLease() throws SQLException {
+        Connection stale = pool.getConnection();
+        stale.close();
+        Connection current = pool.getConnection();
+        Assert.assertEquals(1, pool.getTotalCount());
+
+        stale.close();
+        Assert.assertTrue(stale.isClosed());
+        Assert.assertFalse(current.isClosed());
+        Assert.assertEquals(1, pool.getActiveCount());
+        try {
+            stale.prepareStatement("SELECT 1");
+            Assert.fail("A stale handle should not reach the physical connection");
+        } catch (SQLException expected) {
+            // Expected
+        }
+        current.prepareStatement("SELECT 1").executeQuery().close();
+        current.close();
+    }
+
+    /**
+     * Unwrapping a pooled connection never exposes the physical connection behind it.
+     */
+    @Test
+    public void unwrapDoesNotExposePhysicalConnection() throws SQLException {
+        Connection connection = pool.getConnection();
+        try {
+            Assert.assertSame(connection, connection.unwrap(Connection.class));
+            Assert.assertFalse(connection.isWrapperFor(JdbcConnection.class));
+            try {
+                connection.unwrap(JdbcConnection.class);
+                Assert.fail("Unwrapping to the physical connection should fail");
+            } catch (SQLException expected) {
+                // Expected
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Racing close() calls on one borrowed connection give its lease back only once, so the pool never hands out
+     * more than maxSize connections.
+     */
+    @Test
+    public void concurrentCloseReleasesOnce() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            Connection connection = pool.getConnection();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] closers = new Thread[4];
+            for (int t = 0; t < closers.length; t++) {
+                closers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                        connection.close();
+                    } catch (InterruptedException | SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                closers[t].start();
+            }
+            start.countDown();
+            for (Thread closer : closers) {
+                closer.join();
+            }
+            Assert.assertEquals(0, pool.getActiveCount());
+        }
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail("Expected the pool to time out");
+        } catch (SQLTimeoutException e) {
+            Assert.assertEquals(2, pool.getTotalCount());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+}
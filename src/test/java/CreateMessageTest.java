@@ -12,6 +12,7 @@ import org.junit.Test;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.Repositories;
 import Model.Message;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
@@ -68,7 +69,8 @@ public class CreateMessageTest {
         Assert.assertEquals(200, status);        
 
         ObjectMapper om = new ObjectMapper();
-        Message expectedResult = new Message(2, 1, "hello message", 1669947792);
+        // Account 1's messages are numbered 1, 1 + N, 1 + 2N... when spread across N shards
+        Message expectedResult = new Message(1 + Repositories.MESSAGE_SHARDS, 1, "hello message", 1669947792);
         System.out.println(response.body().toString());
         Message actualResult = om.readValue(response.body().toString(), Message.class);
         Assert.assertEquals(expectedResult, actualResult);
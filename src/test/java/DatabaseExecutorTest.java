@@ -0,0 +1,98 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.DatabaseExecutor;
+
+public class DatabaseExecutorTest {
+    DatabaseExecutor executor;
+    CountDownLatch release;
+
+    /**
+     * Before every test, create an executor with one thread, room for one queued task and a short timeout.
+     */
+    @Before
+    public void setUp() {
+        executor = new DatabaseExecutor(1, 1, 300);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private CompletableFuture<String> blockUntilReleased() {
+        return executor.supply(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        });
+    }
+
+    /**
+     * A task's result and a task's exception both reach the future.
+     */
+    @Test
+    public void resultsAndErrorsPropagate() throws Exception {
+        Assert.assertEquals("value", executor.supply(() -> "value").get(1, TimeUnit.SECONDS));
+        try {
+            executor.supply(() -> {
+                throw new IllegalStateException("query failed");
+            }).get(1, TimeUnit.SECONDS);
+            Assert.fail("Expected the task's exception");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Once the thread is busy and the queue is full, further tasks are rejected at once instead of waiting.
+     */
+    @Test
+    public void fullQueueRejectsImmediately() throws Exception {
+        blockUntilReleased();
+        blockUntilReleased();
+        CompletableFuture<String> rejected = blockUntilReleased();
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            Assert.fail("Expected a rejection");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    /**
+     * A task still queued when the timeout passes fails with TimeoutException, frees its queue slot and never runs.
+     */
+    @Test
+    public void queuedTaskTimesOutAndNeverRuns() throws Exception {
+        blockUntilReleased();
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Boolean> queued = executor.supply(() -> ran.getAndSet(true));
+        try {
+            queued.get(2, TimeUnit.SECONDS);
+            Assert.fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(0, executor.getQueueDepth());
+        release.countDown();
+        Assert.assertEquals("value", executor.supply(() -> "value").get(1, TimeUnit.SECONDS));
+        Assert.assertFalse(ran.get());
+    }
+}
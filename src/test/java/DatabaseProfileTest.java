@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.Server;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.DatabaseProfile;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class DatabaseProfileTest {
+    private static final String[] KEYS = {
+            AppConfig.CONFIG_FILE_KEY, "socialmedia.db.profile", "socialmedia.db.path", "socialmedia.db.tcp.port",
+            "socialmedia.db.tcp.startServer", "socialmedia.db.cacheSizeKb", "socialmedia.db.writeDelayMillis",
+            DatabaseProfile.INSTANCES_KEY,
+    };
+
+    @After
+    public void tearDown() {
+        for (String key : KEYS) {
+            System.clearProperty(key);
+        }
+    }
+
+    /**
+     * Without any settings the application keeps using the file at ./h2/db, with the cache and write delay spelled
+     * out in the URL.
+     */
+    @Test
+    public void defaultsToTunedFileProfile() {
+        DatabaseProfile profile = DatabaseProfile.fromConfig();
+        Assert.assertEquals(DatabaseProfile.Kind.FILE, profile.getKind());
+        Assert.assertEquals("jdbc:h2:./h2/db;CACHE_SIZE=65536;WRITE_DELAY=500", profile.getUrl());
+
+        System.setProperty("socialmedia.db.profile", "memory");
+        profile = DatabaseProfile.fromConfig();
+        Assert.assertEquals("jdbc:h2:mem:socialmedia;DB_CLOSE_DELAY=-1", profile.getUrl());
+        Assert.assertEquals(0, profile.getCacheSizeKb());
+    }
+
+    /**
+     * Unknown profiles and out of range settings are rejected when the profile is read.
+     */
+    @Test
+    public void invalidSettingsAreRejected() {
+        assertRejected("socialmedia.db.profile", "disk");
+        assertRejected("socialmedia.db.tcp.port", "0");
+        assertRejected("socialmedia.db.cacheSizeKb", "16");
+        assertRejected("socialmedia.db.writeDelayMillis", "-1");
+        assertRejected("socialmedia.db.path", "./h2/db;INIT=RUNSCRIPT FROM 'x'");
+        assertRejected("socialmedia.db.tcp.startServer", "true");
+        assertRejected(DatabaseProfile.INSTANCES_KEY, "0");
+        assertRejected(DatabaseProfile.INSTANCES_KEY, "2");
+    }
+
+    private static void assertRejected(String key, String value) {
+        System.setProperty(key, value);
+        try {
+            DatabaseProfile.fromConfig();
+            Assert.fail(key + "=" + value + " should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        } finally {
+            System.clearProperty(key);
+        }
+    }
+
+    /**
+     * Settings in the socialmedia.config properties file are used unless a system property overrides them.
+     */
+    @Test
+    public void readsPropertiesFile() throws IOException {
+        Path file = Files.createTempFile("socialmedia", ".properties");
+        try {
+            Files.writeString(file, "socialmedia.db.profile=tcp\nsocialmedia.db.tcp.port=9123\n");
+            System.setProperty(AppConfig.CONFIG_FILE_KEY, file.toString());
+            Assert.assertEquals("jdbc:h2:tcp://localhost:9123/./h2/db;CACHE_SIZE=65536;WRITE_DELAY=500",
+                    DatabaseProfile.fromConfig().getUrl());
+
+            System.setProperty("socialmedia.db.tcp.port", "9124");
+            Assert.assertEquals(9124, AppConfig.getInt("socialmedia.db.tcp.port", 0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Two clients of the tcp profile see each other's writes through the server one of them started.
+     */
+    @Test
+    public void tcpProfileSharesOneStore() throws SQLException {
+        System.setProperty("socialmedia.db.profile", "tcp");
+        System.setProperty("socialmedia.db.tcp.port", "19092");
+        System.setProperty("socialmedia.db.tcp.startServer", "true");
+        System.setProperty("socialmedia.db.path", "mem:profiletest");
+        DatabaseProfile profile = DatabaseProfile.fromConfig();
+        Server server = profile.startServer();
+        try {
+            JdbcDataSource first = dataSource(profile.getUrl());
+            JdbcDataSource second = dataSource(profile.getUrl());
+            try (Connection writer = first.getConnection(); Connection reader = second.getConnection()) {
+                writer.createStatement().execute("CREATE TABLE shared (id int)");
+                writer.createStatement().execute("INSERT INTO shared VALUES (7)");
+                ResultSet resultSet = reader.createStatement().executeQuery("SELECT id FROM shared");
+                Assert.assertTrue(resultSet.next());
+                Assert.assertEquals(7, resultSet.getInt(1));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static JdbcDataSource dataSource(String url) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        return dataSource;
+    }
+
+    /**
+     * With several instances sharing the store, the features backed by per-process state are turned off instead
+     * of serving results that miss the other instances' writes.
+     *
+     * Expected Response:
+     *  Status Code: 501 for search and both streams, and lists without an ETag
+     */
+    @Test
+    public void sharedStoreTurnsOffProcessLocalFeatures() throws IOException, InterruptedException {
+        // Opens the database first, so the profile held by ConnectionUtil stays the default file profile
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.db.profile", "tcp");
+        System.setProperty(DatabaseProfile.INSTANCES_KEY, "2");
+        Assert.assertTrue(DatabaseProfile.isSharedStore());
+        Assert.assertEquals(DatabaseProfile.Kind.TCP, DatabaseProfile.fromConfig().getKind());
+
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        try {
+            Thread.sleep(1000);
+            HttpClient webClient = HttpClient.newHttpClient();
+            Assert.assertEquals(501, get(webClient, "/messages/search?q=test").statusCode());
+            Assert.assertEquals(501, get(webClient, "/messages/stream").statusCode());
+            Assert.assertEquals(501, get(webClient, "/accounts/1/messages/stream").statusCode());
+            HttpResponse<String> list = get(webClient, "/messages");
+            Assert.assertEquals(200, list.statusCode());
+            Assert.assertTrue(list.headers().firstValue("ETag").isEmpty());
+        } finally {
+            app.stop();
+        }
+    }
+
+    private static HttpResponse<String> get(HttpClient webClient, String path)
+            throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * The profile in use is published in GET /metrics.
+     */
+    @Test
+    public void profileIsPublishedInMetrics() {
+        Assert.assertEquals(DatabaseProfile.Kind.FILE, ConnectionUtil.getProfile().getKind());
+        String metrics = Metrics.getDefault().scrape();
+        Assert.assertTrue(metrics, metrics.contains("socialmedia_db_profile_info{profile=\"file\"} 1\n"));
+        Assert.assertTrue(metrics, metrics.contains("socialmedia_db_cache_size_kilobytes 65536\n"));
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.EventRing;
+
+public class EventRingTest {
+    /**
+     * Each reader sees every event in order, from where it started, independently of other readers.
+     */
+    @Test
+    public void readersFollowIndependently() throws InterruptedException {
+        EventRing<String> ring = new EventRing<>(8);
+        EventRing<String>.Reader early = ring.reader(ring.getCursor());
+        ring.publish("a");
+        EventRing<String>.Reader late = ring.reader(ring.getCursor());
+        ring.publish("b");
+
+        Assert.assertEquals("a", early.poll().getValue());
+        Assert.assertEquals("b", early.poll().getValue());
+        Assert.assertNull(early.poll());
+        Assert.assertEquals("b", late.poll().getValue());
+        Assert.assertEquals(2, ring.getReaderCount());
+        early.close();
+        late.close();
+        Assert.assertEquals(0, ring.getReaderCount());
+    }
+
+    /**
+     * A reader that falls more than the capacity behind skips to the oldest event still held and reports how many
+     * it missed, without ever holding up the writer.
+     */
+    @Test
+    public void slowReaderSkipsOverwrittenEvents() {
+        EventRing<Integer> ring = new EventRing<>(4);
+        EventRing<Integer>.Reader reader = ring.reader(0);
+        for (int i = 1; i <= 10; i++) {
+            ring.publish(i);
+        }
+
+        EventRing.Slot<Integer> slot = reader.poll();
+        Assert.assertEquals(7, slot.getSequence());
+        Assert.assertEquals(Integer.valueOf(7), slot.getValue());
+        Assert.assertEquals(6, reader.getMissed());
+        reader.close();
+    }
+
+    /**
+     * A waiting reader is woken by the next publish, and times out when nothing is published.
+     */
+    @Test
+    public void takeWaitsForPublish() throws InterruptedException {
+        EventRing<String> ring = new EventRing<>(4);
+        EventRing<String>.Reader reader = ring.reader(ring.getCursor());
+        Assert.assertNull(reader.take(TimeUnit.MILLISECONDS.toNanos(10)));
+
+        Thread publisher = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            ring.publish("late");
+        });
+        publisher.start();
+        Assert.assertEquals("late", reader.take(TimeUnit.SECONDS.toNanos(10)).getValue());
+        publisher.join();
+        reader.close();
+    }
+
+    /**
+     * One publish wakes every waiting reader, including after other readers timed out and left their places in
+     * the queue of waiters behind.
+     */
+    @Test(timeout = 30000)
+    public void publishWakesEveryWaitingReader() throws InterruptedException {
+        EventRing<String> ring = new EventRing<>(4);
+        for (int i = 0; i < 20; i++) {
+            try (EventRing<String>.Reader idle = ring.reader(ring.getCursor())) {
+                Assert.assertNull(idle.take(TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        }
+        int count = 50;
+        CountDownLatch ready = new CountDownLatch(count);
+        AtomicInteger woken = new AtomicInteger();
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            EventRing<String>.Reader reader = ring.reader(ring.getCursor());
+            threads[i] = new Thread(() -> {
+                try (reader) {
+                    ready.countDown();
+                    EventRing.Slot<String> slot = reader.take(TimeUnit.SECONDS.toNanos(20));
+                    if (slot != null && slot.getValue().equals("wake")) {
+                        woken.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[i].start();
+        }
+        ready.await();
+        Thread.sleep(200);
+        ring.publish("wake");
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(count, woken.get());
+        Assert.assertEquals(0, ring.getReaderCount());
+    }
+}
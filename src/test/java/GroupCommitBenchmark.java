@@ -0,0 +1,57 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import DAO.GroupCommitWriter;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Compares insert throughput of one auto-commit INSERT per message with the GroupCommitWriter, for a growing
+ * number of concurrent posters. This is not a unit test; run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=GroupCommitBenchmark
+ */
+public class GroupCommitBenchmark {
+    private static final int MESSAGES_PER_THREAD = 500;
+
+    public static void main(String[] args) throws Exception {
+        MessageDAO messageDAO = new MessageDAO();
+        GroupCommitWriter writer = new GroupCommitWriter(64, 0);
+        // Warm up both paths so the first measurement does not include JIT compilation.
+        run("warm-up", 8, messageDAO::addMessage);
+        run("warm-up", 8, writer::submit);
+        for (int threads : new int[] { 1, 8, 32 }) {
+            run("auto-commit per message", threads, messageDAO::addMessage);
+            run("group commit", threads, writer::submit);
+        }
+    }
+
+    private static void run(String name, int threads, Function<Message, Message> insert) throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                    if (insert.apply(new Message(1, "benchmark message " + i, 1669947792)) == null) {
+                        throw new IllegalStateException("insert failed");
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        System.out.printf("%-26s %3d threads %10.0f messages/s%n", name, threads,
+                threads * MESSAGES_PER_THREAD / seconds);
+    }
+}
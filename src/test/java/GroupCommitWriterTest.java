@@ -0,0 +1,117 @@
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitWriter;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DatabaseUnavailableException;
+
+public class GroupCommitWriterTest {
+    GroupCommitWriter writer;
+    int initialMessages;
+
+    /**
+     * Before every test, reset the database and count the messages left in its message table, which is none when
+     * the seeded message has been moved into shards.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        writer = new GroupCommitWriter(16, 2000);
+        initialMessages = new MessageDAO().getAllMessages().size();
+    }
+
+    /**
+     * Concurrent submissions are each given back their own message with a distinct generated ID, and every
+     * message ends up in the database.
+     */
+    @Test
+    public void concurrentSubmitsGetTheirOwnIds() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String text = "message " + i;
+            results.add(executor.submit(() -> writer.submit(new Message(1, text, 1669947792))));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < results.size(); i++) {
+            Message added = results.get(i).get();
+            Assert.assertNotNull(added);
+            Assert.assertEquals("message " + i, added.getMessage_text());
+            ids.add(added.getMessage_id());
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(100, ids.size());
+        Assert.assertEquals(initialMessages + 100, new MessageDAO().getAllMessages().size());
+    }
+
+    /**
+     * A message whose posted_by has no account fails on its own without failing the rest of its group.
+     */
+    @Test
+    public void badRowDoesNotFailItsGroup() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<Message> good = executor.submit(() -> writer.submit(new Message(1, "good", 1669947792)));
+        Future<Message> bad = executor.submit(() -> writer.submit(new Message(99, "bad", 1669947792)));
+        Assert.assertNotNull(good.get());
+        Assert.assertNull(bad.get());
+        executor.shutdown();
+    }
+
+    /**
+     * A caller whose group is not written in time gets an error instead of waiting forever, and a message the
+     * writer had not started on is dropped rather than written after its caller gave up.
+     */
+    @Test
+    public void submitTimesOutAndAbandonedMessageIsSkipped() throws Exception {
+        GroupCommitWriter slow = new GroupCommitWriter(16, 1_000_000, 100);
+        try {
+            slow.submit(new Message(1, "too slow", 1669947792));
+            Assert.fail("Expected the submit to time out");
+        } catch (DatabaseUnavailableException expected) {
+            // Expected
+        }
+        Thread.sleep(1500);
+        Assert.assertEquals(initialMessages, new MessageDAO().getAllMessages().size());
+    }
+
+    /**
+     * A caller whose message the writer has already started on waits for the outcome past its timeout, so a row
+     * that gets committed is never reported as a failure.
+     */
+    @Test
+    public void startedWriteIsAwaitedPastTheTimeout() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(1, 0, 100);
+        // With every pooled connection borrowed, the writer starts on the message and then waits for a connection
+        List<Connection> borrowed = new ArrayList<>();
+        for (int i = 0; i < ConnectionUtil.getPool().getMaxSize(); i++) {
+            borrowed.add(ConnectionUtil.getConnection());
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Message> added = executor.submit(() -> writer.submit(new Message(1, "held up", 1669947792)));
+            Thread.sleep(500);
+            Assert.assertFalse(added.isDone());
+            borrowed.remove(0).close();
+            Assert.assertNotNull(added.get());
+        } finally {
+            for (Connection connection : borrowed) {
+                connection.close();
+            }
+            executor.shutdown();
+        }
+        Assert.assertEquals(initialMessages + 1, new MessageDAO().getAllMessages().size());
+    }
+}
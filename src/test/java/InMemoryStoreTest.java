@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryStore;
+import Model.Account;
+import Model.Message;
+import Util.PageCursor;
+
+public class InMemoryStoreTest {
+    InMemoryStore store;
+    int accountId;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+        accountId = store.registerAccount(new Account("testuser1", "password")).getAccount_id();
+    }
+
+    /**
+     * A taken username is rejected and both lookups find the registered account.
+     */
+    @Test
+    public void registerAccountRejectsDuplicateUsername() {
+        Assert.assertNull(store.registerAccount(new Account("testuser1", "other")));
+        Assert.assertEquals("password", store.getAccountByUsername("testuser1").getPassword());
+        Assert.assertEquals("testuser1", store.getAccountById(accountId).getUsername());
+        Assert.assertArrayEquals(new int[] {accountId}, store.getAllAccountIds());
+        Assert.assertArrayEquals(new int[] {accountId}, store.getExistingAccountIds(new int[] {accountId, 99}));
+    }
+
+    /**
+     * Like the foreign key in H2, a message for an account that does not exist is rejected, and a batch containing
+     * one is rejected as a whole.
+     */
+    @Test
+    public void addMessageRejectsUnknownAccount() {
+        Assert.assertNull(store.addMessage(new Message(99, "orphan", 1L)));
+        List<Message> batch = List.of(new Message(accountId, "ok", 1L), new Message(99, "orphan", 2L));
+        Assert.assertNull(store.addMessages(batch));
+        Assert.assertTrue(store.getAllMessages().isEmpty());
+    }
+
+    /**
+     * Updates and deletes are seen by every index.
+     */
+    @Test
+    public void updateAndDeleteKeepIndexesInStep() {
+        Message added = store.addMessage(new Message(accountId, "before", 5L));
+        Assert.assertEquals(added, store.updateMessageById(new Message(added.getMessage_id(), 0, "after", 0L)));
+        Message updated = new Message(added.getMessage_id(), accountId, "after", 5L);
+
+        Assert.assertEquals(updated, store.getMessageById(added.getMessage_id()));
+        Assert.assertEquals(List.of(updated), store.getAllMessages());
+        Assert.assertEquals(List.of(updated), store.getAllMessagesByAccountId(accountId));
+
+        Assert.assertEquals(updated, store.deleteMessageById(added.getMessage_id()));
+        Assert.assertNull(store.getMessageById(added.getMessage_id()));
+        Assert.assertNull(store.deleteMessageById(added.getMessage_id()));
+        Assert.assertTrue(store.getAllMessages().isEmpty());
+        Assert.assertTrue(store.getAllMessagesByAccountId(accountId).isEmpty());
+    }
+
+    /**
+     * The author-checked update and delete leave another account's message alone.
+     */
+    @Test
+    public void authorCheckedWritesSkipOtherAccounts() {
+        Message added = store.addMessage(new Message(accountId, "mine", 5L));
+        int otherAccountId = accountId + 1;
+
+        Assert.assertNull(store.updateMessageByIdAndAuthor(new Message(added.getMessage_id(), 0, "theirs", 0L),
+                otherAccountId));
+        Assert.assertNull(store.deleteMessageByIdAndAuthor(added.getMessage_id(), otherAccountId));
+        Assert.assertEquals(added, store.getMessageById(added.getMessage_id()));
+
+        Assert.assertEquals(added, store.updateMessageByIdAndAuthor(
+                new Message(added.getMessage_id(), 0, "edited", 0L), accountId));
+        Assert.assertEquals("edited", store.deleteMessageByIdAndAuthor(added.getMessage_id(), accountId)
+                .getMessage_text());
+    }
+
+    /**
+     * Pages are ordered by time_posted_epoch and then message_id, globally and per account, and a cursor resumes
+     * after the last message of the previous page.
+     */
+    @Test
+    public void pagesAreOrderedByTimeThenId() {
+        int otherId = store.registerAccount(new Account("testuser2", "password")).getAccount_id();
+        Message late = store.addMessage(new Message(accountId, "late", 30L));
+        Message early = store.addMessage(new Message(otherId, "early", 10L));
+        Message tieFirst = store.addMessage(new Message(accountId, "tie 1", 20L));
+        Message tieSecond = store.addMessage(new Message(accountId, "tie 2", 20L));
+
+        Assert.assertEquals(List.of(early, tieFirst), store.getMessagesPage(null, 2));
+        Assert.assertEquals(List.of(tieSecond, late),
+                store.getMessagesPage(new PageCursor(20L, tieFirst.getMessage_id()), 2));
+        Assert.assertEquals(List.of(tieFirst, tieSecond), store.getMessagesPageByAccountId(accountId, null, 2));
+        Assert.assertEquals(List.of(late),
+                store.getMessagesPageByAccountId(accountId, new PageCursor(20L, tieSecond.getMessage_id()), 2));
+    }
+
+    /**
+     * Messages added from many threads at once all get distinct IDs and all appear in every index.
+     */
+    @Test
+    public void concurrentAddsAreAllVisible() throws Exception {
+        int threads = 8;
+        int perThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        Assert.assertNotNull(store.addMessage(new Message(accountId, "message " + i, i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (Message message : store.getAllMessages()) {
+            ids.add(message.getMessage_id());
+        }
+        Assert.assertEquals(threads * perThread, ids.size());
+        Assert.assertEquals(threads * perThread, store.getAllMessagesByAccountId(accountId).size());
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.JacksonJsonMapper;
+
+/**
+ * Compares the per-request allocation of the old handler pattern (new ObjectMapper, ctx.body() String,
+ * writeValueAsString and then ctx.json) with the shared JacksonJsonMapper pipeline (cached reader on the input
+ * stream, cached writer on the output stream). This is not a unit test; run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=JsonMapperBenchmark
+ */
+public class JsonMapperBenchmark {
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+    private static final byte[] BODY = ("{\"posted_by\":1,\"message_text\":\"hello message\","
+            + "\"time_posted_epoch\":1669947792}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Discards everything written to it, like a response stream whose bytes have already been sent.
+     */
+    private static final OutputStream SINK = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        JacksonJsonMapper jsonMapper = new JacksonJsonMapper();
+        run("per-request ObjectMapper", () -> {
+            ObjectMapper mapper = new ObjectMapper();
+            Message message = mapper.readValue(new String(BODY, StandardCharsets.UTF_8), Message.class);
+            message.setMessage_id(2);
+            SINK.write(mapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8));
+        });
+        run("shared JacksonJsonMapper", () -> {
+            Message message = jsonMapper.fromJsonStream(new ByteArrayInputStream(BODY), Message.class);
+            message.setMessage_id(2);
+            jsonMapper.writeTo(message, SINK);
+        });
+    }
+
+    private static void run(String name, Request request) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        for (int i = 0; i < WARMUP; i++) {
+            request.handle();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            request.handle();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-28s %10d bytes/request %10.0f ns/request%n", name, allocated / ITERATIONS,
+                (double) elapsed / ITERATIONS);
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void handle() throws IOException;
+    }
+}
@@ -0,0 +1,45 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    /**
+     * Percentiles of evenly spread durations are reported within the histogram's 3% precision, never below the
+     * true value and never above the maximum.
+     */
+    @Test
+    public void percentilesAreWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        Assert.assertEquals(100_000, histogram.getCount());
+        Assert.assertEquals(100_000_000L, histogram.getMax());
+        Assert.assertEquals(50_000_500.0, histogram.getMean(), 1.0);
+        for (double percentile : new double[] {50, 95, 99, 99.9}) {
+            long expected = (long) (percentile * 1000) * 1000;
+            long reported = histogram.getValueAtPercentile(percentile);
+            Assert.assertTrue(percentile + " reported " + reported, reported >= expected);
+            Assert.assertTrue(percentile + " reported " + reported, reported <= expected * 1.03);
+        }
+        Assert.assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Small values are counted exactly, and an empty histogram reports 0.
+     */
+    @Test
+    public void smallAndEmptyValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(0);
+        histogram.record(7);
+        histogram.record(-5);
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(7, histogram.getValueAtPercentile(100));
+        Assert.assertEquals(2, histogram.getCountAtOrBelow(0));
+        Assert.assertEquals(3, histogram.getCountAtOrBelow(7));
+    }
+}
@@ -0,0 +1,327 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+/**
+ * Drives a mix of requests at SocialMediaController.startAPI() and reports throughput and latency percentiles per
+ * route. The app is started in-process on an ephemeral port against a freshly reset database, seeded with
+ * accounts and one message per account.
+ *
+ * Requests are scheduled open-loop: request i is due at start + i / rate no matter how earlier requests are doing,
+ * and each runs on its own virtual thread. Latency is measured from the time the request was due, not from when it
+ * was sent, so a stalled server shows up as latency on every request that should have gone out during the stall
+ * (avoiding coordinated omission). This is not a unit test; run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=LoadGenerator
+ *
+ * and tune it with system properties:
+ *   loadtest.rate            requests per second (default 200)
+ *   loadtest.durationSeconds measured duration (default 30)
+ *   loadtest.warmupSeconds   unmeasured warm-up at the same rate (default 5)
+ *   loadtest.accounts        seeded accounts (default 100)
+ *   loadtest.mix             relative weights (default register=5,login=10,post=20,get=35,list=10,patch=10,delete=10)
+ *   loadtest.virtualThreads  run the server in virtual-thread mode (default false)
+ */
+public class LoadGenerator {
+    private static final String DEFAULT_MIX = "register=5,login=10,post=20,get=35,list=10,patch=10,delete=10";
+    private static final String PASSWORD = "password";
+
+    enum Route {
+        REGISTER("POST /register"), LOGIN("POST /login"), POST("POST /messages"), GET("GET /messages/{id}"),
+        LIST("GET /messages?limit=50"), PATCH("PATCH /messages/{id}"), DELETE("DELETE /messages/{id}");
+
+        final String label;
+
+        Route(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Per-route results. Only requests due after the warm-up are recorded.
+     */
+    static final class RouteStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private final String baseUrl;
+    private final HttpClient webClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Route, RouteStats> stats = new EnumMap<>(Route.class);
+    private final RouteStats allRoutes = new RouteStats();
+    private final IdPool accountIds = new IdPool();
+    private final IdPool messageIds = new IdPool();
+    private final AtomicLong registrations = new AtomicLong();
+    private final Route[] mix;
+
+    LoadGenerator(String baseUrl, Route[] mix) {
+        this.baseUrl = baseUrl;
+        this.mix = mix;
+        this.webClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        for (Route route : Route.values()) {
+            stats.put(route, new RouteStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = AppConfig.getInt("loadtest.rate", 200);
+        int durationSeconds = AppConfig.getInt("loadtest.durationSeconds", 30);
+        int warmupSeconds = AppConfig.getInt("loadtest.warmupSeconds", 5);
+        int accounts = AppConfig.getInt("loadtest.accounts", 100);
+        Route[] mix = parseMix(AppConfig.getString("loadtest.mix", DEFAULT_MIX));
+        boolean virtualThreads = AppConfig.getBoolean("loadtest.virtualThreads", false);
+
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI(virtualThreads);
+        app.start(0);
+        try {
+            LoadGenerator generator = new LoadGenerator("http://localhost:" + app.port(), mix);
+            generator.seed(accounts);
+            long lag = generator.run(rate, warmupSeconds, durationSeconds);
+            generator.report(rate, durationSeconds, lag);
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * Expands "name=weight,..." into a table with one entry per unit of weight, so picking a random entry picks a
+     * route with the requested probability.
+     */
+    static Route[] parseMix(String mix) {
+        Route[] table = new Route[0];
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split("=");
+            Route route = Route.valueOf(nameAndWeight[0].trim().toUpperCase());
+            int weight = Integer.parseInt(nameAndWeight[1].trim());
+            int start = table.length;
+            table = Arrays.copyOf(table, start + weight);
+            Arrays.fill(table, start, table.length, route);
+        }
+        if (table.length == 0) {
+            throw new IllegalArgumentException("loadtest.mix has no weight");
+        }
+        return table;
+    }
+
+    private void seed(int accounts) throws Exception {
+        accountIds.add(1); // testuser1 from SocialMedia.sql
+        for (int i = 0; i < accounts; i++) {
+            send(Route.REGISTER, System.nanoTime(), false);
+        }
+        for (int accountId : accountIds.snapshot()) {
+            HttpResponse<String> response = webClient.send(post("/messages", "{\"posted_by\":" + accountId
+                    + ",\"message_text\":\"seed message\",\"time_posted_epoch\":1669947792}"),
+                    HttpResponse.BodyHandlers.ofString());
+            messageIds.add(objectMapper.readTree(response.body()).get("message_id").asInt());
+        }
+    }
+
+    /**
+     * Issues requests at a constant rate until the warm-up and measured duration have passed, then waits for the
+     * ones still in flight.
+     *
+     * @return the largest delay, in nanoseconds, between when a request was due and when it was handed to its
+     * thread. A large value means the generator itself could not keep up.
+     */
+    private long run(int rate, int warmupSeconds, int durationSeconds) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long maxLag = 0;
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long due = start + i * interval;
+                if (due >= end) {
+                    break;
+                }
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                maxLag = Math.max(maxLag, -wait);
+                Route route = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+                boolean measured = due >= measureFrom;
+                clients.execute(() -> send(route, due, measured));
+            }
+        }
+        return maxLag;
+    }
+
+    private void send(Route route, long due, boolean measured) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean ok;
+        try {
+            switch (route) {
+                case REGISTER: {
+                    String body = "{\"username\":\"load" + registrations.incrementAndGet() + "-" + due
+                            + "\",\"password\":\"" + PASSWORD + "\"}";
+                    HttpResponse<String> response = webClient.send(post("/register", body),
+                            HttpResponse.BodyHandlers.ofString());
+                    ok = response.statusCode() == 200;
+                    if (ok) {
+                        accountIds.add(objectMapper.readTree(response.body()).get("account_id").asInt());
+                    }
+                    break;
+                }
+                case LOGIN: {
+                    String body = "{\"username\":\"testuser1\",\"password\":\"" + PASSWORD + "\"}";
+                    ok = webClient.send(post("/login", body), HttpResponse.BodyHandlers.discarding())
+                            .statusCode() == 200;
+                    break;
+                }
+                case POST: {
+                    String body = "{\"posted_by\":" + accountIds.random(random) + ",\"message_text\":\"load message "
+                            + due + "\",\"time_posted_epoch\":" + System.currentTimeMillis() / 1000 + "}";
+                    HttpResponse<String> response = webClient.send(post("/messages", body),
+                            HttpResponse.BodyHandlers.ofString());
+                    ok = response.statusCode() == 200;
+                    if (ok) {
+                        JsonNode message = objectMapper.readTree(response.body());
+                        messageIds.add(message.get("message_id").asInt());
+                    }
+                    break;
+                }
+                case GET:
+                    ok = webClient.send(request("/messages/" + messageIds.random(random)).GET().build(),
+                            HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                    break;
+                case LIST:
+                    ok = webClient.send(request("/messages?limit=50").GET().build(),
+                            HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                    break;
+                case PATCH: {
+                    HttpRequest patch = request("/messages/" + messageIds.random(random))
+                            .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                                    "{\"message_text\":\"updated " + due + "\"}"))
+                            .build();
+                    int status = webClient.send(patch, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    ok = status == 200 || status == 400; // 400 when a concurrent delete got there first
+                    break;
+                }
+                case DELETE:
+                    ok = webClient.send(request("/messages/" + messageIds.take(random)).DELETE().build(),
+                            HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown route " + route);
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            ok = false;
+        }
+        if (measured) {
+            RouteStats routeStats = stats.get(route);
+            long latency = System.nanoTime() - due;
+            routeStats.latency.record(latency);
+            allRoutes.latency.record(latency);
+            if (!ok) {
+                routeStats.errors.increment();
+                allRoutes.errors.increment();
+            }
+        }
+    }
+
+    private void report(int rate, int durationSeconds, long maxLag) {
+        System.out.printf("target %d req/s for %d s, max scheduling lag %s ms%n", rate, durationSeconds,
+                LatencyHistogram.toMillis(maxLag));
+        System.out.printf("%-24s %8s %8s %8s %9s %9s %9s %9s %9s%n", "route", "count", "errors", "req/s", "p50 ms",
+                "p95 ms", "p99 ms", "p999 ms", "max ms");
+        for (Route route : Route.values()) {
+            RouteStats routeStats = stats.get(route);
+            if (routeStats.latency.getCount() > 0) {
+                print(route.label, routeStats, durationSeconds);
+            }
+        }
+        print("all", allRoutes, durationSeconds);
+    }
+
+    private static void print(String label, RouteStats routeStats, int durationSeconds) {
+        LatencyHistogram latency = routeStats.latency;
+        long errors = routeStats.errors.sum();
+        System.out.printf("%-24s %8d %8d %8.1f %9s %9s %9s %9s %9s%n", label, latency.getCount(), errors,
+                latency.getCount() / (double) durationSeconds,
+                LatencyHistogram.toMillis(latency.getValueAtPercentile(50)),
+                LatencyHistogram.toMillis(latency.getValueAtPercentile(95)),
+                LatencyHistogram.toMillis(latency.getValueAtPercentile(99)),
+                LatencyHistogram.toMillis(latency.getValueAtPercentile(99.9)),
+                LatencyHistogram.toMillis(latency.getMax()));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder().uri(URI.create(baseUrl + path));
+    }
+
+    private HttpRequest post(String path, String body) {
+        return request(path)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    /**
+     * A set of IDs that supports picking a random member, shared by the client threads.
+     */
+    static final class IdPool {
+        private int[] ids = new int[1024];
+        private int size;
+
+        synchronized void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * @return a random member, or 0 (an ID that never exists) if the pool is empty.
+         */
+        synchronized int random(ThreadLocalRandom random) {
+            return size == 0 ? 0 : ids[random.nextInt(size)];
+        }
+
+        /**
+         * Removes and returns a random member, or returns 0 if the pool is empty.
+         */
+        synchronized int take(ThreadLocalRandom random) {
+            if (size == 0) {
+                return 0;
+            }
+            int index = random.nextInt(size);
+            int id = ids[index];
+            ids[index] = ids[--size];
+            return id;
+        }
+
+        synchronized int[] snapshot() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageCache;
+
+public class MessageCacheTest {
+    MessageCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new MessageCache(3);
+    }
+
+    private static Message message(int messageId) {
+        return new Message(messageId, 1, "message " + messageId, 1669947792);
+    }
+
+    /**
+     * A cached message is returned on a hit, and hits and misses are counted.
+     */
+    @Test
+    public void getCountsHitsAndMisses() {
+        Assert.assertNull(cache.get(1));
+        cache.put(message(1));
+        Assert.assertEquals(message(1), cache.get(1));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * When the cache is full, an entry that has not been read since it was added is evicted before one that has.
+     */
+    @Test
+    public void evictsEntriesThatWereNotRecentlyUsed() {
+        cache.put(message(1));
+        cache.put(message(2));
+        cache.put(message(3));
+        cache.get(1);
+        cache.get(3);
+        cache.put(message(4));
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNull(cache.get(2));
+        Assert.assertNotNull(cache.get(1));
+        Assert.assertNotNull(cache.get(3));
+        Assert.assertNotNull(cache.get(4));
+    }
+
+    /**
+     * An invalidated message is no longer returned, and a value loaded before the invalidation is not cached.
+     */
+    @Test
+    public void invalidateRemovesEntryAndRejectsStaleLoads() {
+        cache.put(message(1));
+        long stamp = cache.stamp();
+        cache.invalidate(1);
+        Assert.assertNull(cache.get(1));
+
+        cache.putIfUnchanged(message(1), stamp);
+        Assert.assertNull(cache.get(1));
+
+        cache.putIfUnchanged(message(1), cache.stamp());
+        Assert.assertNotNull(cache.get(1));
+    }
+
+    /**
+     * Removing entries from the middle of a probe sequence keeps the remaining entries reachable.
+     */
+    @Test
+    public void survivesManyInsertsAndRemovals() {
+        MessageCache large = new MessageCache(64);
+        for (int i = 1; i <= 1000; i++) {
+            large.put(message(i));
+            if (i % 3 == 0) {
+                large.invalidate(i - 1);
+            }
+            Assert.assertEquals(message(i), large.get(i));
+        }
+        Assert.assertTrue(large.size() <= 64);
+    }
+
+    /**
+     * A large cache split into segments never holds more than its capacity and keeps its counts consistent, even
+     * with several threads reading and writing at once.
+     */
+    @Test
+    public void segmentedCacheStaysWithinCapacity() throws InterruptedException {
+        MessageCache large = new MessageCache(10000);
+        AtomicInteger wrongValues = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t * 100000;
+            threads[t] = new Thread(() -> {
+                for (int i = 1; i <= 20000; i++) {
+                    large.put(message(offset + i));
+                    // Another thread may already have evicted it, but it must never come back as another message
+                    Message cached = large.get(offset + i);
+                    if (cached != null && cached.getMessage_id() != offset + i) {
+                        wrongValues.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, wrongValues.get());
+        Assert.assertTrue(large.size() <= 10000);
+        Assert.assertEquals(80000 - large.size(), large.getEvictionCount());
+        Assert.assertEquals(80000, large.getHitCount() + large.getMissCount());
+    }
+}
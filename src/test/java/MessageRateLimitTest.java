@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageRateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and start the Javalin app with a burst of 2 and a rate of 1 per second
+     * for creating and updating messages.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("socialmedia.rateLimit.createMessage.perSecond", "1");
+        System.setProperty("socialmedia.rateLimit.createMessage.burst", "2");
+        System.setProperty("socialmedia.rateLimit.updateMessage.perSecond", "1");
+        System.setProperty("socialmedia.rateLimit.updateMessage.burst", "2");
+        ConnectionUtil.resetTestDatabase();
+        startApp();
+        webClient = HttpClient.newHttpClient();
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.rateLimit.createMessage.perSecond");
+        System.clearProperty("socialmedia.rateLimit.createMessage.burst");
+        System.clearProperty("socialmedia.rateLimit.updateMessage.perSecond");
+        System.clearProperty("socialmedia.rateLimit.updateMessage.burst");
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Content-Type", "application/json");
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(request("/login", null).POST(
+                HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username + "\", \"password\": \"password\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue(SocialMediaController.SESSION_TOKEN_HEADER).orElseThrow();
+    }
+
+    private String registerAndLogin(String username) throws IOException, InterruptedException {
+        webClient.send(request("/register", null).POST(HttpRequest.BodyPublishers.ofString(
+                "{\"username\": \"" + username + "\", \"password\": \"password\"}")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        return login(username);
+    }
+
+    private HttpResponse<String> postMessage(String token, int postedBy) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = request("/messages", token)
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> patchMessage(String token, int messageId) throws IOException, InterruptedException {
+        HttpRequest patchMessageRequest = request("/messages/" + messageId, token)
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .build();
+        return webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Once an account has used its burst on POST localhost:8080/messages, further posts are rejected until the
+     * bucket refills, while other accounts are unaffected.
+     *
+     * Expected Response:
+     *  Status Code: 429 with a Retry-After header for the third post
+     */
+    @Test
+    public void createMessageIsLimitedPerAccount() throws IOException, InterruptedException {
+        String token = login("testuser1");
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+        HttpResponse<String> limited = postMessage(token, 1);
+        Assert.assertEquals(429, limited.statusCode());
+        Assert.assertEquals("1", limited.headers().firstValue("Retry-After").orElse(null));
+
+        Assert.assertEquals(200, postMessage(registerAndLogin("testuser2"), 0).statusCode());
+
+        Thread.sleep(1100);
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+    }
+
+    /**
+     * Posts are charged to the session's account, so naming another account's posted_by is refused without using
+     * up that account's limit.
+     *
+     * Expected Response:
+     *  Status Code: 403 for the spoofed posts, then 200 for both of the real author's posts
+     */
+    @Test
+    public void spoofedPostedByIsNotCharged() throws IOException, InterruptedException {
+        String other = registerAndLogin("testuser2");
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(403, postMessage(other, 1).statusCode());
+        }
+        String token = login("testuser1");
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+        Assert.assertEquals(200, postMessage(token, 1).statusCode());
+    }
+
+    /**
+     * A post without a token naming an account that does not exist is rejected by the service and never given a
+     * bucket.
+     *
+     * Expected Response:
+     *  Status Code: 400 for every post by account 99, never 429
+     */
+    @Test
+    public void anonymousPostsChargeOnlyKnownAccounts() throws IOException, InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(400, postMessage(null, 99).statusCode());
+        }
+        Assert.assertEquals(200, postMessage(null, 1).statusCode());
+        Assert.assertEquals(200, postMessage(null, 1).statusCode());
+        Assert.assertEquals(429, postMessage(null, 1).statusCode());
+    }
+
+    /**
+     * PATCH localhost:8080/messages/{message_id} is limited by the session's account, and another account's
+     * refused updates do not count against the author.
+     *
+     * Expected Response:
+     *  Status Code: 429 for the third update, and 400 for a message that does not exist
+     */
+    @Test
+    public void updateMessageIsLimitedByCaller() throws IOException, InterruptedException {
+        String other = registerAndLogin("testuser2");
+        Assert.assertEquals(403, patchMessage(other, 1).statusCode());
+        Assert.assertEquals(403, patchMessage(other, 1).statusCode());
+
+        String token = login("testuser1");
+        Assert.assertEquals(200, patchMessage(token, 1).statusCode());
+        Assert.assertEquals(200, patchMessage(token, 1).statusCode());
+        HttpResponse<String> limited = patchMessage(token, 1);
+        Assert.assertEquals(429, limited.statusCode());
+        Assert.assertTrue(limited.headers().firstValue("Retry-After").isPresent());
+
+        Thread.sleep(1100);
+        Assert.assertEquals(400, patchMessage(token, 100).statusCode());
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageStreamTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private Message postMessage(int postedBy, String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<Stream<String>> subscribe(String path, String lastEventId)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        HttpResponse<Stream<String>> response = webClient.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+        Assert.assertEquals(200, response.statusCode());
+        return response;
+    }
+
+    /**
+     * Reads the fields of the next event, skipping heartbeat comments.
+     */
+    private static Map<String, String> nextEvent(Iterator<String> lines) {
+        Map<String, String> fields = new HashMap<>();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.isEmpty()) {
+                if (!fields.isEmpty()) {
+                    return fields;
+                }
+            } else if (!line.startsWith(":")) {
+                int separator = line.indexOf(':');
+                fields.put(line.substring(0, separator), line.substring(separator + 1).trim());
+            }
+        }
+        throw new AssertionError("Stream ended");
+    }
+
+    /**
+     * Creating, updating and deleting a message are pushed to a subscriber of GET localhost:8080/messages/stream
+     * in order, each with the message as it is after the change.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: created, updated and deleted events
+     */
+    @Test(timeout = 30000)
+    public void streamsEveryChange() throws IOException, InterruptedException {
+        HttpResponse<Stream<String>> response = subscribe("/messages/stream", null);
+        Iterator<String> events = response.body().iterator();
+
+        Message created = postMessage(1, "hello");
+        webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessage_id()))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessage_id()))
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        Map<String, String> event = nextEvent(events);
+        Assert.assertEquals("created", event.get("event"));
+        Assert.assertEquals(created, objectMapper.readValue(event.get("data"), Message.class));
+        event = nextEvent(events);
+        Assert.assertEquals("updated", event.get("event"));
+        Assert.assertEquals("edited", objectMapper.readValue(event.get("data"), Message.class).getMessage_text());
+        event = nextEvent(events);
+        Assert.assertEquals("deleted", event.get("event"));
+        response.body().close();
+    }
+
+    /**
+     * GET localhost:8080/accounts/2/messages/stream only receives messages posted by account 2.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one created event, for account 2's message
+     */
+    @Test(timeout = 30000)
+    public void accountStreamIsFiltered() throws IOException, InterruptedException {
+        webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"user2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<Stream<String>> response = subscribe("/accounts/2/messages/stream", null);
+        Iterator<String> events = response.body().iterator();
+
+        postMessage(1, "from account 1");
+        Message fromTwo = postMessage(2, "from account 2");
+
+        Map<String, String> event = nextEvent(events);
+        Assert.assertEquals(fromTwo, objectMapper.readValue(event.get("data"), Message.class));
+        response.body().close();
+    }
+
+    /**
+     * A client reconnecting with Last-Event-ID first receives the events it missed, and a client sending an ID this
+     * server did not issue is told to reset.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the missed created event, or a reset event
+     */
+    @Test(timeout = 30000)
+    public void resumesFromLastEventId() throws IOException, InterruptedException {
+        HttpResponse<Stream<String>> response = subscribe("/messages/stream", null);
+        postMessage(1, "first");
+        String lastEventId = nextEvent(response.body().iterator()).get("id");
+        response.body().close();
+
+        Message missed = postMessage(1, "sent while disconnected");
+
+        response = subscribe("/messages/stream", lastEventId);
+        Map<String, String> event = nextEvent(response.body().iterator());
+        Assert.assertEquals(missed, objectMapper.readValue(event.get("data"), Message.class));
+        response.body().close();
+
+        response = subscribe("/messages/stream", "not-an-id");
+        Assert.assertEquals("reset", nextEvent(response.body().iterator()).get("event"));
+        response.body().close();
+    }
+}
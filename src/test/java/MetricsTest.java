@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * After a few requests, GET localhost:8080/metrics reports them by route, along with the DAO query timers and
+     * the connection pool gauges.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with a line for each of the above
+     */
+    @Test
+    public void metricsReportRoutesQueriesAndPool() throws Exception {
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+        Assert.assertEquals(404, get("/no/such/route").statusCode());
+
+        HttpResponse<String> response = get("/metrics");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain"));
+        String body = response.body();
+
+        Assert.assertTrue(body, body.matches("(?s).*socialmedia_http_requests_total\\{method=\"GET\","
+                + "route=\"/?messages/\\{message_id}\",status=\"2xx\"} \\d+\n.*"));
+        Assert.assertTrue(body, body.matches("(?s).*socialmedia_http_requests_total\\{method=\"GET\","
+                + "route=\"unmatched\",status=\"4xx\"} \\d+\n.*"));
+        Assert.assertTrue(body, body.contains(
+                "socialmedia_db_query_duration_seconds{query=\"MessageDAO.getMessageById\",quantile=\"0.99\"}"));
+        Assert.assertTrue(body, body.contains("socialmedia_db_pool_acquire_duration_seconds_count "));
+        Assert.assertTrue(body, body.contains("socialmedia_db_pool_max_connections "));
+        Assert.assertTrue(body, body.contains("socialmedia_http_requests_in_flight "));
+        Assert.assertTrue(body, body.matches("(?s).*\nsocialmedia_message_cache_hits [1-9]\\d*\n.*"));
+        Assert.assertTrue(body, body.matches("(?s).*\nsocialmedia_message_cache_misses [1-9]\\d*\n.*"));
+        Assert.assertTrue(body, body.contains("socialmedia_message_cache_capacity "));
+        Assert.assertFalse(body, body.contains("/no/such/route"));
+
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                new ObjectName("SocialMedia:type=Timer,family=socialmedia_db_query,"
+                        + "name=\"MessageDAO.getMessageById\"")));
+    }
+
+    /**
+     * A registry counts requests by status class, counts 5xx responses as errors and tracks requests in flight.
+     */
+    @Test
+    public void registryCountsStatusClassesAndInFlight() {
+        Metrics metrics = new Metrics();
+        metrics.requestStarted();
+        metrics.requestStarted();
+        Assert.assertEquals(2, metrics.getInFlightRequests());
+        metrics.requestFinished("GET", "/things", 200, 1_000_000);
+        metrics.requestFinished("GET", "/things", 503, 3_000_000);
+        Assert.assertEquals(0, metrics.getInFlightRequests());
+
+        String body = metrics.scrape();
+        Assert.assertTrue(body, body.contains(
+                "socialmedia_http_requests_total{method=\"GET\",route=\"/things\",status=\"2xx\"} 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "socialmedia_http_requests_total{method=\"GET\",route=\"/things\",status=\"5xx\"} 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "socialmedia_http_request_errors_total{method=\"GET\",route=\"/things\"} 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "socialmedia_http_request_duration_seconds_count{method=\"GET\",route=\"/things\"} 2\n"));
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.RateLimiter;
+
+public class RateLimiterTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * An idle account may make burst requests at once, is then told to wait one emission interval, and regains one
+     * request per interval.
+     */
+    @Test
+    public void allowsBurstThenRefills() {
+        AtomicLong clock = new AtomicLong();
+        RateLimiter limiter = new RateLimiter(2, 3, 100, clock::get);
+
+        Assert.assertEquals(0, limiter.tryAcquire(1));
+        Assert.assertEquals(0, limiter.tryAcquire(1));
+        Assert.assertEquals(0, limiter.tryAcquire(1));
+        Assert.assertEquals(SECOND / 2, limiter.tryAcquire(1));
+        Assert.assertEquals(0, limiter.tryAcquire(2)); // Other accounts have their own bucket
+
+        clock.addAndGet(SECOND / 2);
+        Assert.assertEquals(0, limiter.tryAcquire(1));
+        Assert.assertEquals(SECOND / 2, limiter.tryAcquire(1));
+    }
+
+    /**
+     * Refilled buckets are dropped once the map is full, and while every bucket is in use new accounts are let
+     * through untracked instead of growing the map.
+     */
+    @Test
+    public void mapStaysBounded() {
+        AtomicLong clock = new AtomicLong();
+        RateLimiter limiter = new RateLimiter(1, 1, 2, clock::get);
+        limiter.tryAcquire(1);
+        limiter.tryAcquire(2);
+        clock.addAndGet(SECOND / 2);
+
+        Assert.assertEquals(0, limiter.tryAcquire(3));
+        Assert.assertEquals(0, limiter.tryAcquire(3));
+        Assert.assertEquals(2, limiter.size());
+
+        clock.addAndGet(SECOND);
+        Assert.assertEquals(0, limiter.tryAcquire(3));
+        Assert.assertEquals(1, limiter.size());
+        Assert.assertTrue(limiter.tryAcquire(3) > 0);
+    }
+
+    /**
+     * Threads racing on one account are never allowed more than the burst between them.
+     */
+    @Test
+    public void concurrentCallersShareOneBucket() throws Exception {
+        RateLimiter limiter = new RateLimiter(1e-3, 500, 100, () -> 0L);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    int allowed = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        if (limiter.tryAcquire(1) == 0) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            int allowed = 0;
+            for (Future<Integer> future : futures) {
+                allowed += future.get();
+            }
+            Assert.assertEquals(500, allowed);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
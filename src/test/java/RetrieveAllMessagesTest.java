@@ -3,9 +3,6 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,6 +15,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.Repositories;
 import Model.Message;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
@@ -100,14 +98,8 @@ public class RetrieveAllMessagesTest {
 
 
     private void removeInitialMessage(){
-        try {
-                Connection conn = ConnectionUtil.getConnection();
-                PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?");
-                ps.setInt(1, 1);
-                ps.executeUpdate();
-        } catch (SQLException e) {
-                e.printStackTrace();
-        }
+        // Through the repository, so the message is removed from whichever store or shard holds it
+        Repositories.messages().deleteMessageById(1);
     }
 
 }
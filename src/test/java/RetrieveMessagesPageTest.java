@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.Repositories;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private void postMessage(String text, long timePostedEpoch) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + timePostedEpoch + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Following next_cursor through GET localhost:8080/messages?limit=2 visits every message exactly once, in
+     * time_posted_epoch order.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON pages of at most 2 messages, the last with a null next_cursor
+     */
+    @Test
+    public void pagesCoverAllMessagesInOrder() throws IOException, InterruptedException {
+        postMessage("third", 1669947794);
+        postMessage("second", 1669947793);
+
+        // Account 1's messages are numbered 1, 1 + N, 1 + 2N... when spread across N shards
+        int step = Repositories.MESSAGE_SHARDS;
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(1 + 2 * step, 1, "second", 1669947793));
+        expectedResult.add(new Message(1 + step, 1, "third", 1669947794));
+
+        HttpResponse<String> response = get("/messages?limit=2");
+        Assert.assertEquals(200, response.statusCode());
+        MessagePage firstPage = objectMapper.readValue(response.body(), MessagePage.class);
+        Assert.assertEquals(expectedResult.subList(0, 2), firstPage.getMessages());
+        Assert.assertNotNull(firstPage.getNext_cursor());
+
+        response = get("/messages?limit=2&after=" + firstPage.getNext_cursor());
+        Assert.assertEquals(200, response.statusCode());
+        MessagePage secondPage = objectMapper.readValue(response.body(), MessagePage.class);
+        Assert.assertEquals(expectedResult.subList(2, 3), secondPage.getMessages());
+        Assert.assertNull(secondPage.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=1 returns only the first message
+     * posted by that account.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON page with a single message and a next_cursor
+     */
+    @Test
+    public void accountMessagesPage() throws IOException, InterruptedException {
+        postMessage("later", 1669947800);
+
+        HttpResponse<String> response = get("/accounts/1/messages?limit=1");
+        Assert.assertEquals(200, response.statusCode());
+        MessagePage page = objectMapper.readValue(response.body(), MessagePage.class);
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, page.getMessages());
+        Assert.assertNotNull(page.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request with a malformed cursor or an out-of-range limit is rejected.
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidPageParameters() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?after=not-a-cursor").statusCode());
+        Assert.assertEquals(400, get("/messages?limit=0").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/messages?limit=abc").statusCode());
+    }
+}
@@ -0,0 +1,133 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigratorTest {
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * After a reset every migration is recorded once, and running the migrator again changes nothing.
+     */
+    @Test
+    public void migrationsAreAppliedOnce() throws SQLException {
+        int version = SchemaMigrator.migrate();
+        Assert.assertEquals(3, version);
+
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM schema_version");
+            rs.next();
+            Assert.assertEquals(3, rs.getInt(1));
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Two instances starting together both end at the latest version, and the version they both found missing is
+     * recorded only once.
+     */
+    @Test
+    public void concurrentMigrationsRecordEachVersionOnce() throws Exception {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.createStatement().execute("DELETE FROM schema_version WHERE version = 3");
+        } finally {
+            connection.close();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(SchemaMigrator::migrate);
+            Future<Integer> second = executor.submit(SchemaMigrator::migrate);
+            Assert.assertEquals(3, (int) first.get(30, TimeUnit.SECONDS));
+            Assert.assertEquals(3, (int) second.get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        connection = ConnectionUtil.getConnection();
+        try {
+            ResultSet rs = connection.createStatement().executeQuery(
+                    "SELECT COUNT(*) FROM schema_version WHERE version = 3");
+            rs.next();
+            Assert.assertEquals(1, rs.getInt(1));
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * While another instance holds the migration lock the migrator waits, and it finishes once the lock is released.
+     */
+    @Test
+    public void migrationWaitsForTheLock() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Connection lock = ConnectionUtil.getConnection();
+        try {
+            lock.setAutoCommit(false);
+            lock.createStatement().executeQuery("SELECT id FROM schema_lock WHERE id = 1 FOR UPDATE");
+            Future<Integer> migration = executor.submit(SchemaMigrator::migrate);
+            try {
+                migration.get(500, TimeUnit.MILLISECONDS);
+                Assert.fail("Migration ran while another connection held the lock");
+            } catch (TimeoutException expected) {
+            }
+            lock.rollback();
+            Assert.assertEquals(3, (int) migration.get(30, TimeUnit.SECONDS));
+        } finally {
+            lock.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A keyset page of an account's messages is read in order from the composite index, without a table scan or
+     * a sort.
+     */
+    @Test
+    public void accountMessagesPageUsesIndex() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.createStatement().execute("INSERT INTO account (username, password) "
+                    + "SELECT 'user' || x, 'password' FROM SYSTEM_RANGE(2, 50)");
+            connection.createStatement().execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "SELECT MOD(x, 50) + 1, 'message', 1669947792 + x FROM SYSTEM_RANGE(1, 2000)");
+            connection.createStatement().execute("ANALYZE");
+            ResultSet rs = connection.createStatement().executeQuery("EXPLAIN SELECT * FROM message "
+                    + "USE INDEX (message_posted_by_time_idx) WHERE posted_by = 1 AND time_posted_epoch >= 1669947800 "
+                    + "AND (time_posted_epoch > 1669947800 OR message_id > 5) "
+                    + "ORDER BY posted_by, time_posted_epoch, message_id LIMIT 10");
+            rs.next();
+            String plan = rs.getString(1).toUpperCase();
+            Assert.assertTrue(plan, plan.contains("MESSAGE_POSTED_BY_TIME_IDX: POSTED_BY = 1"));
+            Assert.assertTrue(plan, plan.contains("INDEX SORTED"));
+
+            rs = connection.createStatement().executeQuery("EXPLAIN SELECT * FROM message "
+                    + "WHERE time_posted_epoch >= 1669947800 AND (time_posted_epoch > 1669947800 OR message_id > 5) "
+                    + "ORDER BY time_posted_epoch, message_id LIMIT 10");
+            rs.next();
+            plan = rs.getString(1).toUpperCase();
+            Assert.assertTrue(plan, plan.contains("MESSAGE_TIME_IDX: TIME_POSTED_EPOCH >="));
+            Assert.assertTrue(plan, plan.contains("INDEX SORTED"));
+        } finally {
+            connection.close();
+        }
+    }
+}
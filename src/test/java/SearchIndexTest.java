@@ -0,0 +1,130 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryStore;
+import Model.Account;
+import Model.Message;
+import Service.MessageService;
+import Service.SearchIndex;
+
+public class SearchIndexTest {
+    SearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new SearchIndex();
+    }
+
+    private static Message message(int messageId, String text) {
+        return new Message(messageId, 1, text, 1669947792);
+    }
+
+    /**
+     * Terms are split at punctuation, lower-cased and de-duplicated.
+     */
+    @Test
+    public void termsIgnoreCaseAndPunctuation() {
+        Assert.assertEquals(List.of("hello", "world", "42"), SearchIndex.terms("Hello, WORLD! hello-42"));
+        Assert.assertTrue(SearchIndex.terms(" ...! ").isEmpty());
+    }
+
+    /**
+     * Only messages containing every term match, in ascending ID order, and afterId and limit page through them.
+     */
+    @Test
+    public void searchIntersectsTermsAndPages() {
+        index.add(message(1, "red apple"));
+        index.add(message(2, "green apple"));
+        index.add(message(3, "red cherry"));
+        index.add(message(5, "red apple pie"));
+        index.add(message(300, "apple red"));
+
+        Assert.assertArrayEquals(new int[] {1, 5, 300}, index.search(List.of("red", "apple"), 0, 10));
+        Assert.assertArrayEquals(new int[] {1, 5}, index.search(List.of("apple", "red"), 0, 2));
+        Assert.assertArrayEquals(new int[] {300}, index.search(List.of("red", "apple"), 5, 2));
+        Assert.assertArrayEquals(new int[0], index.search(List.of("red", "banana"), 0, 10));
+    }
+
+    /**
+     * Out-of-order additions and removals keep the posting lists sorted, and a removed message no longer matches.
+     */
+    @Test
+    public void addAndRemoveOutOfOrder() {
+        index.add(message(200, "word"));
+        index.add(message(7, "word"));
+        index.add(message(100000, "word"));
+        index.add(message(7, "word"));
+        Assert.assertArrayEquals(new int[] {7, 200, 100000}, index.search(List.of("word"), 0, 10));
+
+        index.remove(message(200, "word"));
+        Assert.assertArrayEquals(new int[] {7, 100000}, index.search(List.of("word"), 0, 10));
+
+        index.remove(message(7, "word"));
+        index.remove(message(100000, "word"));
+        Assert.assertEquals(0, index.getTermCount());
+    }
+
+    /**
+     * Consecutive IDs cost one byte each in a posting list.
+     */
+    @Test
+    public void postingListsAreCompressed() {
+        for (int id = 1; id <= 10000; id++) {
+            index.add(message(id, "common"));
+        }
+        Assert.assertEquals(10000, index.getPostingBytes());
+        Assert.assertEquals(10000, index.search(List.of("common"), 0, 20000).length);
+    }
+
+    /**
+     * IDs added in any order are kept sorted across blocks, and removing every other one leaves the rest.
+     */
+    @Test
+    public void outOfOrderIdsSpanBlocks() {
+        int[] expected = new int[1000];
+        for (int id = 2; id <= 1000; id += 2) {
+            index.add(message(id, "word"));
+        }
+        for (int id = 999; id >= 1; id -= 2) {
+            index.add(message(id, "word"));
+        }
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i + 1;
+        }
+        Assert.assertArrayEquals(expected, index.search(List.of("word"), 0, 2000));
+        Assert.assertArrayEquals(new int[] {501, 502}, index.search(List.of("word"), 500, 2));
+
+        for (int id = 1; id <= 1000; id += 2) {
+            index.remove(message(id, "word"));
+        }
+        int[] evens = new int[500];
+        for (int i = 0; i < evens.length; i++) {
+            evens[i] = 2 * (i + 1);
+        }
+        Assert.assertArrayEquals(evens, index.search(List.of("word"), 0, 2000));
+    }
+
+    /**
+     * An edit made through MessageService removes the terms of the text it replaced, so repeated edits do not grow
+     * the index.
+     */
+    @Test
+    public void editsDropTheTermsTheyReplace() {
+        InMemoryStore store = new InMemoryStore();
+        store.registerAccount(new Account("testuser1", "password"));
+        MessageService messageService = new MessageService(store);
+        Message added = messageService.addMessage(new Message(1, "before", 1669947792));
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals("edit" + i, messageService.updateMessageById(
+                    new Message(added.getMessage_id(), 0, "edit" + i, 0)).getMessage_text());
+        }
+
+        SearchIndex searchIndex = messageService.getSearchIndex();
+        Assert.assertEquals(1, searchIndex.getTermCount());
+        Assert.assertArrayEquals(new int[0], searchIndex.search(List.of("before"), 0, 10));
+        Assert.assertArrayEquals(new int[] {added.getMessage_id()}, searchIndex.search(List.of("edit49"), 0, 10));
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private Message postMessage(String text, long timePostedEpoch) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + timePostedEpoch + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder, String path)
+            throws IOException, InterruptedException {
+        return webClient.send(builder.uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private MessagePage search(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(), "/messages/search?" + query);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    /**
+     * Messages already in the database when the app starts are indexed, and matching ignores case.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON page containing the seeded message
+     */
+    @Test
+    public void findsMessagesPresentAtStartup() throws IOException, InterruptedException {
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, search("q=MESSAGE").getMessages());
+    }
+
+    /**
+     * Every word of the query must appear, and next_cursor pages through the matches in message_id order.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON pages of at most 1 message, the last with a null next_cursor
+     */
+    @Test
+    public void multiTermQueryPagesInIdOrder() throws IOException, InterruptedException {
+        Message first = postMessage("red apple", 1669947800);
+        postMessage("green apple", 1669947801);
+        Message second = postMessage("Apple, red and ripe", 1669947790);
+
+        MessagePage page = search("q=red%20apple&limit=1");
+        Assert.assertEquals(List.of(first), page.getMessages());
+        Assert.assertNotNull(page.getNext_cursor());
+
+        page = search("q=red%20apple&limit=1&after=" + page.getNext_cursor());
+        Assert.assertEquals(List.of(second), page.getMessages());
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    /**
+     * Updated and deleted messages are reflected in search results straight away.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON page matching only the current text of each message
+     */
+    @Test
+    public void updatesAndDeletesAreIndexed() throws IOException, InterruptedException {
+        Message edited = postMessage("old words", 1669947800);
+        Message deleted = postMessage("old news", 1669947801);
+
+        send(HttpRequest.newBuilder().method("PATCH",
+                HttpRequest.BodyPublishers.ofString("{\"message_text\": \"new words\"}"))
+                .header("Content-Type", "application/json"), "/messages/" + edited.getMessage_id());
+        send(HttpRequest.newBuilder().DELETE(), "/messages/" + deleted.getMessage_id());
+
+        Assert.assertTrue(search("q=old").getMessages().isEmpty());
+        Assert.assertEquals(List.of(new Message(edited.getMessage_id(), 1, "new words", 1669947800)),
+                search("q=new").getMessages());
+    }
+
+    /**
+     * A request without a query, or with an invalid limit, is rejected.
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidSearchParameters() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send(HttpRequest.newBuilder(), "/messages/search").statusCode());
+        Assert.assertEquals(400, send(HttpRequest.newBuilder(), "/messages/search?q=%21%21").statusCode());
+        Assert.assertEquals(400, send(HttpRequest.newBuilder(), "/messages/search?q=a&limit=0").statusCode());
+    }
+}
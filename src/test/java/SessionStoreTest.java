@@ -0,0 +1,52 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.SessionStore;
+
+public class SessionStoreTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * An issued token resolves to its account until it expires or is revoked, and unknown tokens resolve to
+     * nothing.
+     */
+    @Test
+    public void tokensResolveUntilExpiredOrRevoked() {
+        AtomicLong clock = new AtomicLong();
+        SessionStore sessions = new SessionStore(60, clock::get);
+        String first = sessions.issue(1);
+        String second = sessions.issue(2);
+
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(1, sessions.resolve(first));
+        Assert.assertEquals(2, sessions.resolve(second));
+        Assert.assertEquals(SessionStore.NO_ACCOUNT, sessions.resolve("not-a-token"));
+
+        sessions.revoke(second);
+        Assert.assertEquals(SessionStore.NO_ACCOUNT, sessions.resolve(second));
+
+        clock.addAndGet(60 * SECOND);
+        Assert.assertEquals(SessionStore.NO_ACCOUNT, sessions.resolve(first));
+        Assert.assertEquals(0, sessions.size());
+    }
+
+    /**
+     * Expired sessions that are never presented again are swept out when later sessions are issued.
+     */
+    @Test
+    public void expiredSessionsAreSwept() {
+        AtomicLong clock = new AtomicLong();
+        SessionStore sessions = new SessionStore(1, clock::get);
+        for (int accountId = 1; accountId <= 100; accountId++) {
+            sessions.issue(accountId);
+        }
+        Assert.assertEquals(100, sessions.size());
+
+        clock.addAndGet(61 * SECOND);
+        String token = sessions.issue(1);
+        Assert.assertEquals(1, sessions.size());
+        Assert.assertEquals(1, sessions.resolve(token));
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Content-Type", "application/json");
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder) throws IOException, InterruptedException {
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(request("/login", null).POST(HttpRequest.BodyPublishers.ofString(
+                "{\"username\": \"" + username + "\", \"password\": \"password\"}")));
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue(SocialMediaController.SESSION_TOKEN_HEADER).orElseThrow();
+    }
+
+    private HttpResponse<String> postMessage(String token, String body) throws IOException, InterruptedException {
+        return send(request("/messages", token).POST(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    /**
+     * A token from POST localhost:8080/login stands in for posted_by when creating a message.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the message, posted by the logged in account
+     */
+    @Test
+    public void tokenSuppliesPostedBy() throws IOException, InterruptedException {
+        String token = login("testuser1");
+
+        HttpResponse<String> response = postMessage(token,
+                "{\"message_text\": \"signed in\", \"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(200, response.statusCode());
+        Message message = objectMapper.readValue(response.body(), Message.class);
+        Assert.assertEquals(1, message.getPosted_by());
+    }
+
+    /**
+     * A token cannot be used to post, update or delete as another account, and an unknown token is rejected.
+     *
+     * Expected Response:
+     *  Status Code: 403 for another account's messages, 401 for an unknown token
+     */
+    @Test
+    public void tokenIsCheckedAgainstTheAccount() throws IOException, InterruptedException {
+        send(request("/register", null).POST(HttpRequest.BodyPublishers.ofString(
+                "{\"username\": \"testuser2\", \"password\": \"password\"}")));
+        String token = login("testuser2");
+
+        Assert.assertEquals(403, postMessage(token,
+                "{\"posted_by\": 1, \"message_text\": \"spoofed\", \"time_posted_epoch\": 1669947792}").statusCode());
+        Assert.assertEquals(403, send(request("/messages/1", token).method("PATCH",
+                HttpRequest.BodyPublishers.ofString("{\"message_text\": \"spoofed\"}"))).statusCode());
+        Assert.assertEquals(403, send(request("/messages/1", token).DELETE()).statusCode());
+        Assert.assertEquals("message 1 should survive the refused delete",
+                200, send(request("/messages/1", null).GET()).statusCode());
+        Assert.assertEquals(401, postMessage("not-a-token",
+                "{\"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}").statusCode());
+
+        HttpResponse<String> own = postMessage(token,
+                "{\"message_text\": \"mine\", \"time_posted_epoch\": 1669947792}");
+        Message message = objectMapper.readValue(own.body(), Message.class);
+        Assert.assertEquals(200, send(request("/messages/" + message.getMessage_id(), token).DELETE()).statusCode());
+    }
+
+    /**
+     * Message writes without a token are accepted as before, and refused once
+     * socialmedia.session.anonymousWrites=false, while reads stay open.
+     *
+     * Expected Response:
+     *  Status Code: 200 for an anonymous post by default, then 401 for every write without a token
+     */
+    @Test
+    public void writesRequireTokenWhenAnonymousWritesAreOff() throws IOException, InterruptedException {
+        String body = "{\"posted_by\": 1, \"message_text\": \"anonymous\", \"time_posted_epoch\": 1669947792}";
+        Assert.assertEquals(200, postMessage(null, body).statusCode());
+
+        app.stop();
+        System.setProperty("socialmedia.session.anonymousWrites", "false");
+        try {
+            socialMediaController = new SocialMediaController();
+            app = socialMediaController.startAPI();
+            app.start(8080);
+            Thread.sleep(1000);
+            Assert.assertEquals(401, postMessage(null, body).statusCode());
+            Assert.assertEquals(401, send(request("/messages/batch", null).POST(
+                    HttpRequest.BodyPublishers.ofString("[" + body + "]"))).statusCode());
+            Assert.assertEquals(401, send(request("/messages/1", null).method("PATCH",
+                    HttpRequest.BodyPublishers.ofString("{\"message_text\": \"anonymous\"}"))).statusCode());
+            Assert.assertEquals(401, send(request("/messages/1", null).DELETE()).statusCode());
+            Assert.assertEquals(200, send(request("/messages/1", null).GET()).statusCode());
+        } finally {
+            System.clearProperty("socialmedia.session.anonymousWrites");
+        }
+    }
+
+    /**
+     * After POST localhost:8080/logout the token no longer works, and validations show up in GET /metrics.
+     *
+     * Expected Response:
+     *  Status Code: 401 after logout
+     */
+    @Test
+    public void logoutRevokesToken() throws IOException, InterruptedException {
+        String token = login("testuser1");
+        Assert.assertEquals(200, send(request("/logout", token).POST(HttpRequest.BodyPublishers.noBody()))
+                .statusCode());
+        Assert.assertEquals(401, postMessage(token,
+                "{\"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}").statusCode());
+
+        String metrics = send(request("/metrics", null).GET()).body();
+        Assert.assertTrue(metrics, metrics.contains("socialmedia_session_duration_seconds_count{operation=\"validate\"}"));
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.InMemoryStore;
+import DAO.Repositories;
+import DAO.ShardedMessageRepository;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DatabaseUnavailableException;
+import Util.PageCursor;
+
+public class ShardedMessageRepositoryTest {
+    private static int databases;
+
+    InMemoryStore accounts;
+    IntFunction<Connection> connections;
+    ShardedMessageRepository repository;
+
+    /**
+     * Before every test, open three fresh in-memory shards and register four accounts, so accounts 1 and 4 share
+     * shard 1.
+     */
+    @Before
+    public void setUp() {
+        accounts = new InMemoryStore();
+        for (int i = 1; i <= 4; i++) {
+            accounts.registerAccount(new Account("testuser" + i, "password"));
+        }
+        connections = shards("shardtest" + databases++);
+        repository = new ShardedMessageRepository(3, connections, accounts);
+    }
+
+    private static IntFunction<Connection> shards(String name) {
+        return shard -> {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:" + name + "-" + shard + ";DB_CLOSE_DELAY=-1");
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * Messages land in their poster's shard, and their IDs name that shard, so lookups, updates and deletes by ID
+     * find them again.
+     */
+    @Test
+    public void messagesAreRoutedByAccountAndId() {
+        List<Message> added = new ArrayList<>();
+        for (int postedBy = 1; postedBy <= 4; postedBy++) {
+            Message message = repository.addMessage(new Message(postedBy, "from " + postedBy, 1669947792L));
+            Assert.assertEquals(postedBy % 3, message.getMessage_id() % 3);
+            added.add(message);
+        }
+        Assert.assertNull(repository.addMessage(new Message(99, "no such account", 1669947792L)));
+
+        Message first = added.get(0);
+        Assert.assertEquals(first, repository.getMessageById(first.getMessage_id()));
+        Assert.assertEquals(first, repository.updateMessageById(new Message(first.getMessage_id(), 0, "edited", 0)));
+        Assert.assertEquals("edited", repository.deleteMessageById(first.getMessage_id()).getMessage_text());
+        Assert.assertNull(repository.getMessageById(first.getMessage_id()));
+
+        Assert.assertEquals(List.of(added.get(3)), repository.getAllMessagesByAccountId(4));
+    }
+
+    /**
+     * Reads over every shard come back merged in (time_posted_epoch, message_id) order, and pages walk that order
+     * without gaps or repeats.
+     */
+    @Test
+    public void scatterGatherMergesInOrder() throws IOException {
+        List<Message> added = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            added.add(repository.addMessage(new Message(1 + i % 4, "message " + i, 1669947792L + (i * 7) % 11)));
+        }
+        List<Message> expected = new ArrayList<>(added);
+        expected.sort(Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id));
+        Assert.assertEquals(expected, repository.getAllMessages());
+
+        List<Message> paged = new ArrayList<>();
+        PageCursor after = null;
+        List<Message> page;
+        while (!(page = repository.getMessagesPage(after, 4)).isEmpty()) {
+            paged.addAll(page);
+            Message last = page.get(page.size() - 1);
+            after = new PageCursor(last.getTime_posted_epoch(), last.getMessage_id());
+        }
+        Assert.assertEquals(expected, paged);
+
+        int[] ids = added.stream().mapToInt(Message::getMessage_id).sorted().limit(5).toArray();
+        Assert.assertArrayEquals(ids, repository.getMessagesByIds(ids).stream().mapToInt(Message::getMessage_id)
+                .toArray());
+
+        List<Message> streamed = new ArrayList<>();
+        repository.streamAllMessages(streamed::add);
+        streamed.sort(Comparator.comparingLong(Message::getTime_posted_epoch)
+                .thenComparingInt(Message::getMessage_id));
+        Assert.assertEquals(expected, streamed);
+    }
+
+    /**
+     * A batch spanning shards keeps its order, and a batch naming an unknown account adds nothing to any shard.
+     */
+    @Test
+    public void batchesSpanShardsAllOrNothing() {
+        List<Message> batch = Arrays.asList(new Message(2, "a", 1L), new Message(1, "b", 2L), new Message(3, "c", 3L));
+        List<Message> added = repository.addMessages(batch);
+        Assert.assertEquals(3, added.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Assert.assertEquals(batch.get(i).getMessage_text(), added.get(i).getMessage_text());
+            Assert.assertEquals(batch.get(i).getPosted_by() % 3, added.get(i).getMessage_id() % 3);
+        }
+
+        Assert.assertNull(repository.addMessages(Arrays.asList(new Message(2, "d", 4L), new Message(99, "e", 5L))));
+        Assert.assertEquals(3, repository.getAllMessages().size());
+    }
+
+    /**
+     * A shard that fails a read fails the whole scatter-gather instead of being merged in as empty, so pages never
+     * skip its rows.
+     */
+    @Test
+    public void failedShardFailsTheRead() throws SQLException {
+        for (int postedBy = 1; postedBy <= 3; postedBy++) {
+            repository.addMessage(new Message(postedBy, "from " + postedBy, 1669947792L));
+        }
+        try (Connection connection = connections.apply(repository.shardOfAccount(2))) {
+            connection.createStatement().execute("DROP TABLE message");
+        }
+
+        List<Runnable> reads = List.of(
+                () -> repository.getAllMessages(),
+                () -> repository.getMessagesPage(null, 10),
+                () -> repository.getMessagesByIds(new int[] {1, 2, 3}),
+                () -> repository.getMessagesPageByAccountId(2, null, 10));
+        for (Runnable read : reads) {
+            try {
+                read.run();
+                Assert.fail("A read touching the broken shard should fail");
+            } catch (DatabaseUnavailableException expected) {
+                // Expected
+            }
+        }
+        Assert.assertEquals(1, repository.getAllMessagesByAccountId(1).size());
+    }
+
+    /**
+     * Shards remember how many there were, so reopening them with a different count fails instead of routing
+     * existing IDs to the wrong shard.
+     */
+    @Test
+    public void shardCountCannotChange() {
+        Assert.assertEquals(3, new ShardedMessageRepository(3, connections, accounts).getShardCount());
+        try {
+            new ShardedMessageRepository(2, connections, accounts);
+            Assert.fail("Reopening three shards as two should fail");
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * With accounts kept in H2, an account that has posted to a shard is pinned there by a foreign key, so it
+     * cannot be deleted while its messages exist, while an account that never posted still can be.
+     */
+    @Test
+    public void pinnedAuthorsCannotBeDeleted() throws SQLException {
+        Assume.assumeFalse(Repositories.isInMemory());
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        int author = accountDAO.registerAccount(new Account("author", "password")).getAccount_id();
+        int reader = accountDAO.registerAccount(new Account("reader", "password")).getAccount_id();
+        ShardedMessageRepository pinning = new ShardedMessageRepository(3, shards("pintest" + databases++),
+                accountDAO);
+
+        Assert.assertNotNull(pinning.addMessage(new Message(author, "pinned", 1669947792L)));
+        Assert.assertNull(pinning.addMessage(new Message(99, "no such account", 1669947792L)));
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            PreparedStatement delete = connection.prepareStatement("DELETE FROM account WHERE account_id = ?");
+            delete.setInt(1, reader);
+            Assert.assertEquals(1, delete.executeUpdate());
+            delete.setInt(1, author);
+            try {
+                delete.executeUpdate();
+                Assert.fail("An account with sharded messages should not be deletable");
+            } catch (SQLException expected) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Sharding refuses to start while the main database still holds messages, since no sharded read would see
+     * them.
+     */
+    @Test
+    public void unshardedMessagesBlockStartup() {
+        ShardedMessageRepository.requireNoUnshardedMessages(new InMemoryStore());
+        InMemoryStore main = new InMemoryStore();
+        main.registerAccount(new Account("testuser1", "password"));
+        main.addMessage(new Message(1, "left behind", 1669947792L));
+        try {
+            ShardedMessageRepository.requireNoUnshardedMessages(main);
+            Assert.fail("Messages in the main database should block sharding");
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+    }
+}
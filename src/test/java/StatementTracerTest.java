@@ -0,0 +1,117 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.Metrics;
+import Util.StatementTracer;
+
+public class StatementTracerTest {
+    Metrics metrics;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        metrics = new Metrics();
+    }
+
+    /**
+     * Literals are replaced and parameter lists are shortened, so no value a statement ran with is reported.
+     */
+    @Test
+    public void redactRemovesValues() {
+        Assert.assertEquals("SELECT * FROM account WHERE username = ? AND account_id IN (?, ...)",
+                StatementTracer.redact(
+                        "SELECT *\n  FROM account WHERE username = 'testuser1' AND account_id IN (?, ?,?)"));
+        Assert.assertEquals("SELECT ? FROM message_posted_by_time_idx WHERE x = ?",
+                StatementTracer.redact("SELECT 1 FROM message_posted_by_time_idx WHERE x = 12.5"));
+    }
+
+    /**
+     * A traced query is timed and its rows counted once its result set is exhausted, and with a threshold of 0 it
+     * is counted as slow.
+     */
+    @Test
+    public void tracesQueryRowsAndSlowStatements() throws Exception {
+        StatementTracer tracer = new StatementTracer(metrics, 0, true);
+        Connection connection = tracer.wrap(ConnectionUtil.getPool().getConnection());
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    "SELECT * FROM account WHERE account_id = ?");
+            preparedStatement.setInt(1, 1);
+            ResultSet rs = preparedStatement.executeQuery();
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+            }
+            Assert.assertEquals(1, rows);
+        } finally {
+            connection.close();
+        }
+
+        Assert.assertEquals(1, tracer.getSlowStatementCount());
+        String body = metrics.scrape();
+        String labels = "{sql=\"SELECT * FROM account WHERE account_id = ?\"}";
+        Assert.assertTrue(body, body.contains("socialmedia_db_statement_duration_seconds_count" + labels + " 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "socialmedia_db_statement_fetch_duration_seconds_count" + labels + " 1\n"));
+        Assert.assertTrue(body, body.contains("socialmedia_db_statement_rows_total" + labels + " 1\n"));
+    }
+
+    /**
+     * An update's row count comes from executeUpdate, and a statement below the threshold is not logged.
+     */
+    @Test
+    public void tracesUpdateRowCount() throws Exception {
+        StatementTracer tracer = new StatementTracer(metrics, 60000, false);
+        Connection connection = tracer.wrap(ConnectionUtil.getPool().getConnection());
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    "UPDATE account SET password = ? WHERE account_id = ?");
+            preparedStatement.setString(1, "secret text");
+            preparedStatement.setInt(2, 1);
+            Assert.assertEquals(1, preparedStatement.executeUpdate());
+        } finally {
+            connection.close();
+        }
+
+        Assert.assertEquals(0, tracer.getSlowStatementCount());
+        String body = metrics.scrape();
+        Assert.assertTrue(body, body.contains("socialmedia_db_statement_rows_total"
+                + "{sql=\"UPDATE account SET password = ? WHERE account_id = ?\"} 1\n"));
+        Assert.assertFalse(body, body.contains("secret text"));
+    }
+
+    /**
+     * Statements that differ only in their literals share one series, and statements beyond the limit are counted
+     * together under "other" instead of adding series without bound.
+     */
+    @Test
+    public void statementSeriesAreBounded() throws Exception {
+        StatementTracer tracer = new StatementTracer(metrics, -1, false, 2);
+        Connection connection = tracer.wrap(ConnectionUtil.getPool().getConnection());
+        try {
+            Statement statement = connection.createStatement();
+            for (int i = 0; i < 1000; i++) {
+                statement.executeUpdate("UPDATE message SET time_posted_epoch = " + i + " WHERE message_id = 1");
+            }
+            statement.executeQuery("SELECT COUNT(*) FROM account").close();
+            statement.executeQuery("SELECT COUNT(*) FROM message").close();
+            statement.executeQuery("SELECT MAX(message_id) FROM message").close();
+        } finally {
+            connection.close();
+        }
+
+        Assert.assertEquals(2, tracer.getStatementCount());
+        String body = metrics.scrape();
+        Assert.assertTrue(body, body.contains("socialmedia_db_statement_duration_seconds_count"
+                + "{sql=\"UPDATE message SET time_posted_epoch = ? WHERE message_id = ?\"} 1000\n"));
+        Assert.assertTrue(body, body.contains(
+                "socialmedia_db_statement_duration_seconds_count{sql=\"" + StatementTracer.OTHER_STATEMENTS + "\"} 2\n"));
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.Repositories;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamingMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with streaming lists enabled, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.json.streaming", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.json.streaming");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages in streaming mode
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of a list of messages
+     */
+    @Test
+    public void streamAllMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(""));
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/messages in streaming mode for an account that does
+     * not exist
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an empty JSON array
+     */
+    @Test
+    public void streamMessagesForMissingAccount() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("[]", response.body());
+    }
+
+    /**
+     * Makes every message after the first count readable only up to the last one, which holds a time that cannot
+     * be read back as a number. When sharded, the rows go into account 1's shard, after the seeded message.
+     */
+    private static void breakMessagesAfter(int count) throws SQLException {
+        try (Connection connection = Repositories.isSharded()
+                ? ConnectionUtil.getShardConnection(1 % Repositories.MESSAGE_SHARDS)
+                : ConnectionUtil.getConnection()) {
+            connection.createStatement().execute(
+                    "ALTER TABLE message ALTER COLUMN time_posted_epoch VARCHAR(32)");
+            connection.createStatement().execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "SELECT 1, REPEAT('x', 200), 1669947792 FROM SYSTEM_RANGE(1, " + count + ")");
+            connection.createStatement().execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "VALUES (1, 'broken', 'not-a-number')");
+        }
+    }
+
+    /**
+     * A query that fails after part of the list has been sent cuts the response off instead of closing the array,
+     * so the client cannot mistake it for the whole list.
+     *
+     * Expected Response:
+     *  The connection is aborted before the body is complete
+     */
+    @Test
+    public void failureMidStreamAbortsResponse() throws InterruptedException, SQLException {
+        Assume.assumeFalse(Repositories.isInMemory());
+        breakMessagesAfter(1000);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        try {
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.fail("Expected a broken body but got " + response.statusCode() + " with "
+                    + response.body().length() + " characters");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * A query that fails before anything was sent still becomes an ordinary error response.
+     *
+     * Expected Response:
+     *  Status Code: 500
+     */
+    @Test
+    public void failureBeforeFirstRowIsError() throws IOException, InterruptedException, SQLException {
+        Assume.assumeFalse(Repositories.isInMemory());
+        breakMessagesAfter(0);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(500, response.statusCode());
+        Assert.assertFalse(response.body(), response.body().startsWith("["));
+    }
+}
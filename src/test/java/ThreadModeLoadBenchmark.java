@@ -0,0 +1,101 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Compares concurrent throughput of the server on Jetty's platform thread pool and on virtual threads. For each
+ * mode and each number of concurrent clients it runs a closed loop of requests for a fixed time and prints
+ * requests per second, mean latency and errors. Clients run on virtual threads so the client side is never the
+ * limit.
+ *
+ * Two workloads are measured: the real JDBC endpoints against the embedded H2 database, and a route that blocks for
+ * 20 ms to stand in for the network round trip of a remote database. This is not a unit test; run it with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ThreadModeLoadBenchmark
+ */
+public class ThreadModeLoadBenchmark {
+    private static final int[] CONCURRENCY = {50, 500, 1000};
+    private static final long DURATION_MILLIS = 5000;
+    private static final long BLOCKING_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        System.out.printf("%-9s %-22s %7s %10s %12s %8s%n", "mode", "workload", "clients", "req/s", "mean ms",
+                "errors");
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+            Javalin app = new SocialMediaController().startAPI(virtualThreads);
+            app.get("blocking", ctx -> {
+                Thread.sleep(BLOCKING_MILLIS);
+                ctx.result("ok");
+            });
+            app.start(0);
+            String base = "http://localhost:" + app.port();
+            try {
+                for (int clients : CONCURRENCY) {
+                    run(virtualThreads, "GET /messages/{id}", base + "/messages/1", clients);
+                    run(virtualThreads, "blocking " + BLOCKING_MILLIS + " ms", base + "/blocking", clients);
+                }
+            } finally {
+                app.stop();
+            }
+        }
+    }
+
+    private static void run(boolean virtualThreads, String workload, String url, int clients)
+            throws InterruptedException {
+        HttpClient webClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+        LongAdder latencyNanos = new LongAdder();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        long end = warmupEnd + TimeUnit.MILLISECONDS.toNanos(DURATION_MILLIS);
+        List<Thread> threads = new ArrayList<>(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.submit(() -> {
+                    while (true) {
+                        long start = System.nanoTime();
+                        if (start >= end) {
+                            return null;
+                        }
+                        try {
+                            HttpResponse<Void> response = webClient.send(request,
+                                    HttpResponse.BodyHandlers.discarding());
+                            if (start >= warmupEnd) {
+                                if (response.statusCode() == 200) {
+                                    completed.increment();
+                                    latencyNanos.add(System.nanoTime() - start);
+                                } else {
+                                    errors.increment();
+                                }
+                            }
+                        } catch (Exception e) {
+                            if (start >= warmupEnd) {
+                                errors.increment();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        long count = completed.sum();
+        System.out.printf("%-9s %-22s %7d %10.0f %12.2f %8d%n", virtualThreads ? "virtual" : "platform", workload,
+                clients, count * 1000.0 / DURATION_MILLIS, count == 0 ? 0 : latencyNanos.sum() / 1e6 / count,
+                errors.sum());
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class VirtualThreadModeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient. Each test starts its own app in the thread
+     * mode it checks.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        webClient = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    /**
+     * Starts the app with an extra route that reports whether the handler ran on a virtual thread.
+     */
+    private void start(boolean virtualThreads) throws InterruptedException {
+        app = socialMediaController.startAPI(virtualThreads);
+        app.get("thread", ctx -> ctx.result(String.valueOf(Thread.currentThread().isVirtual())));
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * With virtual threads enabled, handlers run on virtual threads and the JDBC-backed endpoints still work.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: "true" from the thread route, and message 1 from GET /messages/1
+     */
+    @Test
+    public void virtualThreadModeRunsHandlersOnVirtualThreads() throws IOException, InterruptedException {
+        start(true);
+        Assert.assertEquals("true", get("/thread").body());
+        HttpResponse<String> response = get("/messages/1");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("test message 1"));
+    }
+
+    /**
+     * By default handlers run on Jetty's platform thread pool, even on a JDK that supports virtual threads.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: "false"
+     */
+    @Test
+    public void defaultModeRunsHandlersOnPlatformThreads() throws IOException, InterruptedException {
+        start(false);
+        Assert.assertEquals("false", get("/thread").body());
+    }
+}